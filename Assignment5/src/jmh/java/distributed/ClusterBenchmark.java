@@ -0,0 +1,143 @@
+package distributed;
+
+import distributed.protocol.ResultResponse;
+import distributed.protocol.TaskRequest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.IntStream;
+
+/**
+ * End-to-end sweep over an in-process cluster: for every combination of node count, list size
+ * and delay it sends a fixed number of tasks from a few concurrent clients and prints throughput,
+ * client-side p50/p99 latency, and the Leader's own mean local and distributed times.
+ *
+ * Each combination first runs a tenth of its requests untimed, so the JIT and the Nodes'
+ * connections are warm before anything is measured.
+ */
+public class ClusterBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int[] nodeCounts = parseInts(args.length >= 1 ? args[0] : "3,5");
+        int[] listSizes = parseInts(args.length >= 2 ? args[1] : "1000,100000");
+        int[] delays = parseInts(args.length >= 3 ? args[2] : "0");
+        int requests = args.length >= 4 ? Integer.parseInt(args[3]) : 100;
+        int concurrency = args.length >= 5 ? Integer.parseInt(args[4]) : 4;
+
+        System.out.printf("[BENCH] %d requests per row from %d concurrent clients%n", requests, concurrency);
+        System.out.printf("[BENCH] %5s %8s %6s | %9s | %9s | %9s | %9s | %9s | %s%n",
+                "nodes", "size", "delay", "tasks/s", "p50 ms", "p99 ms", "local ms", "dist ms", "errors");
+
+        PrintStream console = System.out;
+        for (int nodeCount : nodeCounts) {
+            // the Leader and Nodes log every task; keep that out of the report
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            try (InProcessCluster cluster = new InProcessCluster(new Leader(4, 0.9, Leader.ThreadMode.VIRTUAL), nodeCount)) {
+                for (int listSize : listSizes) {
+                    for (int delayMs : delays) {
+                        Row row = measure(cluster.clientPort(), listSize, delayMs, requests, concurrency);
+                        console.printf("[BENCH] %5d %8d %6d | %9.1f | %9.2f | %9.2f | %9.1f | %9.1f | %d%n",
+                                nodeCount, listSize, delayMs, row.throughput,
+                                LoadGenerator.percentileMs(row.latenciesNs, 0.50),
+                                LoadGenerator.percentileMs(row.latenciesNs, 0.99),
+                                row.meanLocalMs, row.meanDistributedMs, row.errors);
+                    }
+                }
+            } finally {
+                System.setOut(console);
+            }
+        }
+    }
+
+    private static final class Row {
+        double throughput;
+        long[] latenciesNs;
+        double meanLocalMs;
+        double meanDistributedMs;
+        int errors;
+    }
+
+    private static Row measure(int port, int listSize, int delayMs, int requests, int concurrency)
+            throws InterruptedException {
+        int[] values = IntStream.rangeClosed(1, listSize).toArray();
+        long expected = (long) listSize * (listSize + 1) / 2;
+        TaskRequest.Builder builder = TaskRequest.newBuilder().setDelayMs(delayMs);
+        for (int v : values) {
+            builder.addList(v);
+        }
+        TaskRequest request = builder.build();
+
+        run(port, request, expected, Math.max(1, requests / 10), concurrency, new long[requests], new AtomicLongArray(2));
+
+        long[] latencies = new long[requests];
+        // summed Leader-reported singleThreadTimeMs and distributedTimeMs
+        AtomicLongArray leaderMs = new AtomicLongArray(2);
+        long start = System.nanoTime();
+        int errors = run(port, request, expected, requests, concurrency, latencies, leaderMs);
+        long elapsedNs = System.nanoTime() - start;
+
+        Row row = new Row();
+        row.errors = errors;
+        row.latenciesNs = Arrays.stream(latencies).filter(l -> l >= 0).sorted().toArray();
+        int ok = row.latenciesNs.length;
+        row.throughput = ok / (elapsedNs / 1e9);
+        row.meanLocalMs = ok == 0 ? 0 : (double) leaderMs.get(0) / ok;
+        row.meanDistributedMs = ok == 0 ? 0 : (double) leaderMs.get(1) / ok;
+        return row;
+    }
+
+    /**
+     * Sends {@code count} copies of the request from {@code concurrency} virtual threads and returns the
+     * number that failed. Latencies of failed requests are recorded as -1.
+     */
+    private static int run(int port, TaskRequest request, long expected, int count, int concurrency,
+                           long[] latencies, AtomicLongArray leaderMs) throws InterruptedException {
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < concurrency; c++) {
+                clients.submit(() -> {
+                    int slot;
+                    while ((slot = next.getAndIncrement()) < count) {
+                        long sent = System.nanoTime();
+                        try {
+                            ResultResponse result = send(port, request);
+                            if (result == null || result.getReduction().getValue() != expected) {
+                                throw new IOException("wrong or missing result");
+                            }
+                            latencies[slot] = System.nanoTime() - sent;
+                            leaderMs.addAndGet(0, result.getSingleThreadTimeMs());
+                            leaderMs.addAndGet(1, result.getDistributedTimeMs());
+                        } catch (IOException e) {
+                            latencies[slot] = -1;
+                            errors.incrementAndGet();
+                        }
+                    }
+                });
+            }
+        }
+        return errors.get();
+    }
+
+    /**
+     * Sends one TaskRequest and returns the Leader's answer, or null on an error reply.
+     */
+    private static ResultResponse send(int port, TaskRequest request) throws IOException {
+        try (Socket socket = new Socket("localhost", port)) {
+            request.writeDelimitedTo(socket.getOutputStream());
+            ResultResponse result = ResultResponse.parseDelimitedFrom(socket.getInputStream());
+            return result == null || result.getNodeStatsCount() == 0 ? null : result;
+        }
+    }
+
+    private static int[] parseInts(String csv) {
+        return Arrays.stream(csv.split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray();
+    }
+}
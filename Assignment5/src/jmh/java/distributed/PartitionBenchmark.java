@@ -0,0 +1,42 @@
+package distributed;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Cost of cutting a task into chunks: the boxed {@link Leader#partitionList} copy versus
+ * the index-only {@link Leader#partitionBounds} the scheduler uses.
+ */
+@State(Scope.Benchmark)
+public class PartitionBenchmark {
+
+    @Param({"1000", "100000"})
+    int size;
+
+    @Param({"12", "48"})
+    int parts;
+
+    List<Integer> list;
+
+    @Setup
+    public void setUp() {
+        list = IntStream.rangeClosed(1, size).boxed().collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<List<Integer>> partitionList() {
+        return Leader.partitionList(list, parts);
+    }
+
+    @Benchmark
+    public int[] partitionBounds() {
+        return Leader.partitionBounds(size, parts);
+    }
+}
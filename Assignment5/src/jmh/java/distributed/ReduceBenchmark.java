@@ -0,0 +1,53 @@
+package distributed;
+
+import distributed.protocol.ReduceOp;
+import distributed.protocol.Reduction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * The reduce kernels a Node runs on each chunk: a single pass of each {@link ReduceOperation}
+ * versus {@link Node#reduceParallel} on the Node's fork-join pool, and the Leader's combine step.
+ */
+@State(Scope.Benchmark)
+public class ReduceBenchmark {
+
+    @Param({"SUM", "MAX", "HISTOGRAM", "TOP_K"})
+    ReduceOp op;
+
+    @Param({"10000", "1000000"})
+    int size;
+
+    ReduceOperation operation;
+    int[] values;
+    Reduction left;
+    Reduction right;
+
+    @Setup
+    public void setUp() {
+        operation = ReduceOperation.of(op, 10, 1000);
+        values = new Random(42).ints(size, -1_000_000, 1_000_000).toArray();
+        left = operation.reduce(values, 0, size / 2);
+        right = operation.reduce(values, size / 2, size);
+    }
+
+    @Benchmark
+    public Reduction sequential() {
+        return operation.reduce(values, 0, values.length);
+    }
+
+    @Benchmark
+    public Reduction forkJoin() throws InterruptedException {
+        return Node.reduceParallel(operation, values, 0);
+    }
+
+    @Benchmark
+    public Reduction combine() {
+        return operation.combine(left, right);
+    }
+}
@@ -0,0 +1,69 @@
+package distributed;
+
+import distributed.protocol.LeaderMessage;
+import distributed.protocol.SubtaskRequest;
+import com.google.protobuf.CodedOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.stream.IntStream;
+
+/**
+ * Encoding and decoding one subtask frame: building the generated messages versus
+ * {@link NodeConnection#writeSubtask} writing straight from the task's int[], and the Node's
+ * parse plus copy back into an int[].
+ */
+@State(Scope.Thread)
+public class SubtaskCodecBenchmark {
+
+    @Param({"100", "10000"})
+    int size;
+
+    int[] values;
+    byte[] frame;
+    ByteArrayOutputStream buffer;
+
+    @Setup
+    public void setUp() throws IOException {
+        values = IntStream.rangeClosed(1, size).toArray();
+        buffer = new ByteArrayOutputStream(size * 5 + 64);
+        encodeGenerated();
+        frame = buffer.toByteArray();
+    }
+
+    @Benchmark
+    public int encodeGenerated() throws IOException {
+        buffer.reset();
+        SubtaskRequest.Builder subtask = SubtaskRequest.newBuilder().setDelayMs(10).setTaskId(42);
+        for (int v : values) {
+            subtask.addList(v);
+        }
+        LeaderMessage.newBuilder().setSubtask(subtask).build().writeDelimitedTo(buffer);
+        return buffer.size();
+    }
+
+    @Benchmark
+    public int encodeDirect() throws IOException {
+        buffer.reset();
+        CodedOutputStream out = CodedOutputStream.newInstance(buffer);
+        NodeConnection.writeSubtask(out, 42, values, 0, values.length, 10, ReduceOperation.SUM);
+        out.flush();
+        return buffer.size();
+    }
+
+    @Benchmark
+    public int[] decode() throws IOException {
+        SubtaskRequest task = LeaderMessage.parseDelimitedFrom(new ByteArrayInputStream(frame)).getSubtask();
+        int[] nums = new int[task.getListCount()];
+        for (int i = 0; i < nums.length; i++) {
+            nums[i] = task.getList(i);
+        }
+        return nums;
+    }
+}
@@ -1,9 +1,14 @@
 package distributed;
 
+import distributed.protocol.TaskChunk;
 import distributed.protocol.TaskRequest;
 import distributed.protocol.ResultResponse;
 import distributed.protocol.ErrorResponse;
+import distributed.protocol.NodeStats;
+import distributed.protocol.ReduceOp;
+import distributed.protocol.Reduction;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
@@ -16,13 +21,25 @@ public class Client {
 
     public static void main(String[] args) {
         if (args.length < 3) {
-            System.out.println("[CLIENT] Usage: java Client <host> <port> <delayMs>");
+            System.out.println("[CLIENT] Usage: java Client <host> <port> <delayMs> [streamChunkSize] "
+                    + "[sum|min|max|count|histogram|top_k] [bucketWidth|k]");
             return;
         }
 
         String host = args[0];
         int port = Integer.parseInt(args[1]);
         int delayMs = Integer.parseInt(args[2]);
+        // > 0 streams the list to the Leader in TaskChunk frames of this many numbers
+        int streamChunkSize = args.length >= 4 ? Integer.parseInt(args[3]) : 0;
+        TaskRequest header;
+        try {
+            header = taskHeader(delayMs,
+                    args.length >= 5 ? args[4] : "sum",
+                    args.length >= 6 ? Long.parseLong(args[5]) : 0);
+        } catch (IllegalArgumentException e) {
+            System.err.println("[CLIENT] Invalid operation: " + e.getMessage());
+            return;
+        }
 
         try (Scanner scanner = new Scanner(System.in)) {
             System.out.println("[CLIENT] Welcome to the Distributed Sum System.");
@@ -55,21 +72,29 @@ public class Client {
                     OutputStream out = socket.getOutputStream();
                     InputStream in = socket.getInputStream();
 
-                    TaskRequest request = TaskRequest.newBuilder()
-                        .addAllList(numbers)
-                        .setDelayMs(delayMs)
-                        .build();
-                    request.writeDelimitedTo(out);
-                    System.out.printf("[CLIENT] Sent task: list=%s, delay=%dms%n", numbers, delayMs);
+                    sendTask(out, header, numbers, streamChunkSize);
+                    System.out.printf("[CLIENT] Sent task: %s of list=%s, delay=%dms%n",
+                            header.getOp(), numbers, delayMs);
 
                     System.out.println("[CLIENT] Awaiting response from Leader...");
                     ResultResponse result = ResultResponse.parseDelimitedFrom(in);
 
                     if (result != null) {
-                        System.out.println("[CLIENT] ====== Result ======");
-                        System.out.printf("Sum: %d%n", result.getSum());
-                        System.out.printf("Single-threaded time: %d ms%n", result.getSingleThreadTimeMs());
+                        System.out.println(result.getCached()
+                                ? "[CLIENT] ====== Result (cached) ======"
+                                : "[CLIENT] ====== Result ======");
+                        printReduction(result.getReduction(), header.getBucketWidth());
+                        if (streamChunkSize > 0) {
+                            System.out.println("Single-threaded time: not measured for streamed tasks");
+                        } else {
+                            System.out.printf("Single-threaded time: %d ms%n", result.getSingleThreadTimeMs());
+                        }
                         System.out.printf("Distributed time: %d ms%n", result.getDistributedTimeMs());
+                        for (NodeStats stats : result.getNodeStatsList()) {
+                            System.out.printf("  %s: %d chunks, %d items, %.1f items/s, %d re-run for others%n",
+                                    stats.getNodeId(), stats.getChunks(), stats.getItems(),
+                                    stats.getItemsPerSecond(), stats.getSpeculativeChunks());
+                        }
                     } else {
                         ErrorResponse error = ErrorResponse.parseDelimitedFrom(in);
                         if (error != null) {
@@ -89,6 +114,74 @@ public class Client {
         }
     }
 
+    /**
+     * Builds the task settings shared by every list the user enters. {@code param} is the bucket width
+     * for a histogram and k for top-k, and is ignored by the other operations.
+     *
+     * @throws IllegalArgumentException on an unknown operation name
+     */
+    static TaskRequest taskHeader(int delayMs, String op, long param) {
+        ReduceOp reduceOp = ReduceOp.valueOf(op.trim().toUpperCase());
+        TaskRequest.Builder header = TaskRequest.newBuilder()
+            .setDelayMs(delayMs)
+            .setOp(reduceOp);
+        if (reduceOp == ReduceOp.HISTOGRAM) {
+            header.setBucketWidth(param);
+        } else if (reduceOp == ReduceOp.TOP_K) {
+            header.setTopK((int) param);
+        }
+        return header.build();
+    }
+
+    /**
+     * Writes a task to the Leader: one TaskRequest holding the whole list, or with
+     * {@code streamChunkSize > 0} a streaming TaskRequest followed by TaskChunk frames.
+     * {@code header} carries the delay and the operation; the list is added here.
+     */
+    static void sendTask(OutputStream out, TaskRequest header, List<Integer> numbers, int streamChunkSize)
+            throws IOException {
+        if (streamChunkSize <= 0) {
+            header.toBuilder()
+                .addAllList(numbers)
+                .build()
+                .writeDelimitedTo(out);
+            return;
+        }
+
+        header.toBuilder()
+            .setStreaming(true)
+            .build()
+            .writeDelimitedTo(out);
+        for (int from = 0; from < numbers.size(); from += streamChunkSize) {
+            int to = Math.min(numbers.size(), from + streamChunkSize);
+            TaskChunk.newBuilder()
+                .addAllList(numbers.subList(from, to))
+                .setLast(to == numbers.size())
+                .build()
+                .writeDelimitedTo(out);
+        }
+        out.flush();
+    }
+
+    private static void printReduction(Reduction reduction, long bucketWidth) {
+        switch (reduction.getOp()) {
+            case HISTOGRAM:
+                System.out.println("Histogram:");
+                for (int i = 0; i < reduction.getBucketKeysCount(); i++) {
+                    long low = reduction.getBucketKeys(i) * bucketWidth;
+                    System.out.printf("  [%d, %d): %d%n", low, low + bucketWidth, reduction.getBucketCounts(i));
+                }
+                break;
+            case TOP_K:
+                System.out.printf("Top %d: %s%n", reduction.getTopCount(), reduction.getTopList());
+                break;
+            default:
+                String name = reduction.getOp().name();
+                System.out.printf("%s: %d%n", name.charAt(0) + name.substring(1).toLowerCase(), reduction.getValue());
+        }
+        System.out.printf("Mean: %.3f over %d values%n", reduction.getMean(), reduction.getCount());
+    }
+
     public static List<Integer> parseList(String input) {
         if (input.isEmpty()) {
             throw new IllegalArgumentException("List cannot be empty.");
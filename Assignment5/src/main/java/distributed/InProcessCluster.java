@@ -0,0 +1,43 @@
+package distributed;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A Leader and its Nodes running as threads of the current JVM, for load tests and benchmarks.
+ * The Leader listens on ephemeral ports; {@link #close} stops it and the Nodes.
+ */
+class InProcessCluster implements AutoCloseable {
+
+    final Leader leader;
+    private final List<Thread> nodes = new ArrayList<>();
+
+    /**
+     * Starts the Leader and {@code nodeCount} Nodes, and returns once every Node has registered.
+     */
+    InProcessCluster(Leader leader, int nodeCount) throws IOException, InterruptedException {
+        this.leader = leader;
+        leader.start(0, 0);
+        for (int i = 0; i < nodeCount; i++) {
+            Thread node = new Thread(() -> Node.run("localhost", leader.nodePort(), false), "node-" + i);
+            node.setDaemon(true);
+            node.start();
+            nodes.add(node);
+        }
+        while (leader.nodeCount() < nodeCount) {
+            Thread.sleep(10);
+        }
+    }
+
+    int clientPort() {
+        return leader.clientPort();
+    }
+
+    @Override
+    public void close() {
+        leader.stop();
+        // Nodes would otherwise keep trying to reconnect to this Leader
+        nodes.forEach(Thread::interrupt);
+    }
+}
@@ -1,5 +1,6 @@
 package distributed;
 
+import distributed.ResultCache.TaskFailure;
 import distributed.protocol.*;
 
 import java.io.*;
@@ -7,10 +8,81 @@ import java.net.ServerSocket;
 import java.net.Socket;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class Leader {
 
-    private static final List<NodeConnection> connectedNodes = Collections.synchronizedList(new ArrayList<>());
+    /**
+     * Which kind of thread the Leader gives each client handler and each per-node scheduler puller.
+     */
+    enum ThreadMode {
+        PLATFORM, VIRTUAL;
+
+        ThreadFactory factory() {
+            return this == VIRTUAL ? Thread.ofVirtual().factory() : Thread.ofPlatform().factory();
+        }
+
+        static ThreadMode parse(String mode) {
+            return valueOf(mode.trim().toUpperCase());
+        }
+    }
+
+    // pending-connection queue for the client port, so bursts of clients are not refused
+    private static final int CLIENT_BACKLOG = 1024;
+    private static final int MIN_NODES = 3;
+    // a Node that missed this many heartbeat rounds gets no new tasks until it is heard from again
+    private static final int SUSPECT_AFTER_MISSED = 2;
+
+    // keyed by nodeId, so a Node that reconnects replaces its old connection instead of adding one
+    private final Map<String, NodeConnection> connectedNodes = new ConcurrentHashMap<>();
+
+    // how many chunks the scheduler cuts per connected node; more chunks = finer load balancing
+    private final int chunksPerNode;
+    // a chunk slower than this percentile of finished chunks is re-run on an idle node (0 = off)
+    private final double speculationPercentile;
+    private final ThreadMode threadMode;
+    // how often every Node is sent a Heartbeat, and how long it may stay silent before it is dropped
+    private final long heartbeatMs;
+    private final long failureTimeoutMs;
+    // how many of the least-loaded healthy Nodes one task uses (0 = all of them)
+    private final int nodesPerTask;
+    // finished results of identical requests, and requests still running that later copies can join
+    private final ResultCache resultCache;
+    private final ExecutorService clientExecutor;
+
+    private ServerSocket clientSocket;
+    private ServerSocket nodeSocket;
+
+    Leader(int chunksPerNode, double speculationPercentile, ThreadMode threadMode) {
+        this(chunksPerNode, speculationPercentile, threadMode, 1000, 5000, 0);
+    }
+
+    Leader(int chunksPerNode, double speculationPercentile, ThreadMode threadMode,
+           long heartbeatMs, long failureTimeoutMs, int nodesPerTask) {
+        this(chunksPerNode, speculationPercentile, threadMode, heartbeatMs, failureTimeoutMs, nodesPerTask, 0, 0);
+    }
+
+    /**
+     * @param cacheEntries results the Leader keeps for repeated requests; 0 turns the cache off
+     * @param cacheTtlMs   how long a cached result may be served
+     */
+    Leader(int chunksPerNode, double speculationPercentile, ThreadMode threadMode,
+           long heartbeatMs, long failureTimeoutMs, int nodesPerTask, int cacheEntries, long cacheTtlMs) {
+        this.chunksPerNode = chunksPerNode;
+        this.speculationPercentile = speculationPercentile;
+        this.threadMode = threadMode;
+        this.heartbeatMs = heartbeatMs;
+        this.failureTimeoutMs = failureTimeoutMs;
+        this.nodesPerTask = nodesPerTask;
+        this.resultCache = new ResultCache(cacheEntries, cacheTtlMs);
+        this.clientExecutor = Executors.newThreadPerTaskExecutor(threadMode.factory());
+    }
 
     /**
      * Entry point of the Leader process.
@@ -18,45 +90,147 @@ public class Leader {
      */
     public static void main(String[] args) {
         if (args.length < 2) {
-            System.out.println("[LEADER] Usage: java Leader <clientPort> <nodePort>");
+            System.out.println("[LEADER] Usage: java Leader <clientPort> <nodePort> [chunksPerNode] [speculationPercentile]"
+                    + " [platform|virtual] [heartbeatMs] [failureTimeoutMs] [nodesPerTask] [cacheEntries] [cacheTtlMs]");
             return;
         }
 
         int clientPort = Integer.parseInt(args[0]);
         int nodePort = Integer.parseInt(args[1]);
+        int chunksPerNode = args.length >= 3 ? Math.max(1, Integer.parseInt(args[2])) : 4;
+        double speculationPercentile = args.length >= 4 ? Double.parseDouble(args[3]) : 0.9;
+        ThreadMode threadMode = args.length >= 5 ? ThreadMode.parse(args[4]) : ThreadMode.VIRTUAL;
+        long heartbeatMs = args.length >= 6 ? Math.max(1, Long.parseLong(args[5])) : 1000;
+        long failureTimeoutMs = args.length >= 7 ? Long.parseLong(args[6]) : 5000;
+        int nodesPerTask = args.length >= 8 ? Integer.parseInt(args[7]) : 0;
+        if (nodesPerTask > 0) {
+            nodesPerTask = Math.max(MIN_NODES, nodesPerTask);
+        }
+        int cacheEntries = args.length >= 9 ? Integer.parseInt(args[8]) : 256;
+        long cacheTtlMs = args.length >= 10 ? Long.parseLong(args[9]) : 60_000;
 
-        try (
-            ServerSocket clientSocket = new ServerSocket(clientPort);
-            ServerSocket nodeSocket = new ServerSocket(nodePort)
-        ) {
-            new Thread(() -> {
-                while (true) {
-                    Socket ns = null;
-                    try {
-                        ns = nodeSocket.accept();
-                    } catch (IOException e) {
-                        throw new RuntimeException(e);
-                    }
-                    handleNodeConnection(ns);
+        Leader leader = new Leader(chunksPerNode, speculationPercentile, threadMode,
+                heartbeatMs, failureTimeoutMs, nodesPerTask, cacheEntries, cacheTtlMs);
+        try {
+            // the acceptor threads keep the process alive
+            leader.start(clientPort, nodePort);
+            System.out.printf("[LEADER] Listening for clients on %d and nodes on %d (%s threads)%n",
+                    clientPort, nodePort, threadMode.name().toLowerCase());
+        } catch (IOException e) {
+            System.err.println("[LEADER] Error encountered while connecting to client/node: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Binds both server sockets (port 0 picks a free one) and starts accepting Nodes and Clients in the background.
+     */
+    void start(int clientPort, int nodePort) throws IOException {
+        clientSocket = new ServerSocket(clientPort, CLIENT_BACKLOG);
+        nodeSocket = new ServerSocket(nodePort);
+        new Thread(this::acceptNodes, "node-acceptor").start();
+        new Thread(this::acceptClients, "client-acceptor").start();
+
+        Thread detector = new Thread(this::heartbeatLoop, "heartbeat");
+        detector.setDaemon(true);
+        detector.start();
+    }
+
+    /**
+     * Stops accepting, cancels every running client task and drops all Nodes.
+     */
+    void stop() {
+        try {
+            clientSocket.close();
+            nodeSocket.close();
+        } catch (IOException ignored) {}
+        clientExecutor.shutdownNow();
+        connectedNodes.values().forEach(NodeConnection::close);
+    }
+
+    int clientPort() {
+        return clientSocket.getLocalPort();
+    }
+
+    int nodePort() {
+        return nodeSocket.getLocalPort();
+    }
+
+    int nodeCount() {
+        return connectedNodes.size();
+    }
+
+    /**
+     * Failure detector: every heartbeat interval, drops Nodes that have been silent past the
+     * failure timeout (their outstanding chunks fail and are requeued) and pings the rest.
+     */
+    private void heartbeatLoop() {
+        while (!nodeSocket.isClosed()) {
+            try {
+                Thread.sleep(heartbeatMs);
+            } catch (InterruptedException e) {
+                return;
+            }
+            for (NodeConnection node : connectedNodes.values()) {
+                node.heartbeat(failureTimeoutMs);
+            }
+        }
+    }
+
+    /**
+     * Picks the Nodes for one task: open Nodes heard from within the last few heartbeats,
+     * least loaded first, capped at {@code nodesPerTask} when that is set.
+     */
+    List<NodeConnection> selectNodes() {
+        List<NodeConnection> healthy = new ArrayList<>();
+        for (NodeConnection node : connectedNodes.values()) {
+            if (!node.isClosed() && node.silentMs() <= heartbeatMs * SUSPECT_AFTER_MISSED) {
+                healthy.add(node);
+            }
+        }
+        healthy.sort(Comparator.comparingDouble(NodeConnection::loadScore));
+        if (nodesPerTask > 0 && healthy.size() > nodesPerTask) {
+            return new ArrayList<>(healthy.subList(0, nodesPerTask));
+        }
+        return healthy;
+    }
+
+    private void acceptNodes() {
+        while (!nodeSocket.isClosed()) {
+            try {
+                handleNodeConnection(nodeSocket.accept());
+            } catch (IOException e) {
+                if (!nodeSocket.isClosed()) {
+                    System.err.println("[LEADER] Failed to accept node: " + e.getMessage());
                 }
-            }).start();
+            }
+        }
+    }
 
-            while (true) {
-                Socket cs = clientSocket.accept();
-                new Thread(() -> {
-                    try {
-                        handleClient(cs);
-                    } catch (InterruptedException e) {
-                        throw new RuntimeException(e);
-                    }
-                }).start();
+    private void acceptClients() {
+        while (!clientSocket.isClosed()) {
+            Socket cs;
+            try {
+                cs = clientSocket.accept();
+            } catch (IOException e) {
+                if (!clientSocket.isClosed()) {
+                    System.err.println("[LEADER] Failed to accept client: " + e.getMessage());
+                }
+                continue;
+            }
+
+            try {
+                clientExecutor.submit(() -> handleClient(cs));
+            } catch (RejectedExecutionException | OutOfMemoryError e) {
+                // shutting down, or out of platform threads under load
+                System.err.println("[LEADER] Could not start client handler: " + e);
+                try {
+                    cs.close();
+                } catch (IOException ignored) {}
             }
-        } catch (IOException e) {
-            System.err.println("[LEADER] Error encountered while connecting to client/node: " + e.getMessage());
         }
     }
 
-    private static void handleNodeConnection(Socket socket) {
+    private void handleNodeConnection(Socket socket) {
         try {
             InputStream in = socket.getInputStream();
             OutputStream out = socket.getOutputStream();
@@ -67,11 +241,19 @@ public class Leader {
                 return;
             }
 
-            NodeConnection node = new NodeConnection(socket, in, out, hello.getNodeId());
-            connectedNodes.add(node);
-
-            System.out.printf("[LEADER] Registered Node %s (%d total)%n",
-                hello.getNodeId(), connectedNodes.size());
+            String nodeId = hello.getNodeId();
+            NodeConnection node = new NodeConnection(socket, in, out, nodeId);
+            NodeConnection previous = connectedNodes.put(nodeId, node);
+            // only remove our own entry; a newer connection for the same id may already have replaced it
+            node.start(() -> connectedNodes.remove(nodeId, node));
+
+            if (previous != null) {
+                // registration is idempotent: a reconnecting Node takes over its old slot
+                previous.close();
+                System.out.printf("[LEADER] Node %s re-registered (%d total)%n", nodeId, connectedNodes.size());
+            } else {
+                System.out.printf("[LEADER] Registered Node %s (%d total)%n", nodeId, connectedNodes.size());
+            }
 
         } catch (IOException e) {
             System.err.println("[LEADER] Node connection failed: " + e.getMessage());
@@ -80,10 +262,18 @@ public class Leader {
 
     /**
      * Handles a single client's task request.
-     * Executes both local and distributed versions of the sum and sends back a comparison.
+     * Executes both local and distributed versions of the requested reduction and sends back a comparison.
+     * A request identical to a recent one is answered from the result cache, and one identical to a
+     * request still running waits for that one instead of computing the same thing again.
+     * If the client disconnects before the answer is ready, the task is cancelled.
      */
-    private static void handleClient(Socket socket) throws InterruptedException {
-        try (InputStream in = socket.getInputStream();
+    private void handleClient(Socket socket) {
+        Thread handler = Thread.currentThread();
+        // set by whichever comes first: the answer being sent, or the client going away
+        AtomicBoolean settled = new AtomicBoolean(false);
+
+        try (socket;
+             InputStream in = socket.getInputStream();
              OutputStream out = socket.getOutputStream()) {
 
             System.out.println("[LEADER] Waiting for TaskRequest...");
@@ -92,145 +282,308 @@ public class Leader {
                 System.err.println("[LEADER] No TaskRequest received. Exiting handler.");
                 return;
             }
+            ReduceOperation op;
+            try {
+                op = ReduceOperation.of(request.getOp(), request.getTopK(), request.getBucketWidth());
+            } catch (IllegalArgumentException e) {
+                sendError(out, 2, "Invalid task: " + e.getMessage());
+                return;
+            }
+            if (request.getStreaming()) {
+                handleStreamingTask(request, op, in, out, handler, settled);
+                return;
+            }
+            clientExecutor.submit(() -> watchForDisconnect(in, handler, settled));
 
-            System.out.printf("[LEADER] Received TaskRequest: list=%s | delayMs=%d%n",
-                request.getListList(), request.getDelayMs());
-
-            // --- Local computation (non-distributed) ---
-            long localStart = System.currentTimeMillis();
-            int localSum = computeWithDelay(request.getListList(), request.getDelayMs());
-            long localEnd = System.currentTimeMillis();
-            int localDuration = (int) (localEnd - localStart);
-            System.out.printf("[LEADER] Local sum: %d | Time: %dms%n", localSum, localDuration);
-
-            int requiredNodes = Math.min(connectedNodes.size(), 3);
-            if (connectedNodes.size() < 3) {
-                ErrorResponse error = ErrorResponse.newBuilder()
-                        .setMessage("Not enough nodes (min: 3)")
-                        .setErrorCode(1)
-                        .build();
-                error.writeDelimitedTo(out);
-                out.flush();
+            System.out.printf("[LEADER] Received TaskRequest: %s of %d items | delayMs=%d%n",
+                request.getOp(), request.getListCount(), request.getDelayMs());
+
+            ResultResponse result;
+            try {
+                result = resultCache.get(request, () -> runTask(request, op));
+            } catch (TaskFailure e) {
+                sendError(out, e.code, e.getMessage());
                 return;
             }
+            if (resultCache.enabled()) {
+                System.out.printf("[LEADER] %s | cache: %s%n",
+                        result.getCached() ? "Served from cache" : "Computed", resultCache.describeStats());
+            }
+            sendResult(out, settled, result);
 
-            List<NodeConnection> activeNodes = connectedNodes.subList(0, requiredNodes);
-            List<List<Integer>> partitions = partitionList(request.getListList(), connectedNodes.size());
-            System.out.println("[LEADER] Dispatching subtasks to registered nodes...");
+        } catch (IOException e) {
+            System.err.println("[LEADER] Client handling error: " + e.getMessage());
+        } catch (InterruptedException e) {
+            System.out.println("[LEADER] Client disconnected; task cancelled.");
+        } finally {
+            settled.set(true);
+        }
+    }
 
-            Map<String, Integer> partialResults = new ConcurrentHashMap<>();
-            List<Thread> threads = new ArrayList<>();
+    /**
+     * Runs one task from scratch: the timed local pass, then the distributed pass across the least-loaded Nodes.
+     */
+    private ResultResponse runTask(TaskRequest request, ReduceOperation op) throws TaskFailure, InterruptedException {
+        int[] values = toArray(request);
+
+        // --- Local computation (non-distributed) ---
+        long localStart = System.currentTimeMillis();
+        Reduction local = reduceWithDelay(op, values, request.getDelayMs());
+        long localEnd = System.currentTimeMillis();
+        int localDuration = (int) (localEnd - localStart);
+        System.out.printf("[LEADER] Local result: %s | Time: %dms%n", WorkScheduler.describe(local), localDuration);
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+
+        List<NodeConnection> activeNodes = selectNodes();
+        if (activeNodes.size() < MIN_NODES) {
+            throw new TaskFailure(1, "Not enough healthy nodes (min: " + MIN_NODES + ")");
+        }
+
+        WorkScheduler scheduler = WorkScheduler.of(op, values,
+                activeNodes.size() * chunksPerNode, request.getDelayMs(), speculationPercentile);
+        System.out.println("[LEADER] Dispatching chunks to registered nodes...");
 
-            long distributedStart = System.currentTimeMillis();
+        long distributedStart = System.currentTimeMillis();
+        WorkScheduler.Result distributed;
+        try {
+            distributed = scheduler.run(activeNodes, threadMode.factory());
+        } catch (IOException e) {
+            throw new TaskFailure(4, "Node communication failure: " + e.getMessage());
+        }
+        int distributedTime = (int) (System.currentTimeMillis() - distributedStart);
+
+        return buildResult(distributed, local, localDuration, distributedTime);
+    }
 
-            for (int i = 0; i < activeNodes.size(); i++) {
-                NodeConnection node = activeNodes.get(i);
-                List<Integer> part = partitions.get(i);
-                Thread t = new Thread(() -> {
+    /**
+     * Streaming mode: the numbers arrive as TaskChunk frames after the TaskRequest. Each chunk is
+     * handed to the scheduler as soon as it is read, so Nodes start before the last byte arrives,
+     * and the scheduler's backlog limit pushes back on the client through TCP when Nodes fall behind.
+     * The Leader only keeps a running reduction of the chunks as a checksum, not the list, so no
+     * timed local pass is made.
+     */
+    private void handleStreamingTask(TaskRequest request, ReduceOperation op, InputStream in, OutputStream out,
+                                     Thread handler, AtomicBoolean settled) throws IOException, InterruptedException {
+        System.out.printf("[LEADER] Receiving streamed task | delayMs=%d%n", request.getDelayMs());
+        List<NodeConnection> activeNodes = selectNodes();
+        if (activeNodes.size() < MIN_NODES) {
+            sendError(out, 1, "Not enough healthy nodes (min: " + MIN_NODES + ")");
+            return;
+        }
+
+        WorkScheduler scheduler = new WorkScheduler(op, request.getDelayMs(), speculationPercentile,
+                activeNodes.size() * chunksPerNode);
+        long distributedStart = System.currentTimeMillis();
+        Future<WorkScheduler.Result> running = clientExecutor.submit(
+                () -> scheduler.run(activeNodes, threadMode.factory()));
+
+        Reduction checksum = op.reduce(new int[0], 0, 0);
+        int items = 0;
+        WorkScheduler.Result distributed;
+        try {
+            while (true) {
+                TaskChunk chunk = TaskChunk.parseDelimitedFrom(in);
+                if (chunk == null) {
+                    System.out.println("[LEADER] Client closed the stream early; task cancelled.");
+                    return;
+                }
+                int[] values = toArray(chunk);
+                if (values.length > 0) {
+                    checksum = op.combine(checksum, op.reduce(values, 0, values.length));
+                    items += values.length;
                     try {
-                        SubtaskRequest subtask = SubtaskRequest.newBuilder()
-                            .addAllList(part)
-                            .setDelayMs(request.getDelayMs())
-                            .build();
-                        subtask.writeDelimitedTo(node.out);
-                        node.out.flush();
-
-                        SubtaskResult result = SubtaskResult.parseDelimitedFrom(node.in);
-                        partialResults.put(node.nodeId, result.getSum());
-                        System.out.printf("[LEADER] Node %s responded: %d%n", node.nodeId, result.getSum());
+                        scheduler.put(values, 0, values.length);
                     } catch (IOException e) {
-                        System.err.printf("[LEADER] Failed to dispatch to Node %s: %s%n", node.nodeId, e.getMessage());
-                        connectedNodes.remove(node);
+                        sendError(out, 4, "Node communication failure: " + e.getMessage());
+                        return;
                     }
-                });
-                threads.add(t);
-                t.start();
+                }
+                if (chunk.getLast()) {
+                    break;
+                }
             }
+            scheduler.close();
+            System.out.printf("[LEADER] Stream complete: %d items | checksum: %s%n",
+                    items, WorkScheduler.describe(checksum));
 
-            for (Thread t : threads) t.join();
-
-            long distributedEnd = System.currentTimeMillis();
-            int distributedTime = (int) (distributedEnd - distributedStart);
-
-            // --- Consensus Check ---
-            Set<Integer> uniqueResults = new HashSet<>(partialResults.values());
-            if (uniqueResults.size() != partialResults.size()) {
-                System.err.println("[LEADER] Consensus failure detected: duplicate or inconsistent partial results.");
-                ErrorResponse error = ErrorResponse.newBuilder()
-                        .setMessage("Consensus check failed: inconsistent node responses.")
-                        .setErrorCode(3)
-                        .build();
-                error.writeDelimitedTo(out);
+            // the client only waits for the answer from here on
+            clientExecutor.submit(() -> watchForDisconnect(in, handler, settled));
+            try {
+                distributed = running.get();
+            } catch (ExecutionException e) {
+                sendError(out, 4, "Node communication failure: " + e.getCause().getMessage());
                 return;
             }
+        } finally {
+            // stops the pullers if the stream broke off or this handler was cancelled
+            running.cancel(true);
+        }
+        int distributedTime = (int) (System.currentTimeMillis() - distributedStart);
 
-            int totalDistributedSum = partialResults.values().stream().mapToInt(Integer::intValue).sum();
-            System.out.printf("[LEADER] Distributed result: %d | Local result: %d%n", totalDistributedSum, localSum);
+        try {
+            sendResult(out, settled, buildResult(distributed, checksum, 0, distributedTime));
+        } catch (TaskFailure e) {
+            sendError(out, e.code, e.getMessage());
+        }
+    }
 
-            // --- Respond to Client with results ---
-            ResultResponse result = ResultResponse.newBuilder()
-                .setSum(totalDistributedSum)
-                .setSingleThreadTimeMs(localDuration)
-                .setDistributedTimeMs(distributedTime)
+    private static void sendError(OutputStream out, int code, String message) throws IOException {
+        ErrorResponse error = ErrorResponse.newBuilder()
+                .setMessage(message)
+                .setErrorCode(code)
                 .build();
+        error.writeDelimitedTo(out);
+        out.flush();
+    }
 
-            result.writeDelimitedTo(out);
-            out.flush();
-            System.out.println("[LEADER] Sent result to client.");
+    /**
+     * Cross-checks the scheduler's result and turns it into the answer for the client.
+     *
+     * @throws TaskFailure with code 3 if two copies of a speculated chunk disagreed
+     */
+    private static ResultResponse buildResult(WorkScheduler.Result distributed, Reduction local,
+                                              int localDuration, int distributedTime) throws TaskFailure {
+        // --- Cross-check of speculatively re-run chunks ---
+        if (!distributed.mismatches.isEmpty()) {
+            System.err.println("[LEADER] Cross-check failed: " + distributed.mismatches);
+            throw new TaskFailure(3, "Consensus check failed: " + distributed.mismatches.get(0));
+        }
 
-        } catch (IOException e) {
-            System.err.println("[LEADER] Client handling error: " + e.getMessage());
+        Reduction reduction = distributed.reduction;
+        System.out.printf("[LEADER] Distributed result: %s | Local result: %s%n",
+                WorkScheduler.describe(reduction), WorkScheduler.describe(local));
+        for (NodeStats stats : distributed.nodeStats) {
+            System.out.printf("[LEADER] Node %s: %d chunks, %d items, %.1f items/s%n",
+                    stats.getNodeId(), stats.getChunks(), stats.getItems(), stats.getItemsPerSecond());
+        }
+
+        return ResultResponse.newBuilder()
+            .setSum((int) reduction.getTotal())
+            .setReduction(reduction)
+            .setSingleThreadTimeMs(localDuration)
+            .setDistributedTimeMs(distributedTime)
+            .addAllNodeStats(distributed.nodeStats)
+            .build();
+    }
+
+    /**
+     * Answers the client, unless it already went away.
+     */
+    private static void sendResult(OutputStream out, AtomicBoolean settled, ResultResponse result)
+            throws IOException, InterruptedException {
+        // --- Respond to Client with results ---
+        if (!settled.compareAndSet(false, true)) {
+            throw new InterruptedException();
+        }
+        result.writeDelimitedTo(out);
+        out.flush();
+        System.out.println("[LEADER] Sent result to client.");
+    }
+
+    /**
+     * A Client sends nothing after its TaskRequest, so end-of-stream here means it went away.
+     * Interrupts the handler unless its answer is already on the way.
+     */
+    private static void watchForDisconnect(InputStream in, Thread handler, AtomicBoolean settled) {
+        try {
+            while (in.read() != -1) {
+                // ignore stray bytes
+            }
+        } catch (IOException ignored) {
+            // socket closed: by the client or by the handler after answering
+        }
+        if (settled.compareAndSet(false, true)) {
+            handler.interrupt();
         }
     }
 
+    /**
+     * Copies the request's packed list into a plain int[] without boxing any element.
+     */
+    static int[] toArray(TaskRequest request) {
+        int[] values = new int[request.getListCount()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = request.getList(i);
+        }
+        return values;
+    }
+
+    static int[] toArray(TaskChunk chunk) {
+        int[] values = new int[chunk.getListCount()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = chunk.getList(i);
+        }
+        return values;
+    }
+
     /**
      * Performs a simple sum of a list of integers, with an artificial delay between additions.
      */
-    public static int computeWithDelay(List<Integer> list, int delayMs) {
+    public static int computeWithDelay(int[] values, int delayMs) {
         int sum = 0;
-        for (int num : list) {
+        for (int num : values) {
             sum += num;
-            try {
-                Thread.sleep(delayMs);
-            } catch (InterruptedException ignored) {}
+            if (delayMs > 0) {
+                try {
+                    Thread.sleep(delayMs);
+                } catch (InterruptedException e) {
+                    // keep the flag so the caller can see the task was cancelled; later sleeps return at once
+                    Thread.currentThread().interrupt();
+                }
+            }
         }
         return sum;
     }
 
+    public static int computeWithDelay(List<Integer> list, int delayMs) {
+        return computeWithDelay(list.stream().mapToInt(Integer::intValue).toArray(), delayMs);
+    }
+
     /**
-     * Evenly and smartly partitions a list into up to N parts.
-     * Nodes may receive uneven sizes, but all input data is used.
+     * Single-threaded baseline for any reduction: the same per-item delay as the Nodes, then one pass of {@code op}.
      */
-    public static List<List<Integer>> partitionList(List<Integer> input, int nodeCount) {
-        int totalSize = input.size();
-        int actualPartitions = Math.min(nodeCount, totalSize); // Don't create empty partitions
+    static Reduction reduceWithDelay(ReduceOperation op, int[] values, int delayMs) {
+        for (int i = 0; i < values.length && delayMs > 0; i++) {
+            try {
+                Thread.sleep(delayMs);
+            } catch (InterruptedException e) {
+                // keep the flag so the caller can see the task was cancelled
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return op.reduce(values, 0, values.length);
+    }
 
-        List<List<Integer>> result = new ArrayList<>(actualPartitions);
-        int baseSize = totalSize / actualPartitions;
-        int remainder = totalSize % actualPartitions;
+    /**
+     * Evenly and smartly partitions {@code length} items into up to N contiguous ranges.
+     * Part {@code i} covers {@code [bounds[i], bounds[i + 1])}; earlier parts take the remainder.
+     */
+    static int[] partitionBounds(int length, int nodeCount) {
+        int actualPartitions = Math.max(1, Math.min(nodeCount, length)); // Don't create empty partitions
+        int baseSize = length / actualPartitions;
+        int remainder = length % actualPartitions;
 
-        int index = 0;
+        int[] bounds = new int[actualPartitions + 1];
         for (int i = 0; i < actualPartitions; i++) {
             int partSize = baseSize + (i < remainder ? 1 : 0); // Spread remainder fairly
-            List<Integer> part = input.subList(index, index + partSize);
-            result.add(new ArrayList<>(part));
-            index += partSize;
+            bounds[i + 1] = bounds[i] + partSize;
         }
-
-        return result;
+        return bounds;
     }
 
-    static class NodeConnection {
-        final Socket socket;
-        final OutputStream out;
-        final InputStream in;
-        final String nodeId;
-
-        NodeConnection(Socket socket, InputStream in, OutputStream out, String nodeId) {
-            this.socket = socket;
-            this.in = in;
-            this.out = out;
-            this.nodeId = nodeId;
+    /**
+     * Evenly and smartly partitions a list into up to N parts.
+     * Nodes may receive uneven sizes, but all input data is used.
+     */
+    public static List<List<Integer>> partitionList(List<Integer> input, int nodeCount) {
+        int[] bounds = partitionBounds(input.size(), nodeCount);
+        List<List<Integer>> result = new ArrayList<>(bounds.length - 1);
+        for (int i = 0; i + 1 < bounds.length; i++) {
+            result.add(new ArrayList<>(input.subList(bounds[i], bounds[i + 1])));
         }
+        return result;
     }
-}
\ No newline at end of file
+}
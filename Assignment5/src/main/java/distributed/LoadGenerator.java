@@ -0,0 +1,132 @@
+package distributed;
+
+import distributed.protocol.ResultResponse;
+import distributed.protocol.TaskRequest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Opens many concurrent Client connections against an in-process Leader and Nodes,
+ * once with platform-thread handlers and once with virtual-thread handlers, and prints
+ * throughput, latency percentiles, peak thread count and peak heap for each run.
+ */
+public class LoadGenerator {
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length >= 1 ? Integer.parseInt(args[0]) : 10_000;
+        int listSize = args.length >= 2 ? Integer.parseInt(args[1]) : 12;
+        int delayMs = args.length >= 3 ? Integer.parseInt(args[2]) : 0;
+        int nodes = args.length >= 4 ? Integer.parseInt(args[3]) : 3;
+
+        System.out.printf("[LOAD] %d clients, list of %d, %dms delay, %d nodes%n", clients, listSize, delayMs, nodes);
+        for (Leader.ThreadMode mode : Leader.ThreadMode.values()) {
+            run(mode, clients, listSize, delayMs, nodes);
+        }
+    }
+
+    private static void run(Leader.ThreadMode mode, int clients, int listSize, int delayMs, int nodeCount)
+            throws Exception {
+        List<Integer> list = IntStream.rangeClosed(1, listSize).boxed().collect(Collectors.toList());
+        int expected = list.stream().mapToInt(Integer::intValue).sum();
+        TaskRequest request = TaskRequest.newBuilder().addAllList(list).setDelayMs(delayMs).build();
+
+        // the Leader and Nodes log every task; keep that out of the report
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        InProcessCluster cluster = new InProcessCluster(new Leader(4, 0.9, mode), nodeCount);
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        threads.resetPeakThreadCount();
+        AtomicLong peakHeap = new AtomicLong();
+        Thread sampler = Thread.ofPlatform().daemon().start(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+
+        long[] latencies = new long[clients];
+        AtomicInteger errors = new AtomicInteger();
+        CountDownLatch go = new CountDownLatch(1);
+        long start;
+        try (ExecutorService load = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < clients; i++) {
+                int slot = i;
+                load.submit(() -> {
+                    try {
+                        go.await();
+                        long sent = System.nanoTime();
+                        boolean correct = send(cluster.clientPort(), request) == expected;
+                        latencies[slot] = correct ? System.nanoTime() - sent : -1;
+                        if (!correct) {
+                            errors.incrementAndGet();
+                        }
+                    } catch (IOException | InterruptedException e) {
+                        errors.incrementAndGet();
+                        latencies[slot] = -1;
+                    }
+                });
+            }
+            start = System.nanoTime();
+            go.countDown();
+        }
+        long elapsedNs = System.nanoTime() - start;
+
+        sampler.interrupt();
+        cluster.close();
+        System.setOut(console);
+
+        long[] ok = Arrays.stream(latencies).filter(l -> l >= 0).sorted().toArray();
+        System.out.printf("[LOAD] %-8s %8.0f tasks/s | p50 %6.1fms | p99 %7.1fms | errors %d | peak threads %d | peak heap %dMB%n",
+                mode.name().toLowerCase(),
+                (clients - errors.get()) / (elapsedNs / 1e9),
+                percentileMs(ok, 0.50), percentileMs(ok, 0.99),
+                errors.get(),
+                threads.getPeakThreadCount(),
+                peakHeap.get() / (1024 * 1024));
+    }
+
+    /**
+     * Sends one TaskRequest and returns the sum the Leader answered with, or -1 on an error reply.
+     */
+    private static int send(int port, TaskRequest request) throws IOException {
+        try (Socket socket = new Socket("localhost", port)) {
+            request.writeDelimitedTo(socket.getOutputStream());
+            ResultResponse result = ResultResponse.parseDelimitedFrom(socket.getInputStream());
+            return result == null || result.getNodeStatsCount() == 0 ? -1 : result.getSum();
+        }
+    }
+
+    /**
+     * Nearest-rank percentile of sorted nanosecond samples, in milliseconds.
+     */
+    static double percentileMs(long[] sortedNs, double fraction) {
+        if (sortedNs.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(fraction * sortedNs.length);
+        return sortedNs[Math.max(0, rank - 1)] / 1e6;
+    }
+}
@@ -1,6 +1,11 @@
 package distributed;
 
+import distributed.protocol.HeartbeatAck;
+import distributed.protocol.LeaderMessage;
 import distributed.protocol.NodeHello;
+import distributed.protocol.NodeMessage;
+import distributed.protocol.ReduceOp;
+import distributed.protocol.Reduction;
 import distributed.protocol.SubtaskRequest;
 import distributed.protocol.SubtaskResult;
 
@@ -8,11 +13,33 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class Node {
 
+    // wait before the first reconnect attempt; doubles after each attempt that cannot reach the Leader
+    private static final long MIN_RECONNECT_MS = 500;
+    private static final long MAX_RECONNECT_MS = 5000;
+    // smallest slice a fork-join reduce splits off
+    static final int MIN_LEAF = 4096;
+
+    // one worker per core, only ever busy reducing; subtasks sleep their simulated delay on their own virtual threads
+    private static final ForkJoinPool reducers = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
     public static void main(String[] args) {
         if (args.length < 2) {
             System.out.println("[NODE] Usage: java Node <host> <port> [-Pwrong=1]");
@@ -22,63 +49,320 @@ public class Node {
         String host = args[0];
         int port = Integer.parseInt(args[1]);
         boolean simulateFault = args.length >= 3 && args[2].equals("1");
+        run(host, port, simulateFault);
+    }
+
+    /**
+     * Registers with the Leader and serves subtasks. When the connection drops the Node
+     * reconnects under the same id, backing off between failed attempts, until interrupted.
+     */
+    static void run(String host, int port, boolean simulateFault) {
+        String nodeId = "Node-" + UUID.randomUUID();
+        long backoffMs = MIN_RECONNECT_MS;
+
+        while (true) {
+            if (serve(host, port, nodeId, simulateFault)) {
+                backoffMs = MIN_RECONNECT_MS;
+            } else {
+                backoffMs = Math.min(backoffMs * 2, MAX_RECONNECT_MS);
+            }
+            System.out.printf("[NODE] Reconnecting to Leader in %dms...%n", backoffMs);
+            try {
+                Thread.sleep(backoffMs);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
 
-        try (Socket socket = new Socket(host, port)) {
+    /**
+     * Serves one connection to the Leader until it closes.
+     * Each subtask runs on its own virtual thread, so a delayed subtask costs no platform thread;
+     * heartbeats are answered straight from the reading thread so a busy Node still looks alive.
+     * A CancelSubtask interrupts the matching subtask, which then sends nothing back.
+     *
+     * @return whether the handshake got through
+     */
+    private static boolean serve(String host, int port, String nodeId, boolean simulateFault) {
+        boolean registered = false;
+        try (Socket socket = new Socket(host, port);
+             ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor()) {
             OutputStream out = socket.getOutputStream();
             InputStream in = socket.getInputStream();
+            Lock writeLock = new ReentrantLock();
+            AtomicInteger active = new AtomicInteger();
+            // subtasks that may still be cancelled, by task id; whoever removes an entry decides its fate
+            Map<Long, FutureTask<SubtaskResult>> running = new ConcurrentHashMap<>();
 
             // Send handshake
             NodeHello hello = NodeHello.newBuilder()
-                    .setNodeId("Node-" + UUID.randomUUID())
+                    .setNodeId(nodeId)
                     .build();
             hello.writeDelimitedTo(out);
+            registered = true;
             System.out.println("[NODE] Sent handshake to Leader.");
 
-            while (true) {
-                SubtaskRequest task = SubtaskRequest.parseDelimitedFrom(in);
-                if (task == null) {
-                    System.out.println("[NODE] No more tasks. Closing connection.");
-                    break;
+            // Subtasks are pipelined: keep reading while earlier ones are still computing
+            try {
+                while (true) {
+                    LeaderMessage message = LeaderMessage.parseDelimitedFrom(in);
+                    if (message == null) {
+                        System.out.println("[NODE] Leader closed the connection.");
+                        break;
+                    }
+
+                    switch (message.getBodyCase()) {
+                        case HEARTBEAT:
+                            send(NodeMessage.newBuilder()
+                                    .setHeartbeatAck(HeartbeatAck.newBuilder()
+                                            .setSeq(message.getHeartbeat().getSeq())
+                                            .setActiveSubtasks(active.get()))
+                                    .build(), out, writeLock);
+                            break;
+                        case SUBTASK:
+                            SubtaskRequest task = message.getSubtask();
+                            FutureTask<SubtaskResult> job = new FutureTask<>(() -> runSubtask(task, nodeId, simulateFault));
+                            running.put(task.getTaskId(), job);
+                            active.incrementAndGet();
+                            workers.submit(() -> {
+                                try {
+                                    job.run();
+                                    answer(task.getTaskId(), job, running, out, writeLock);
+                                } finally {
+                                    active.decrementAndGet();
+                                }
+                            });
+                            break;
+                        case CANCEL:
+                            long cancelledId = message.getCancel().getTaskId();
+                            Future<SubtaskResult> cancelled = running.remove(cancelledId);
+                            if (cancelled != null) {
+                                // interrupts the subtask's virtual thread wherever it is: sleeping or waiting on the reduce
+                                cancelled.cancel(true);
+                                System.out.printf("[NODE] Task %d cancelled by the Leader%n", cancelledId);
+                            }
+                            break;
+                        default:
+                            System.err.println("[NODE] Ignoring empty frame from Leader.");
+                    }
                 }
+            } finally {
+                // nobody is left to read the answers
+                workers.shutdownNow();
+            }
+        } catch (IOException e) {
+            System.err.println("[NODE] Connection to Leader failed: " + e.getMessage());
+        }
+        return registered;
+    }
 
-                List<Integer> nums = task.getListList();
-                int delay = task.getDelayMs();
+    /**
+     * Writes one frame to the Leader. Results and heartbeat acks come from different threads, so
+     * writes are serialized with a ReentrantLock rather than synchronized, which would pin a virtual thread.
+     */
+    private static void send(NodeMessage message, OutputStream out, Lock writeLock) throws IOException {
+        writeLock.lock();
+        try {
+            message.writeDelimitedTo(out);
+            out.flush();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Sends the result of a finished subtask, unless the Leader cancelled it meanwhile.
+     */
+    private static void answer(long taskId, FutureTask<SubtaskResult> job, Map<Long, FutureTask<SubtaskResult>> running,
+                               OutputStream out, Lock writeLock) {
+        // a cancel that arrived first has taken the entry; clear its interrupt so it cannot reach a socket write
+        Thread.interrupted();
+        if (!running.remove(taskId, job)) {
+            return;
+        }
+        try {
+            send(NodeMessage.newBuilder().setResult(job.get()).build(), out, writeLock);
+        } catch (ExecutionException | InterruptedException e) {
+            // interrupted because the connection is going away; nobody wants the answer
+        } catch (IOException e) {
+            System.err.printf("[NODE] Failed to send result for task %d: %s%n", taskId, e.getMessage());
+        }
+    }
 
-                System.out.printf("[NODE] Received task: %s | Delay: %dms%n", nums, delay);
+    /**
+     * Reduces one subtask across the Node's cores and writes its result, tagged with the request's task id.
+     * Results may leave in a different order than their requests arrived. A subtask the Node cannot run
+     * is answered with {@code error} set instead of a reduction.
+     */
+    static void handleSubtask(SubtaskRequest task, String nodeId, boolean simulateFault,
+                              OutputStream out, Lock writeLock) {
+        SubtaskResult response;
+        try {
+            response = runSubtask(task, nodeId, simulateFault);
+        } catch (InterruptedException e) {
+            return;
+        }
+        try {
+            send(NodeMessage.newBuilder().setResult(response).build(), out, writeLock);
+        } catch (IOException e) {
+            System.err.printf("[NODE] Failed to send result for task %d: %s%n", task.getTaskId(), e.getMessage());
+        }
+    }
+
+    /**
+     * Reduces one subtask across the Node's cores into the SubtaskResult that answers it.
+     *
+     * @throws InterruptedException if the subtask was cancelled or the connection is closing
+     */
+    static SubtaskResult runSubtask(SubtaskRequest task, String nodeId, boolean simulateFault)
+            throws InterruptedException {
+        // read the packed field by index so no element is boxed
+        int[] nums = new int[task.getListCount()];
+        for (int i = 0; i < nums.length; i++) {
+            nums[i] = task.getList(i);
+        }
+        int delay = task.getDelayMs();
 
-                int result = simulateFault
-                        ? computeFaulty(nums, delay)
-                        : computeWithDelay(nums, delay);
+        System.out.printf("[NODE] Received task %d: %s of %d items | Delay: %dms%n",
+                task.getTaskId(), task.getOp(), nums.length, delay);
 
-                SubtaskResult response = SubtaskResult.newBuilder()
-                        .setSum(result)
-                        .build();
-                response.writeDelimitedTo(out);
+        SubtaskResult.Builder response = SubtaskResult.newBuilder()
+                .setNodeId(nodeId)
+                .setTaskId(task.getTaskId());
+        try {
+            ReduceOperation op = ReduceOperation.of(task.getOp(), task.getTopK(), task.getBucketWidth());
+            Reduction result = reduceParallel(op, nums, delay);
+            if (simulateFault) {
+                result = faulty(op, nums);
             }
-        } catch (IOException e) {
-            System.err.println("[NODE] Error occurred during handshake: " + e.getMessage());
+            response.setSum((int) result.getTotal()).setReduction(result);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            // still answer the task id, so the Leader's future fails now instead of when the connection does
+            System.err.printf("[NODE] Rejected task %d: %s%n", task.getTaskId(), e.getMessage());
+            response.setError(String.valueOf(e.getMessage()));
         }
+        return response.build();
     }
 
-    public static int computeWithDelay(List<Integer> list, int delayMs) {
+    /**
+     * Reduces {@code nums} with {@code op} on the Node's fork-join pool: the array is halved until the
+     * slices are small enough, each slice is reduced on its own, and the partials are combined on the
+     * way back up.
+     *
+     * The simulated per-item delay is slept first, on the calling (virtual) thread, for as long as one core's
+     * share of the items would take, as if the items were worked through on every core at once. No fork-join
+     * worker is parked while it sleeps, so delayed subtasks overlap each other freely and the pool is only held
+     * for the actual reduce.
+     *
+     * @throws InterruptedException if the caller is interrupted
+     */
+    static Reduction reduceParallel(ReduceOperation op, int[] nums, int delayMs) throws InterruptedException {
+        int parallelism = reducers.getParallelism();
+        if (delayMs > 0 && nums.length > 0) {
+            long perCore = (nums.length + parallelism - 1) / parallelism;
+            Thread.sleep(perCore * delayMs);
+        }
+        int leaf = Math.max(MIN_LEAF, nums.length / (parallelism * 4));
+        Slice root = new Slice(op, nums, 0, nums.length, leaf);
+        try {
+            return reducers.submit(root).get();
+        } catch (InterruptedException e) {
+            root.cancel(false);
+            throw e;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Reduce failed", e.getCause());
+        }
+    }
+
+    /**
+     * One fork-join step of {@link #reduceParallel} over {@code nums[from, to)}.
+     */
+    private static final class Slice extends RecursiveTask<Reduction> {
+        private final ReduceOperation op;
+        private final int[] nums;
+        private final int from;
+        private final int to;
+        private final int leaf;
+
+        Slice(ReduceOperation op, int[] nums, int from, int to, int leaf) {
+            this.op = op;
+            this.nums = nums;
+            this.from = from;
+            this.to = to;
+            this.leaf = leaf;
+        }
+
+        @Override
+        protected Reduction compute() {
+            if (to - from <= leaf) {
+                return op.reduce(nums, from, to);
+            }
+            int mid = (from + to) >>> 1;
+            Slice left = new Slice(op, nums, from, mid, leaf);
+            left.fork();
+            Reduction right = new Slice(op, nums, mid, to, leaf).compute();
+            return op.combine(left.join(), right);
+        }
+    }
+
+    /**
+     * What a faulty Node reports for {@code nums}: it multiplies where it should add, and reduces as if every
+     * value were that product. The whole reduction is wrong together, so {@code total} (and the old {@code sum}
+     * read from it), {@code value}, {@code mean}, the buckets and the top values all disagree with a healthy Node.
+     */
+    static Reduction faulty(ReduceOperation op, int[] nums) {
+        if (nums.length == 0) {
+            return op.reduce(nums, 0, 0);
+        }
+        int product = computeFaulty(nums, 0);
+        int[] wrong = new int[nums.length];
+        Arrays.fill(wrong, product);
+        Reduction.Builder result = op.reduce(wrong, 0, wrong.length).toBuilder()
+                .setTotal(product)
+                .setMean((double) product / nums.length);
+        if (op.op != ReduceOp.HISTOGRAM && op.op != ReduceOp.TOP_K) {
+            result.setValue(product);
+        }
+        return result.build();
+    }
+
+    public static int computeWithDelay(int[] nums, int delayMs) {
         int sum = 0;
-        for (int num : list) {
+        for (int num : nums) {
             sum += num;
-            try {
-                Thread.sleep(delayMs);
-            } catch (InterruptedException ignored) {}
+            if (delayMs > 0) {
+                try {
+                    Thread.sleep(delayMs);
+                } catch (InterruptedException e) {
+                    // the connection is gone; keep the flag so the remaining sleeps return at once
+                    Thread.currentThread().interrupt();
+                }
+            }
         }
         return sum;
     }
 
-    public static int computeFaulty(List<Integer> list, int delayMs) {
+    public static int computeFaulty(int[] nums, int delayMs) {
         int product = 1;
-        for (int num : list) {
+        for (int num : nums) {
             product *= num;
-            try {
-                Thread.sleep(delayMs);
-            } catch (InterruptedException ignored) {}
+            if (delayMs > 0) {
+                try {
+                    Thread.sleep(delayMs);
+                } catch (InterruptedException e) {
+                    // the connection is gone; keep the flag so the remaining sleeps return at once
+                    Thread.currentThread().interrupt();
+                }
+            }
         }
         return product;
     }
-}
\ No newline at end of file
+
+    public static int computeWithDelay(List<Integer> list, int delayMs) {
+        return computeWithDelay(list.stream().mapToInt(Integer::intValue).toArray(), delayMs);
+    }
+
+    public static int computeFaulty(List<Integer> list, int delayMs) {
+        return computeFaulty(list.stream().mapToInt(Integer::intValue).toArray(), delayMs);
+    }
+}
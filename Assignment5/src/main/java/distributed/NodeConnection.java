@@ -0,0 +1,350 @@
+package distributed;
+
+import distributed.protocol.CancelSubtask;
+import distributed.protocol.Heartbeat;
+import distributed.protocol.LeaderMessage;
+import distributed.protocol.NodeMessage;
+import distributed.protocol.SubtaskRequest;
+import distributed.protocol.SubtaskResult;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persistent, multiplexed connection from the Leader to one registered Node.
+ * Every subtask is tagged with a task id and queued for a single writer thread;
+ * a single reader thread hands each SubtaskResult to the future waiting on that id.
+ * Any number of client tasks can therefore be in flight on the same socket.
+ *
+ * Subtasks are queued as ranges of the task's int[] and encoded straight onto the socket
+ * as delimited LeaderMessage frames, so no per-chunk list or message is ever built.
+ *
+ * The connection also tracks the Node's health: when it was last heard from, how many
+ * subtasks it reports as active, and a moving average of its subtask round trips.
+ */
+class NodeConnection {
+
+    private static final AtomicLong nextTaskId = new AtomicLong(1);
+    // weight of the newest round trip in the latency moving average
+    private static final double LATENCY_ALPHA = 0.2;
+
+    /**
+     * A frame waiting for the writer thread.
+     */
+    private interface Outbound {
+        void writeTo(CodedOutputStream out) throws IOException;
+    }
+
+    /**
+     * A queued subtask: {@code values[from, to)} plus its delay and reduction, not yet encoded.
+     */
+    private static final class Subtask implements Outbound {
+        final long taskId;
+        final int[] values;
+        final int from;
+        final int to;
+        final int delayMs;
+        final ReduceOperation op;
+
+        Subtask(long taskId, int[] values, int from, int to, int delayMs, ReduceOperation op) {
+            this.taskId = taskId;
+            this.values = values;
+            this.from = from;
+            this.to = to;
+            this.delayMs = delayMs;
+            this.op = op;
+        }
+
+        @Override
+        public void writeTo(CodedOutputStream out) throws IOException {
+            writeSubtask(out, taskId, values, from, to, delayMs, op);
+        }
+    }
+
+    private static final class Pending {
+        final CompletableFuture<SubtaskResult> future = new CompletableFuture<>();
+        final long sentAt = System.nanoTime();
+    }
+
+    final Socket socket;
+    final CodedOutputStream out;
+    final InputStream in;
+    final String nodeId;
+
+    private final BlockingQueue<Outbound> outbound = new LinkedBlockingQueue<>();
+    private final Map<Long, Pending> pending = new ConcurrentHashMap<>();
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private final AtomicLong heartbeatSeq = new AtomicLong();
+
+    private volatile long lastHeardAt = System.currentTimeMillis();
+    private volatile int reportedActive = 0;
+    private volatile double latencyMs = 0;
+
+    private Thread writer;
+    private Runnable onClose = () -> {};
+
+    NodeConnection(Socket socket, InputStream in, OutputStream out, String nodeId) {
+        this.socket = socket;
+        this.in = in;
+        this.out = CodedOutputStream.newInstance(out);
+        this.nodeId = nodeId;
+    }
+
+    /**
+     * Starts the writer and reader threads. {@code onClose} runs once when the connection fails or is closed.
+     */
+    void start(Runnable onClose) {
+        this.onClose = onClose;
+        writer = new Thread(this::writeLoop, "writer-" + nodeId);
+        Thread reader = new Thread(this::readLoop, "reader-" + nodeId);
+        writer.setDaemon(true);
+        reader.setDaemon(true);
+        writer.start();
+        reader.start();
+    }
+
+    /**
+     * Queues {@code values[from, to)} as a subtask for this Node, to be reduced with {@code op}, and returns
+     * a future completed by the matching SubtaskResult. The future fails with an IOException if the connection drops before the
+     * result arrives, or if the Node answers with an error. The array is read by the writer thread, so it must not change
+     * while in flight.
+     *
+     * Cancelling the future abandons the subtask: it is taken off the send queue if it has not gone out yet,
+     * otherwise the Node is told to stop it.
+     */
+    CompletableFuture<SubtaskResult> submit(int[] values, int from, int to, int delayMs, ReduceOperation op) {
+        long taskId = nextTaskId.getAndIncrement();
+        Pending entry = new Pending();
+        Subtask subtask = new Subtask(taskId, values, from, to, delayMs, op);
+        pending.put(taskId, entry);
+        outbound.add(subtask);
+        entry.future.whenComplete((result, e) -> {
+            if (entry.future.isCancelled()) {
+                abandon(subtask);
+            }
+        });
+
+        // close() may have drained pending just before we registered
+        if (closed.get() && pending.remove(taskId) != null) {
+            entry.future.completeExceptionally(new IOException("Node " + nodeId + " is disconnected"));
+        }
+        return entry.future;
+    }
+
+    private void abandon(Subtask subtask) {
+        pending.remove(subtask.taskId);
+        // the writer sends frames in queue order, so a cancel queued now always follows its subtask
+        if (!outbound.remove(subtask) && !closed.get()) {
+            LeaderMessage frame = LeaderMessage.newBuilder()
+                    .setCancel(CancelSubtask.newBuilder().setTaskId(subtask.taskId))
+                    .build();
+            outbound.add(o -> o.writeMessageNoTag(frame));
+        }
+    }
+
+    /**
+     * Failure detector step, called periodically by the Leader: closes the connection if the Node
+     * has been silent for longer than {@code failureTimeoutMs}, otherwise sends it a Heartbeat.
+     */
+    void heartbeat(long failureTimeoutMs) {
+        if (closed.get()) {
+            return;
+        }
+        long silentMs = silentMs();
+        if (silentMs > failureTimeoutMs) {
+            close(new IOException("no heartbeat for " + silentMs + "ms"));
+            return;
+        }
+        LeaderMessage frame = LeaderMessage.newBuilder()
+                .setHeartbeat(Heartbeat.newBuilder().setSeq(heartbeatSeq.incrementAndGet()))
+                .build();
+        // writeMessageNoTag writes the length prefix, i.e. the same framing as writeDelimitedTo
+        outbound.add(o -> o.writeMessageNoTag(frame));
+    }
+
+    /**
+     * Milliseconds since any frame last arrived from this Node.
+     */
+    long silentMs() {
+        return System.currentTimeMillis() - lastHeardAt;
+    }
+
+    /**
+     * Number of subtasks sent to this Node that have not been answered yet.
+     */
+    int inFlight() {
+        return pending.size();
+    }
+
+    /**
+     * Relative cost of giving this Node more work: its queue depth (the larger of what we have
+     * outstanding and what it last reported) times its recent subtask round trip.
+     */
+    double loadScore() {
+        return (Math.max(inFlight(), reportedActive) + 1) * Math.max(1.0, latencyMs);
+    }
+
+    boolean isClosed() {
+        return closed.get();
+    }
+
+    void close() {
+        close(new IOException("Connection to Node " + nodeId + " closed"));
+    }
+
+    private void writeLoop() {
+        try {
+            while (!closed.get()) {
+                Outbound next = outbound.take();
+                next.writeTo(out);
+                // batch whatever queued up meanwhile into the same flush
+                while ((next = outbound.poll()) != null) {
+                    next.writeTo(out);
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            close(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes a length-delimited LeaderMessage carrying a SubtaskRequest for {@code values[from, to)},
+     * field by field. Produces the same bytes as building the messages and calling {@code writeDelimitedTo}.
+     */
+    static void writeSubtask(CodedOutputStream out, long taskId, int[] values, int from, int to, int delayMs,
+                             ReduceOperation op) throws IOException {
+        int packedSize = 0;
+        for (int i = from; i < to; i++) {
+            packedSize += CodedOutputStream.computeInt32SizeNoTag(values[i]);
+        }
+
+        int subtaskSize = 0;
+        if (packedSize > 0) {
+            subtaskSize += CodedOutputStream.computeTagSize(SubtaskRequest.LIST_FIELD_NUMBER)
+                    + CodedOutputStream.computeUInt32SizeNoTag(packedSize) + packedSize;
+        }
+        if (delayMs != 0) {
+            subtaskSize += CodedOutputStream.computeInt32Size(SubtaskRequest.DELAYMS_FIELD_NUMBER, delayMs);
+        }
+        if (taskId != 0) {
+            subtaskSize += CodedOutputStream.computeInt64Size(SubtaskRequest.TASKID_FIELD_NUMBER, taskId);
+        }
+        if (op.op.getNumber() != 0) {
+            subtaskSize += CodedOutputStream.computeEnumSize(SubtaskRequest.OP_FIELD_NUMBER, op.op.getNumber());
+        }
+        if (op.topK != 0) {
+            subtaskSize += CodedOutputStream.computeInt32Size(SubtaskRequest.TOPK_FIELD_NUMBER, op.topK);
+        }
+        if (op.bucketWidth != 0) {
+            subtaskSize += CodedOutputStream.computeInt64Size(SubtaskRequest.BUCKETWIDTH_FIELD_NUMBER, op.bucketWidth);
+        }
+        int frameSize = CodedOutputStream.computeTagSize(LeaderMessage.SUBTASK_FIELD_NUMBER)
+                + CodedOutputStream.computeUInt32SizeNoTag(subtaskSize) + subtaskSize;
+
+        out.writeUInt32NoTag(frameSize);
+        out.writeTag(LeaderMessage.SUBTASK_FIELD_NUMBER, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+        out.writeUInt32NoTag(subtaskSize);
+        if (packedSize > 0) {
+            out.writeTag(SubtaskRequest.LIST_FIELD_NUMBER, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+            out.writeUInt32NoTag(packedSize);
+            for (int i = from; i < to; i++) {
+                out.writeInt32NoTag(values[i]);
+            }
+        }
+        if (delayMs != 0) {
+            out.writeInt32(SubtaskRequest.DELAYMS_FIELD_NUMBER, delayMs);
+        }
+        if (taskId != 0) {
+            out.writeInt64(SubtaskRequest.TASKID_FIELD_NUMBER, taskId);
+        }
+        if (op.op.getNumber() != 0) {
+            out.writeEnum(SubtaskRequest.OP_FIELD_NUMBER, op.op.getNumber());
+        }
+        if (op.topK != 0) {
+            out.writeInt32(SubtaskRequest.TOPK_FIELD_NUMBER, op.topK);
+        }
+        if (op.bucketWidth != 0) {
+            out.writeInt64(SubtaskRequest.BUCKETWIDTH_FIELD_NUMBER, op.bucketWidth);
+        }
+    }
+
+    private void readLoop() {
+        try {
+            while (!closed.get()) {
+                NodeMessage message = NodeMessage.parseDelimitedFrom(in);
+                if (message == null) {
+                    close(new IOException("Node " + nodeId + " closed the connection"));
+                    return;
+                }
+                lastHeardAt = System.currentTimeMillis();
+
+                switch (message.getBodyCase()) {
+                    case HEARTBEATACK:
+                        reportedActive = message.getHeartbeatAck().getActiveSubtasks();
+                        break;
+                    case RESULT:
+                        completeSubtask(message.getResult());
+                        break;
+                    default:
+                        System.err.printf("[LEADER] Node %s sent an empty frame%n", nodeId);
+                }
+            }
+        } catch (IOException e) {
+            close(e);
+        }
+    }
+
+    private void completeSubtask(SubtaskResult result) {
+        Pending waiter = pending.remove(result.getTaskId());
+        if (waiter == null) {
+            // cancelled after the Node had already sent its answer
+            System.out.printf("[LEADER] Node %s answered task %d, which is no longer awaited%n", nodeId, result.getTaskId());
+            return;
+        }
+        if (!result.getError().isEmpty()) {
+            // the Node is fine, it just cannot run this subtask; a quick refusal is no latency sample
+            waiter.future.completeExceptionally(new IOException(
+                    "Node " + nodeId + " rejected task " + result.getTaskId() + ": " + result.getError()));
+            return;
+        }
+        double sample = (System.nanoTime() - waiter.sentAt) / 1e6;
+        latencyMs = latencyMs == 0 ? sample : (1 - LATENCY_ALPHA) * latencyMs + LATENCY_ALPHA * sample;
+        waiter.future.complete(result);
+    }
+
+    private void close(IOException cause) {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+
+        System.err.printf("[LEADER] Lost Node %s: %s%n", nodeId, cause.getMessage());
+        try {
+            socket.close();
+        } catch (IOException ignored) {}
+        if (writer != null) {
+            writer.interrupt();
+        }
+
+        for (Long taskId : pending.keySet()) {
+            Pending waiter = pending.remove(taskId);
+            if (waiter != null) {
+                waiter.future.completeExceptionally(cause);
+            }
+        }
+        onClose.run();
+    }
+}
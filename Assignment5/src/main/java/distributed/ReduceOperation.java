@@ -0,0 +1,205 @@
+package distributed;
+
+import distributed.protocol.ReduceOp;
+import distributed.protocol.Reduction;
+
+import java.util.Arrays;
+import java.util.TreeMap;
+
+/**
+ * A reduction the cluster can distribute: Nodes reduce their chunks into partial {@link Reduction}s
+ * and the Leader combines them. Every operation is associative and commutative, so partials from
+ * any split of the list, combined in any order, give the same answer.
+ *
+ * Values arrive as int32 but every operation accumulates in int64, so sums of large inputs do not
+ * overflow; {@code mean} is reported as a double. Only int32 inputs are supported: chunks, the direct
+ * subtask encoding and the wire format all carry int32 lists, and int64 or double inputs would need new
+ * list fields there as well as here.
+ */
+abstract class ReduceOperation {
+
+    final ReduceOp op;
+    final int topK;
+    final long bucketWidth;
+
+    private ReduceOperation(ReduceOp op, int topK, long bucketWidth) {
+        this.op = op;
+        this.topK = topK;
+        this.bucketWidth = bucketWidth;
+    }
+
+    static final ReduceOperation SUM = of(ReduceOp.SUM, 0, 0);
+
+    /**
+     * @throws IllegalArgumentException if TOP_K has no positive k or HISTOGRAM no positive bucket width
+     */
+    static ReduceOperation of(ReduceOp op, int topK, long bucketWidth) {
+        switch (op) {
+            case SUM:
+                return new Scalar(op) {
+                    long apply(long acc, int v) { return acc + v; }
+                    long merge(long a, long b) { return a + b; }
+                };
+            case MIN:
+                return new Scalar(op) {
+                    long apply(long acc, int v) { return Math.min(acc, v); }
+                    long merge(long a, long b) { return Math.min(a, b); }
+                };
+            case MAX:
+                return new Scalar(op) {
+                    long apply(long acc, int v) { return Math.max(acc, v); }
+                    long merge(long a, long b) { return Math.max(a, b); }
+                };
+            case COUNT:
+                return new Scalar(op) {
+                    long apply(long acc, int v) { return acc + 1; }
+                    long merge(long a, long b) { return a + b; }
+                };
+            case HISTOGRAM:
+                if (bucketWidth <= 0) {
+                    throw new IllegalArgumentException("HISTOGRAM needs a positive bucketWidth");
+                }
+                return new Histogram(bucketWidth);
+            case TOP_K:
+                if (topK <= 0) {
+                    throw new IllegalArgumentException("TOP_K needs a positive topK");
+                }
+                return new TopK(topK);
+            default:
+                throw new IllegalArgumentException("Unsupported reduce op: " + op);
+        }
+    }
+
+    /**
+     * Reduces {@code values[from, to)} into a partial result.
+     */
+    abstract Reduction reduce(int[] values, int from, int to);
+
+    /**
+     * Combines two partial results of this operation.
+     */
+    abstract Reduction combine(Reduction left, Reduction right);
+
+    /**
+     * Count, 64-bit total and mean shared by every operation.
+     */
+    Reduction.Builder base(int[] values, int from, int to) {
+        long total = 0;
+        for (int i = from; i < to; i++) {
+            total += values[i];
+        }
+        return withTotals(Reduction.newBuilder().setOp(op), to - from, total);
+    }
+
+    Reduction.Builder base(Reduction left, Reduction right) {
+        return withTotals(Reduction.newBuilder().setOp(op),
+                left.getCount() + right.getCount(), left.getTotal() + right.getTotal());
+    }
+
+    private static Reduction.Builder withTotals(Reduction.Builder builder, long count, long total) {
+        return builder
+                .setCount(count)
+                .setTotal(total)
+                .setMean(count == 0 ? 0 : (double) total / count);
+    }
+
+    /**
+     * SUM, MIN, MAX and COUNT: one int64 folded element by element.
+     */
+    private abstract static class Scalar extends ReduceOperation {
+
+        Scalar(ReduceOp op) {
+            super(op, 0, 0);
+        }
+
+        abstract long apply(long acc, int value);
+
+        abstract long merge(long a, long b);
+
+        @Override
+        Reduction reduce(int[] values, int from, int to) {
+            Reduction.Builder result = base(values, from, to);
+            if (to > from) {
+                long acc = op == ReduceOp.COUNT ? 1 : values[from];
+                for (int i = from + 1; i < to; i++) {
+                    acc = apply(acc, values[i]);
+                }
+                result.setValue(acc);
+            }
+            return result.build();
+        }
+
+        @Override
+        Reduction combine(Reduction left, Reduction right) {
+            // an empty partial has no value to merge, in particular for MIN and MAX
+            if (left.getCount() == 0) return right;
+            if (right.getCount() == 0) return left;
+            return base(left, right).setValue(merge(left.getValue(), right.getValue())).build();
+        }
+    }
+
+    private static final class Histogram extends ReduceOperation {
+
+        Histogram(long bucketWidth) {
+            super(ReduceOp.HISTOGRAM, 0, bucketWidth);
+        }
+
+        @Override
+        Reduction reduce(int[] values, int from, int to) {
+            TreeMap<Long, Long> buckets = new TreeMap<>();
+            for (int i = from; i < to; i++) {
+                buckets.merge(Math.floorDiv((long) values[i], bucketWidth), 1L, Long::sum);
+            }
+            return withBuckets(base(values, from, to), buckets);
+        }
+
+        @Override
+        Reduction combine(Reduction left, Reduction right) {
+            TreeMap<Long, Long> buckets = new TreeMap<>();
+            for (Reduction part : new Reduction[]{left, right}) {
+                for (int i = 0; i < part.getBucketKeysCount(); i++) {
+                    buckets.merge(part.getBucketKeys(i), part.getBucketCounts(i), Long::sum);
+                }
+            }
+            return withBuckets(base(left, right), buckets);
+        }
+
+        private static Reduction withBuckets(Reduction.Builder builder, TreeMap<Long, Long> buckets) {
+            buckets.forEach((key, count) -> builder.addBucketKeys(key).addBucketCounts(count));
+            return builder.build();
+        }
+    }
+
+    private static final class TopK extends ReduceOperation {
+
+        TopK(int k) {
+            super(ReduceOp.TOP_K, k, 0);
+        }
+
+        @Override
+        Reduction reduce(int[] values, int from, int to) {
+            int[] sorted = Arrays.copyOfRange(values, from, to);
+            Arrays.sort(sorted);
+            Reduction.Builder builder = base(values, from, to);
+            for (int i = sorted.length - 1; i >= 0 && sorted.length - i <= topK; i--) {
+                builder.addTop(sorted[i]);
+            }
+            return builder.build();
+        }
+
+        @Override
+        Reduction combine(Reduction left, Reduction right) {
+            // both lists are descending: merge them and keep the first k
+            Reduction.Builder builder = base(left, right);
+            int l = 0, r = 0;
+            while (builder.getTopCount() < topK && (l < left.getTopCount() || r < right.getTopCount())) {
+                if (r >= right.getTopCount() || (l < left.getTopCount() && left.getTop(l) >= right.getTop(r))) {
+                    builder.addTop(left.getTop(l++));
+                } else {
+                    builder.addTop(right.getTop(r++));
+                }
+            }
+            return builder.build();
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package distributed;
+
+import distributed.protocol.ResultResponse;
+import distributed.protocol.TaskRequest;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Leader-side cache of finished results, keyed by a SHA-256 hash of the serialized TaskRequest.
+ * Entries expire after a fixed TTL and the least recently used entry is evicted once the cache is full.
+ *
+ * Identical requests that arrive while the first one is still running do not start a second
+ * computation: they wait for the running one and share its answer. Only successful results are
+ * cached; a failure is handed to the requests that were waiting on it and then forgotten.
+ */
+class ResultCache {
+
+    /**
+     * The work behind one cache miss.
+     */
+    interface Computation {
+        ResultResponse compute() throws TaskFailure, InterruptedException;
+    }
+
+    /**
+     * A task that ended in an ErrorResponse instead of a result.
+     */
+    static final class TaskFailure extends Exception {
+        final int code;
+
+        TaskFailure(int code, String message) {
+            super(message);
+            this.code = code;
+        }
+    }
+
+    private static final class Entry {
+        final ResultResponse result;
+        final long expiresAt;
+
+        Entry(ResultResponse result, long expiresAt) {
+            this.result = result;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final int maxEntries;
+    private final long ttlMs;
+
+    // both maps are guarded by lock; callers may be virtual threads, so no monitors
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<ByteBuffer, Entry> entries;
+    private final Map<ByteBuffer, CompletableFuture<ResultResponse>> inFlight = new HashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong shared = new AtomicLong();
+
+    /**
+     * @param maxEntries results kept at most; 0 disables caching and deduplication
+     * @param ttlMs      how long a result may be served after it was computed
+     */
+    ResultCache(int maxEntries, long ttlMs) {
+        this.maxEntries = maxEntries;
+        this.ttlMs = ttlMs;
+        // access order, so iteration starts at the least recently used entry
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteBuffer, Entry> eldest) {
+                return size() > ResultCache.this.maxEntries;
+            }
+        };
+    }
+
+    boolean enabled() {
+        return maxEntries > 0;
+    }
+
+    /**
+     * Returns the cached result for {@code request}, joins an identical request already in flight,
+     * or runs {@code computation} and caches what it returns. A cached or shared result is marked
+     * {@code cached}. If the request this one joined was cancelled, the computation is started afresh.
+     *
+     * @throws TaskFailure if the computation this request ran or joined failed
+     */
+    ResultResponse get(TaskRequest request, Computation computation) throws TaskFailure, InterruptedException {
+        if (!enabled()) {
+            return computation.compute();
+        }
+
+        ByteBuffer key = keyOf(request);
+        while (true) {
+            CompletableFuture<ResultResponse> running;
+            CompletableFuture<ResultResponse> mine = null;
+            lock.lock();
+            try {
+                Entry entry = entries.get(key);
+                if (entry != null && entry.expiresAt > System.currentTimeMillis()) {
+                    hits.incrementAndGet();
+                    return entry.result.toBuilder().setCached(true).build();
+                }
+                if (entry != null) {
+                    entries.remove(key);
+                }
+                running = inFlight.get(key);
+                if (running == null) {
+                    mine = new CompletableFuture<>();
+                    inFlight.put(key, mine);
+                    misses.incrementAndGet();
+                } else {
+                    shared.incrementAndGet();
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            if (mine != null) {
+                return computeAndPublish(key, computation, mine);
+            }
+            try {
+                return running.get().toBuilder().setCached(true).build();
+            } catch (CancellationException e) {
+                // the client that started it went away; try again, possibly as the new owner
+            } catch (ExecutionException e) {
+                throw (TaskFailure) e.getCause();
+            }
+        }
+    }
+
+    private ResultResponse computeAndPublish(ByteBuffer key, Computation computation,
+                                             CompletableFuture<ResultResponse> mine)
+            throws TaskFailure, InterruptedException {
+        try {
+            ResultResponse result = computation.compute();
+            lock.lock();
+            try {
+                entries.put(key, new Entry(result, System.currentTimeMillis() + ttlMs));
+                inFlight.remove(key);
+            } finally {
+                lock.unlock();
+            }
+            mine.complete(result);
+            return result;
+        } catch (TaskFailure e) {
+            forget(key);
+            mine.completeExceptionally(e);
+            throw e;
+        } catch (InterruptedException | RuntimeException e) {
+            forget(key);
+            mine.cancel(false);
+            throw e;
+        }
+    }
+
+    private void forget(ByteBuffer key) {
+        lock.lock();
+        try {
+            inFlight.remove(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long hits() {
+        return hits.get();
+    }
+
+    long misses() {
+        return misses.get();
+    }
+
+    /**
+     * Requests that joined an identical request in flight instead of computing it again.
+     */
+    long shared() {
+        return shared.get();
+    }
+
+    int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    String describeStats() {
+        return String.format("hits=%d, shared=%d, misses=%d, entries=%d", hits(), shared(), misses(), size());
+    }
+
+    static ByteBuffer keyOf(TaskRequest request) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(request.toByteArray());
+            return ByteBuffer.wrap(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
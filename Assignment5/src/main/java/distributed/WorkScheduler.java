@@ -0,0 +1,486 @@
+package distributed;
+
+import distributed.protocol.NodeStats;
+import distributed.protocol.Reduction;
+import distributed.protocol.SubtaskResult;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Dynamic work-queue scheduler for one client task.
+ * The list is cut into many small chunks and every Node pulls the next chunk as soon as
+ * its previous one returns, so slow or busy Nodes automatically end up with less work.
+ * Chunks held by a Node that drops are put back on the queue for the others.
+ *
+ * Once the queue is empty, idle Nodes speculatively re-run stragglers: chunks that have been
+ * out longer than the configured percentile of finished chunk latencies. The first result
+ * wins; when the second one also arrives the two are cross-checked.
+ *
+ * Chunks can keep arriving while the Nodes work. With a backlog limit, {@link #put} blocks
+ * while that many chunks are waiting, and finished chunks are dropped right away, so memory
+ * stays bounded however long the task is.
+ *
+ * Each Node answers with a partial {@link Reduction} of its chunk; the scheduler folds the
+ * winning partials together with the task's {@link ReduceOperation}.
+ */
+class WorkScheduler {
+
+    // finished chunks needed before a latency percentile is trusted
+    static final int MIN_LATENCY_SAMPLES = 3;
+    // how long to wait for the losing copy of a speculated chunk so it can be cross-checked
+    static final long CROSS_CHECK_TIMEOUT_MS = 2000;
+    // most recent chunk latencies the straggler percentile is taken over
+    static final int LATENCY_WINDOW = 256;
+
+    /**
+     * A range {@code [from, to)} of the task's int[]; chunks share the array instead of copying it.
+     */
+    static final class Chunk {
+        final int index;
+        final int[] values;
+        final int from;
+        final int to;
+
+        Chunk(int index, int[] values, int from, int to) {
+            this.index = index;
+            this.values = values;
+            this.from = from;
+            this.to = to;
+        }
+
+        int size() {
+            return to - from;
+        }
+    }
+
+    static final class Result {
+        final Reduction reduction;
+        final List<NodeStats> nodeStats;
+        final List<String> mismatches;
+
+        Result(Reduction reduction, List<NodeStats> nodeStats, List<String> mismatches) {
+            this.reduction = reduction;
+            this.nodeStats = nodeStats;
+            this.mismatches = mismatches;
+        }
+    }
+
+    private static final class Tally {
+        int chunks;
+        int items;
+        int speculative;
+        long busyMs;
+    }
+
+    /**
+     * A chunk that has been handed to at least one Node and still has an attempt running.
+     */
+    private static final class Dispatch {
+        final Chunk chunk;
+        final long startedAt;
+        final String owner;
+        int running = 1;
+        boolean speculated = false;
+        Reduction winner;
+        String winnerNodeId;
+
+        Dispatch(Chunk chunk, String owner) {
+            this.chunk = chunk;
+            this.owner = owner;
+            this.startedAt = System.currentTimeMillis();
+        }
+    }
+
+    private final ReduceOperation op;
+    private final int delayMs;
+    private final double speculationPercentile;
+    private final int maxBacklog;
+
+    // all fields below are guarded by lock; pullers may be virtual threads, so no monitors
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final Deque<Chunk> queue = new ArrayDeque<>();
+    private final Map<Integer, Dispatch> dispatched = new HashMap<>();
+    private final Map<String, Tally> tallies = new LinkedHashMap<>();
+    private final Deque<Long> latencies = new ArrayDeque<>();
+    private final List<String> mismatches = new ArrayList<>();
+    private int submitted = 0;
+    private int completed = 0;
+    private Reduction total;
+    private boolean closed = false;
+    private boolean started = false;
+    private int liveWorkers = 0;
+
+    /**
+     * @param speculationPercentile fraction in (0, 1] of finished-chunk latencies a chunk may exceed
+     *                              before it is re-dispatched; 0 disables speculation
+     */
+    WorkScheduler(int delayMs, double speculationPercentile) {
+        this(delayMs, speculationPercentile, 0);
+    }
+
+    /**
+     * @param maxBacklog chunks that may wait for a Node before {@link #put} blocks; 0 = unbounded
+     */
+    WorkScheduler(int delayMs, double speculationPercentile, int maxBacklog) {
+        this(ReduceOperation.SUM, delayMs, speculationPercentile, maxBacklog);
+    }
+
+    /**
+     * @param op reduction every chunk is sent out with and the partial results are combined by
+     */
+    WorkScheduler(ReduceOperation op, int delayMs, double speculationPercentile, int maxBacklog) {
+        this.op = op;
+        this.total = op.reduce(new int[0], 0, 0);
+        this.delayMs = delayMs;
+        this.speculationPercentile = speculationPercentile;
+        this.maxBacklog = maxBacklog;
+    }
+
+    /**
+     * Cuts the input into {@code chunkCount} chunks, queues them all and closes the scheduler.
+     */
+    static WorkScheduler of(int[] input, int chunkCount, int delayMs, double speculationPercentile) {
+        return of(ReduceOperation.SUM, input, chunkCount, delayMs, speculationPercentile);
+    }
+
+    static WorkScheduler of(ReduceOperation op, int[] input, int chunkCount, int delayMs,
+                            double speculationPercentile) {
+        WorkScheduler scheduler = new WorkScheduler(op, delayMs, speculationPercentile, 0);
+        int[] bounds = Leader.partitionBounds(input.length, chunkCount);
+        for (int i = 0; i + 1 < bounds.length; i++) {
+            scheduler.submit(input, bounds[i], bounds[i + 1]);
+        }
+        scheduler.close();
+        return scheduler;
+    }
+
+    /**
+     * Queues {@code values[from, to)} as the next chunk. The array must not change until the run is over.
+     */
+    void submit(int[] values, int from, int to) {
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Scheduler already closed");
+            }
+            queue.addLast(new Chunk(submitted++, values, from, to));
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queues {@code values[from, to)} like {@link #submit}, but first waits while the backlog is full.
+     * Used when chunks are streamed in during {@link #run}.
+     *
+     * @throws IOException if every Node has dropped, so the backlog would never drain
+     */
+    void put(int[] values, int from, int to) throws IOException, InterruptedException {
+        lock.lock();
+        try {
+            while (maxBacklog > 0 && queue.size() >= maxBacklog && !(started && liveWorkers == 0)) {
+                changed.await();
+            }
+            if (started && liveWorkers == 0) {
+                throw new IOException("All nodes failed with " + (submitted - completed) + " chunks left");
+            }
+            submit(values, from, to);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Signals that no more chunks will be submitted.
+     */
+    void close() {
+        lock.lock();
+        try {
+            closed = true;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs one puller per Node, each on a thread from {@code threadFactory}, until every chunk
+     * is answered, then gives speculated chunks a bounded grace period to be cross-checked.
+     * Pullers never outlive this call; interrupting the caller cancels them all.
+     *
+     * @throws IOException if every Node dropped before the work was finished
+     */
+    Result run(List<NodeConnection> nodes, ThreadFactory threadFactory) throws IOException, InterruptedException {
+        lock.lock();
+        try {
+            started = true;
+            liveWorkers = nodes.size();
+            for (NodeConnection node : nodes) {
+                tallies.put(node.nodeId, new Tally());
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        try (ExecutorService pullers = Executors.newThreadPerTaskExecutor(threadFactory)) {
+            for (NodeConnection node : nodes) {
+                pullers.submit(() -> pullLoop(node));
+            }
+
+            lock.lock();
+            try {
+                while (!isDone() && liveWorkers > 0) {
+                    changed.await();
+                }
+                if (!isDone()) {
+                    throw new IOException("All nodes failed with " + (submitted - completed) + " chunks left");
+                }
+
+                long deadline = System.currentTimeMillis() + CROSS_CHECK_TIMEOUT_MS;
+                long remaining;
+                while (!dispatched.isEmpty() && liveWorkers > 0
+                        && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                    changed.await(remaining, TimeUnit.MILLISECONDS);
+                }
+                for (Dispatch d : dispatched.values()) {
+                    System.err.printf("[LEADER] Chunk %d not cross-checked: second copy still running%n", d.chunk.index);
+                }
+            } finally {
+                lock.unlock();
+                pullers.shutdownNow();
+            }
+        }
+
+        return buildResult();
+    }
+
+    private void pullLoop(NodeConnection node) {
+        try {
+            Chunk chunk;
+            while ((chunk = nextChunk(node.nodeId)) != null) {
+                long start = System.currentTimeMillis();
+                CompletableFuture<SubtaskResult> attempt = node.submit(chunk.values, chunk.from, chunk.to, delayMs, op);
+                try {
+                    SubtaskResult result = attempt.get();
+                    long elapsed = System.currentTimeMillis() - start;
+                    System.out.printf("[LEADER] Node %s finished chunk %d: %s (%dms)%n",
+                            node.nodeId, chunk.index, describe(result.getReduction()), elapsed);
+                    complete(node.nodeId, chunk, result.getReduction(), elapsed);
+                } catch (ExecutionException e) {
+                    System.err.printf("[LEADER] Node %s failed chunk %d: %s%n",
+                            node.nodeId, chunk.index, e.getCause().getMessage());
+                    attemptFailed(chunk);
+                    return;
+                } catch (InterruptedException e) {
+                    // the task was cancelled or finished without this copy; stop the Node working on it
+                    attempt.cancel(false);
+                    attemptFailed(chunk);
+                    return;
+                }
+            }
+        } catch (InterruptedException ignored) {
+        } finally {
+            lock.lock();
+            try {
+                liveWorkers--;
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Blocks until there is work for this Node, or returns null once all chunks have a result.
+     * Fresh chunks come first; with the queue empty, an idle Node takes a straggler owned by
+     * another Node. Idle pullers keep waiting while others are busy, since a failed chunk may come back.
+     */
+    private Chunk nextChunk(String nodeId) throws InterruptedException {
+        lock.lock();
+        try {
+            return awaitChunk(nodeId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Chunk awaitChunk(String nodeId) throws InterruptedException {
+        while (true) {
+            Chunk chunk = queue.pollFirst();
+            if (chunk != null) {
+                dispatched.put(chunk.index, new Dispatch(chunk, nodeId));
+                // a producer in put() may be waiting for backlog space
+                changed.signalAll();
+                return chunk;
+            }
+            if (isDone()) {
+                return null;
+            }
+
+            long threshold = stragglerThresholdMs();
+            if (threshold < 0) {
+                changed.await();
+                continue;
+            }
+
+            long now = System.currentTimeMillis();
+            Dispatch straggler = null;
+            long nextDeadline = Long.MAX_VALUE;
+            for (Dispatch d : dispatched.values()) {
+                if (d.speculated || d.winner != null || d.owner.equals(nodeId)) {
+                    continue;
+                }
+                long deadline = d.startedAt + threshold;
+                if (deadline <= now && (straggler == null || d.startedAt < straggler.startedAt)) {
+                    straggler = d;
+                }
+                nextDeadline = Math.min(nextDeadline, deadline);
+            }
+
+            if (straggler != null) {
+                straggler.speculated = true;
+                straggler.running++;
+                tallies.get(nodeId).speculative++;
+                System.out.printf("[LEADER] Chunk %d exceeded %dms on Node %s; re-dispatching to Node %s%n",
+                        straggler.chunk.index, threshold, straggler.owner, nodeId);
+                return straggler.chunk;
+            }
+            if (nextDeadline == Long.MAX_VALUE) {
+                changed.await();
+            } else {
+                changed.await(Math.max(1, nextDeadline - now), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Latency a chunk may reach before it counts as a straggler, or -1 if speculation
+     * is disabled or there are not enough finished chunks to judge yet.
+     */
+    private long stragglerThresholdMs() {
+        if (speculationPercentile <= 0 || latencies.size() < MIN_LATENCY_SAMPLES) {
+            return -1;
+        }
+        return percentile(latencies, speculationPercentile);
+    }
+
+    /**
+     * Nearest-rank percentile of the given samples.
+     */
+    static long percentile(Collection<Long> samples, double fraction) {
+        long[] sorted = samples.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(Math.min(1.0, fraction) * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    private void complete(String nodeId, Chunk chunk, Reduction partial, long elapsedMs) {
+        lock.lock();
+        try {
+            Dispatch d = dispatched.get(chunk.index);
+            d.running--;
+            latencies.addLast(elapsedMs);
+            if (latencies.size() > LATENCY_WINDOW) {
+                latencies.removeFirst();
+            }
+
+            if (d.winner == null) {
+                d.winner = partial;
+                d.winnerNodeId = nodeId;
+                Tally tally = tallies.get(nodeId);
+                tally.chunks++;
+                tally.items += chunk.size();
+                tally.busyMs += elapsedMs;
+                total = op.combine(total, partial);
+                completed++;
+            } else if (!d.winner.equals(partial)) {
+                String mismatch = String.format("chunk %d: Node %s returned %s, Node %s returned %s",
+                        chunk.index, d.winnerNodeId, describe(d.winner), nodeId, describe(partial));
+                System.err.println("[LEADER] Cross-check mismatch on " + mismatch);
+                mismatches.add(mismatch);
+            }
+
+            if (d.running == 0) {
+                dispatched.remove(chunk.index);
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops one attempt at a chunk; the chunk is requeued only if nothing else can still answer it.
+     */
+    private void attemptFailed(Chunk chunk) {
+        lock.lock();
+        try {
+            Dispatch d = dispatched.get(chunk.index);
+            d.running--;
+            if (d.running == 0) {
+                dispatched.remove(chunk.index);
+                if (d.winner == null) {
+                    queue.addFirst(chunk);
+                }
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * One-line rendering of a partial result for the log.
+     */
+    static String describe(Reduction r) {
+        switch (r.getOp()) {
+            case HISTOGRAM:
+                return r.getBucketKeysCount() + " buckets over " + r.getCount() + " values";
+            case TOP_K:
+                return "top " + r.getTopList();
+            default:
+                return r.getOp() + " " + r.getValue();
+        }
+    }
+
+    private boolean isDone() {
+        return closed && completed == submitted;
+    }
+
+    private Result buildResult() {
+        lock.lock();
+        try {
+            List<NodeStats> stats = new ArrayList<>();
+            tallies.forEach((nodeId, tally) -> stats.add(NodeStats.newBuilder()
+                    .setNodeId(nodeId)
+                    .setChunks(tally.chunks)
+                    .setItems(tally.items)
+                    .setBusyMs(tally.busyMs)
+                    .setItemsPerSecond(tally.busyMs == 0 ? 0 : tally.items * 1000.0 / tally.busyMs)
+                    .setSpeculativeChunks(tally.speculative)
+                    .build()));
+            return new Result(total, stats, new ArrayList<>(mismatches));
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -1,7 +1,12 @@
 package distributed;
 
+import distributed.protocol.ReduceOp;
+import distributed.protocol.TaskChunk;
+import distributed.protocol.TaskRequest;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -30,4 +35,25 @@ class ClientTest {
         });
         assertTrue(ex.getMessage().contains("comma-separated integers"));
     }
-}
\ No newline at end of file
+
+    @Test
+    void testSendTaskStreamsChunks() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Client.sendTask(out, Client.taskHeader(10, "top_k", 2), List.of(1, 2, 3, 4, 5), 2);
+
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        TaskRequest header = TaskRequest.parseDelimitedFrom(in);
+        assertTrue(header.getStreaming());
+        assertEquals(0, header.getListCount());
+        assertEquals(10, header.getDelayMs());
+        assertEquals(ReduceOp.TOP_K, header.getOp());
+        assertEquals(2, header.getTopK());
+
+        assertEquals(List.of(1, 2), TaskChunk.parseDelimitedFrom(in).getListList());
+        assertEquals(List.of(3, 4), TaskChunk.parseDelimitedFrom(in).getListList());
+        TaskChunk last = TaskChunk.parseDelimitedFrom(in);
+        assertEquals(List.of(5), last.getListList());
+        assertTrue(last.getLast());
+        assertNull(TaskChunk.parseDelimitedFrom(in));
+    }
+}
@@ -1,11 +1,14 @@
 package distributed;
 
+import distributed.protocol.NodeHello;
 import distributed.protocol.SubtaskRequest;
 import org.junit.jupiter.api.Test;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.net.Socket;
 import java.util.List;
+import java.util.function.BooleanSupplier;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -49,6 +52,41 @@ class LeaderTest {
         assertEquals(1, parts.get(2).size());
     }
 
+    @Test
+    void testPartitionBoundsCoverInput() {
+        assertArrayEquals(new int[]{0, 2, 4, 5}, Leader.partitionBounds(5, 3));
+        assertArrayEquals(new int[]{0, 1, 2}, Leader.partitionBounds(2, 8));  // never an empty range
+    }
+
+    @Test
+    void testNodeReconnectReplacesOldRegistration() throws Exception {
+        Leader leader = new Leader(4, 0, Leader.ThreadMode.VIRTUAL);
+        leader.start(0, 0);
+        try (Socket first = new Socket("localhost", leader.nodePort());
+             Socket second = new Socket("localhost", leader.nodePort())) {
+            NodeHello hello = NodeHello.newBuilder().setNodeId("node-a").build();
+
+            hello.writeDelimitedTo(first.getOutputStream());
+            waitFor(() -> leader.nodeCount() == 1);
+            hello.writeDelimitedTo(second.getOutputStream());
+
+            // the Leader closes the stale connection and keeps a single entry for node-a
+            assertEquals(-1, first.getInputStream().read());
+            assertEquals(1, leader.nodeCount());
+            assertEquals(1, leader.selectNodes().size());
+        } finally {
+            leader.stop();
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
     @Test
     void testSubtaskSerialization() throws Exception {
         SubtaskRequest original = SubtaskRequest.newBuilder()
@@ -0,0 +1,200 @@
+package distributed;
+
+import distributed.protocol.HeartbeatAck;
+import distributed.protocol.LeaderMessage;
+import distributed.protocol.NodeMessage;
+import distributed.protocol.ReduceOp;
+import distributed.protocol.SubtaskRequest;
+import distributed.protocol.SubtaskResult;
+import com.google.protobuf.CodedOutputStream;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NodeConnectionTest {
+
+    @Test
+    void testOutOfOrderResultsReachMatchingFutures() throws Exception {
+        try (ServerSocket server = new ServerSocket(0);
+             Socket nodeSide = new Socket("localhost", server.getLocalPort());
+             Socket leaderSide = server.accept()) {
+
+            NodeConnection node = new NodeConnection(leaderSide, leaderSide.getInputStream(),
+                    leaderSide.getOutputStream(), "node-test");
+            node.start(() -> {});
+
+            CompletableFuture<SubtaskResult> first = node.submit(new int[]{1, 2}, 0, 2, 0, ReduceOperation.SUM);
+            CompletableFuture<SubtaskResult> second = node.submit(new int[]{3, 4}, 0, 2, 0, ReduceOperation.SUM);
+            assertEquals(2, node.inFlight());
+
+            // fake Node: read both requests, answer the second one first
+            InputStream in = nodeSide.getInputStream();
+            OutputStream out = nodeSide.getOutputStream();
+            SubtaskRequest a = LeaderMessage.parseDelimitedFrom(in).getSubtask();
+            SubtaskRequest b = LeaderMessage.parseDelimitedFrom(in).getSubtask();
+            assertNotEquals(a.getTaskId(), b.getTaskId());
+
+            for (SubtaskRequest req : List.of(b, a)) {
+                SubtaskResult result = SubtaskResult.newBuilder()
+                        .setTaskId(req.getTaskId())
+                        .setSum(Node.computeWithDelay(req.getListList(), 0))
+                        .build();
+                NodeMessage.newBuilder().setResult(result).build().writeDelimitedTo(out);
+            }
+            out.flush();
+
+            assertEquals(3, first.get(5, TimeUnit.SECONDS).getSum());
+            assertEquals(7, second.get(5, TimeUnit.SECONDS).getSum());
+            assertEquals(0, node.inFlight());
+        }
+    }
+
+    @Test
+    void testCancelledSubtaskIsCancelledOnTheNode() throws Exception {
+        try (ServerSocket server = new ServerSocket(0);
+             Socket nodeSide = new Socket("localhost", server.getLocalPort());
+             Socket leaderSide = server.accept()) {
+
+            NodeConnection node = new NodeConnection(leaderSide, leaderSide.getInputStream(),
+                    leaderSide.getOutputStream(), "node-test");
+            node.start(() -> {});
+            CompletableFuture<SubtaskResult> abandoned = node.submit(new int[]{1, 2}, 0, 2, 0, ReduceOperation.SUM);
+
+            InputStream in = nodeSide.getInputStream();
+            SubtaskRequest sent = LeaderMessage.parseDelimitedFrom(in).getSubtask();
+            abandoned.cancel(false);
+
+            LeaderMessage cancel = LeaderMessage.parseDelimitedFrom(in);
+            assertTrue(cancel.hasCancel());
+            assertEquals(sent.getTaskId(), cancel.getCancel().getTaskId());
+            assertEquals(0, node.inFlight());
+            assertFalse(node.isClosed());
+        }
+    }
+
+    @Test
+    void testFailureDetectorDropsSilentNode() throws Exception {
+        try (ServerSocket server = new ServerSocket(0);
+             Socket nodeSide = new Socket("localhost", server.getLocalPort());
+             Socket leaderSide = server.accept()) {
+
+            CompletableFuture<Void> closed = new CompletableFuture<>();
+            NodeConnection node = new NodeConnection(leaderSide, leaderSide.getInputStream(),
+                    leaderSide.getOutputStream(), "node-test");
+            node.start(() -> closed.complete(null));
+            CompletableFuture<SubtaskResult> pending = node.submit(new int[]{1, 2}, 0, 2, 0, ReduceOperation.SUM);
+
+            // the Node answers the first heartbeat, then goes quiet without closing its socket
+            node.heartbeat(1000);
+            InputStream in = nodeSide.getInputStream();
+            assertTrue(LeaderMessage.parseDelimitedFrom(in).hasSubtask());
+            LeaderMessage ping = LeaderMessage.parseDelimitedFrom(in);
+            assertTrue(ping.hasHeartbeat());
+            NodeMessage.newBuilder()
+                    .setHeartbeatAck(HeartbeatAck.newBuilder().setSeq(ping.getHeartbeat().getSeq()).setActiveSubtasks(1))
+                    .build()
+                    .writeDelimitedTo(nodeSide.getOutputStream());
+
+            Thread.sleep(500);
+            node.heartbeat(5000);
+            assertFalse(node.isClosed(), "Still within the failure timeout");
+
+            node.heartbeat(200);
+            closed.get(5, TimeUnit.SECONDS);
+            assertTrue(node.isClosed());
+            assertThrows(ExecutionException.class, () -> pending.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void testDirectEncodingMatchesGeneratedMessage() throws Exception {
+        int[] values = {7, -3, 0, 300, Integer.MAX_VALUE, Integer.MIN_VALUE, 42};
+
+        ByteArrayOutputStream direct = new ByteArrayOutputStream();
+        CodedOutputStream coded = CodedOutputStream.newInstance(direct);
+        NodeConnection.writeSubtask(coded, 99, values, 1, 6, 25, ReduceOperation.of(ReduceOp.HISTOGRAM, 0, 1000));
+        coded.flush();
+
+        ByteArrayOutputStream generated = new ByteArrayOutputStream();
+        SubtaskRequest subtask = SubtaskRequest.newBuilder()
+                .addAllList(List.of(-3, 0, 300, Integer.MAX_VALUE, Integer.MIN_VALUE))
+                .setDelayMs(25)
+                .setTaskId(99)
+                .setOp(ReduceOp.HISTOGRAM)
+                .setBucketWidth(1000)
+                .build();
+        LeaderMessage.newBuilder().setSubtask(subtask).build().writeDelimitedTo(generated);
+
+        assertArrayEquals(generated.toByteArray(), direct.toByteArray());
+    }
+
+    @Test
+    void testDisconnectFailsPendingFutures() throws Exception {
+        try (ServerSocket server = new ServerSocket(0);
+             Socket nodeSide = new Socket("localhost", server.getLocalPort());
+             Socket leaderSide = server.accept()) {
+
+            CompletableFuture<Void> closed = new CompletableFuture<>();
+            NodeConnection node = new NodeConnection(leaderSide, leaderSide.getInputStream(),
+                    leaderSide.getOutputStream(), "node-test");
+            node.start(() -> closed.complete(null));
+
+            CompletableFuture<SubtaskResult> pending = node.submit(new int[]{5}, 0, 1, 0, ReduceOperation.SUM);
+            assertNotNull(LeaderMessage.parseDelimitedFrom(nodeSide.getInputStream()));
+            nodeSide.close();
+
+            ExecutionException ex = assertThrows(ExecutionException.class, () -> pending.get(5, TimeUnit.SECONDS));
+            assertTrue(ex.getCause() instanceof IOException);
+            closed.get(5, TimeUnit.SECONDS);
+            assertTrue(node.isClosed());
+
+            // submits after the connection dropped fail immediately
+            assertTrue(node.submit(new int[]{1}, 0, 1, 0, ReduceOperation.SUM).isCompletedExceptionally());
+        }
+    }
+
+    @Test
+    void testErrorResultFailsOnlyItsFuture() throws Exception {
+        try (ServerSocket server = new ServerSocket(0);
+             Socket nodeSide = new Socket("localhost", server.getLocalPort());
+             Socket leaderSide = server.accept()) {
+
+            NodeConnection node = new NodeConnection(leaderSide, leaderSide.getInputStream(),
+                    leaderSide.getOutputStream(), "node-test");
+            node.start(() -> {});
+
+            CompletableFuture<SubtaskResult> rejected = node.submit(new int[]{1, 2}, 0, 2, 0, ReduceOperation.SUM);
+            CompletableFuture<SubtaskResult> answered = node.submit(new int[]{3, 4}, 0, 2, 0, ReduceOperation.SUM);
+            InputStream in = nodeSide.getInputStream();
+            OutputStream out = nodeSide.getOutputStream();
+            SubtaskRequest a = LeaderMessage.parseDelimitedFrom(in).getSubtask();
+            SubtaskRequest b = LeaderMessage.parseDelimitedFrom(in).getSubtask();
+
+            NodeMessage.newBuilder().setResult(SubtaskResult.newBuilder()
+                    .setTaskId(a.getTaskId())
+                    .setError("Unsupported reduce op")).build().writeDelimitedTo(out);
+            NodeMessage.newBuilder().setResult(SubtaskResult.newBuilder()
+                    .setTaskId(b.getTaskId())
+                    .setSum(7)).build().writeDelimitedTo(out);
+            out.flush();
+
+            ExecutionException ex = assertThrows(ExecutionException.class, () -> rejected.get(5, TimeUnit.SECONDS));
+            assertTrue(ex.getCause() instanceof IOException);
+            assertTrue(ex.getCause().getMessage().contains("Unsupported reduce op"));
+            assertEquals(7, answered.get(5, TimeUnit.SECONDS).getSum());
+            assertFalse(node.isClosed());
+            assertEquals(0, node.inFlight());
+        }
+    }
+}
@@ -1,11 +1,22 @@
 package distributed;
 
+import distributed.protocol.CancelSubtask;
+import distributed.protocol.Heartbeat;
+import distributed.protocol.LeaderMessage;
+import distributed.protocol.NodeHello;
+import distributed.protocol.NodeMessage;
+import distributed.protocol.ReduceOp;
 import distributed.protocol.SubtaskRequest;
 import distributed.protocol.SubtaskResult;
 import org.junit.jupiter.api.Test;
 
 import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -25,6 +36,109 @@ class NodeTest {
         assertEquals(24, result);
     }
 
+    @Test
+    void testParallelReduceMatchesSingleThreaded() throws Exception {
+        int[] values = new Random(8).ints(100_000, -1_000_000, 1_000_000).toArray();
+        for (ReduceOperation op : List.of(ReduceOperation.SUM,
+                ReduceOperation.of(ReduceOp.MAX, 0, 0),
+                ReduceOperation.of(ReduceOp.HISTOGRAM, 0, 50_000),
+                ReduceOperation.of(ReduceOp.TOP_K, 10, 0))) {
+            assertEquals(op.reduce(values, 0, values.length), Node.reduceParallel(op, values, 0), op.op.name());
+        }
+    }
+
+    @Test
+    void testDelayedSubtasksDoNotQueueForTheReducePool() throws Exception {
+        // far more delayed subtasks than cores; each sleeps 200ms on its own thread, not on a pool worker
+        int subtasks = Runtime.getRuntime().availableProcessors() * 4;
+        List<Thread> threads = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < subtasks; i++) {
+            threads.add(Thread.ofVirtual().start(() -> {
+                try {
+                    Node.reduceParallel(ReduceOperation.SUM, new int[]{1}, 200);
+                } catch (InterruptedException ignored) {}
+            }));
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        assertTrue(elapsedMs < 600, "delayed subtasks ran one pool worker at a time: " + elapsedMs + "ms");
+    }
+
+    @Test
+    void testCancelledSubtaskStopsWithoutAnAnswer() throws Exception {
+        try (ServerSocket leader = new ServerSocket(0)) {
+            Thread node = new Thread(() -> Node.run("localhost", leader.getLocalPort(), false));
+            node.start();
+            try (Socket socket = leader.accept()) {
+                InputStream in = socket.getInputStream();
+                OutputStream out = socket.getOutputStream();
+                assertNotNull(NodeHello.parseDelimitedFrom(in));
+
+                LeaderMessage.newBuilder()
+                        .setSubtask(SubtaskRequest.newBuilder().setTaskId(5).addAllList(List.of(1, 2)).setDelayMs(60_000))
+                        .build().writeDelimitedTo(out);
+                LeaderMessage.newBuilder().setCancel(CancelSubtask.newBuilder().setTaskId(5)).build().writeDelimitedTo(out);
+                Thread.sleep(200);
+                LeaderMessage.newBuilder().setHeartbeat(Heartbeat.newBuilder().setSeq(1)).build().writeDelimitedTo(out);
+                out.flush();
+
+                // the first frame back is the ack, with nothing left running; no result for task 5 precedes it
+                NodeMessage reply = NodeMessage.parseDelimitedFrom(in);
+                assertTrue(reply.hasHeartbeatAck());
+                assertEquals(0, reply.getHeartbeatAck().getActiveSubtasks());
+            } finally {
+                node.interrupt();
+                node.join(5000);
+            }
+        }
+    }
+
+    @Test
+    void testFaultyNodeCorruptsTheWholeResult() throws IOException {
+        for (ReduceOp op : ReduceOp.values()) {
+            if (op == ReduceOp.UNRECOGNIZED) continue;
+            SubtaskRequest task = SubtaskRequest.newBuilder()
+                    .addAllList(List.of(2, 3, 4))
+                    .setOp(op)
+                    .setTopK(2)
+                    .setBucketWidth(10)
+                    .build();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Node.handleSubtask(task, "node-xyz", false, out, new ReentrantLock());
+            Node.handleSubtask(task, "node-xyz", true, out, new ReentrantLock());
+            ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+            SubtaskResult healthy = NodeMessage.parseDelimitedFrom(in).getResult();
+            SubtaskResult faulty = NodeMessage.parseDelimitedFrom(in).getResult();
+
+            assertNotEquals(healthy.getReduction(), faulty.getReduction(), op.name());
+            // the old sum field follows the corrupted total: 2 * 3 * 4
+            assertEquals(24, faulty.getReduction().getTotal(), op.name());
+            assertEquals(24, faulty.getSum(), op.name());
+            assertEquals(3, faulty.getReduction().getCount(), op.name());
+        }
+    }
+
+    @Test
+    void testSubtaskThatCannotRunIsAnsweredWithAnError() throws IOException {
+        SubtaskRequest task = SubtaskRequest.newBuilder()
+                .addAllList(List.of(1, 2, 3))
+                .setTaskId(17)
+                .setOp(ReduceOp.HISTOGRAM)
+                .build();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        Node.handleSubtask(task, "node-xyz", false, out, new ReentrantLock());
+
+        SubtaskResult result = NodeMessage.parseDelimitedFrom(new ByteArrayInputStream(out.toByteArray())).getResult();
+        assertEquals(17, result.getTaskId());
+        assertEquals("node-xyz", result.getNodeId());
+        assertFalse(result.hasReduction());
+        assertTrue(result.getError().contains("bucketWidth"));
+    }
+
     @Test
     void testSubtaskRequestSerialization() throws IOException {
         SubtaskRequest request = SubtaskRequest.newBuilder()
@@ -0,0 +1,79 @@
+package distributed;
+
+import distributed.protocol.ReduceOp;
+import distributed.protocol.Reduction;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReduceOperationTest {
+
+    private static final int[] VALUES = {12, -7, 30, 0, 30, 5, -19, 8, 101, 4};
+
+    private static Reduction reduceInChunks(ReduceOperation op, int[] values, int chunks) {
+        int[] bounds = Leader.partitionBounds(values.length, chunks);
+        Reduction result = op.reduce(new int[0], 0, 0);
+        // combine right to left, so the order differs from a single pass
+        for (int i = bounds.length - 2; i >= 0; i--) {
+            result = op.combine(op.reduce(values, bounds[i], bounds[i + 1]), result);
+        }
+        return result;
+    }
+
+    @Test
+    void testCombinedChunksMatchSinglePass() {
+        int[] values = new Random(5).ints(1000, -500, 500).toArray();
+        for (ReduceOperation op : List.of(ReduceOperation.SUM,
+                ReduceOperation.of(ReduceOp.MIN, 0, 0),
+                ReduceOperation.of(ReduceOp.MAX, 0, 0),
+                ReduceOperation.of(ReduceOp.COUNT, 0, 0),
+                ReduceOperation.of(ReduceOp.HISTOGRAM, 0, 64),
+                ReduceOperation.of(ReduceOp.TOP_K, 7, 0))) {
+            for (int chunks : new int[]{1, 3, 17, 1000}) {
+                assertEquals(op.reduce(values, 0, values.length), reduceInChunks(op, values, chunks),
+                        op.op + " over " + chunks + " chunks");
+            }
+        }
+    }
+
+    @Test
+    void testScalarResults() {
+        assertEquals(164, ReduceOperation.SUM.reduce(VALUES, 0, VALUES.length).getValue());
+        assertEquals(-19, ReduceOperation.of(ReduceOp.MIN, 0, 0).reduce(VALUES, 0, VALUES.length).getValue());
+        assertEquals(101, ReduceOperation.of(ReduceOp.MAX, 0, 0).reduce(VALUES, 0, VALUES.length).getValue());
+        Reduction count = ReduceOperation.of(ReduceOp.COUNT, 0, 0).reduce(VALUES, 0, VALUES.length);
+        assertEquals(10, count.getValue());
+        assertEquals(16.4, count.getMean(), 1e-9);
+    }
+
+    @Test
+    void testHistogramBucketsNegativeValuesDownward() {
+        Reduction histogram = ReduceOperation.of(ReduceOp.HISTOGRAM, 0, 10).reduce(VALUES, 0, VALUES.length);
+        // -19 -> bucket -2, -7 -> -1, 0..8 -> 0, 12 -> 1, 30 30 -> 3, 101 -> 10
+        assertEquals(List.of(-2L, -1L, 0L, 1L, 3L, 10L), histogram.getBucketKeysList());
+        assertEquals(List.of(1L, 1L, 4L, 1L, 2L, 1L), histogram.getBucketCountsList());
+    }
+
+    @Test
+    void testTopKKeepsDuplicatesInDescendingOrder() {
+        Reduction top = ReduceOperation.of(ReduceOp.TOP_K, 3, 0).reduce(VALUES, 0, VALUES.length);
+        assertEquals(List.of(101L, 30L, 30L), top.getTopList());
+    }
+
+    @Test
+    void testSumDoesNotOverflow() {
+        int[] values = {Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE};
+        Reduction sum = reduceInChunks(ReduceOperation.SUM, values, 3);
+        assertEquals(3L * Integer.MAX_VALUE, sum.getValue());
+        assertEquals(Integer.MAX_VALUE, sum.getMean(), 1e-3);
+    }
+
+    @Test
+    void testMissingParametersAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> ReduceOperation.of(ReduceOp.TOP_K, 0, 0));
+        assertThrows(IllegalArgumentException.class, () -> ReduceOperation.of(ReduceOp.HISTOGRAM, 0, -5));
+    }
+}
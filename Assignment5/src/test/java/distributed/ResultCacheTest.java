@@ -0,0 +1,169 @@
+package distributed;
+
+import distributed.ResultCache.TaskFailure;
+import distributed.protocol.ResultResponse;
+import distributed.protocol.TaskRequest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResultCacheTest {
+
+    private static TaskRequest request(Integer... values) {
+        return TaskRequest.newBuilder().addAllList(List.of(values)).build();
+    }
+
+    private static ResultResponse result(int sum) {
+        return ResultResponse.newBuilder().setSum(sum).build();
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    @Test
+    void testRepeatedRequestIsServedFromCache() throws Exception {
+        ResultCache cache = new ResultCache(10, 60_000);
+        AtomicInteger runs = new AtomicInteger();
+
+        ResultResponse first = cache.get(request(1, 2, 3), () -> result(runs.incrementAndGet()));
+        ResultResponse second = cache.get(request(1, 2, 3), () -> result(runs.incrementAndGet()));
+        ResultResponse other = cache.get(request(3, 2, 1), () -> result(runs.incrementAndGet()));
+
+        assertEquals(1, first.getSum());
+        assertFalse(first.getCached());
+        assertEquals(1, second.getSum());
+        assertTrue(second.getCached());
+        assertEquals(2, other.getSum());
+        assertEquals(1, cache.hits());
+        assertEquals(2, cache.misses());
+    }
+
+    @Test
+    void testEntriesExpireAfterTtl() throws Exception {
+        ResultCache cache = new ResultCache(10, 50);
+        AtomicInteger runs = new AtomicInteger();
+
+        cache.get(request(1), () -> result(runs.incrementAndGet()));
+        Thread.sleep(100);
+        ResultResponse again = cache.get(request(1), () -> result(runs.incrementAndGet()));
+
+        assertEquals(2, again.getSum());
+        assertEquals(0, cache.hits());
+    }
+
+    @Test
+    void testLeastRecentlyUsedIsEvicted() throws Exception {
+        ResultCache cache = new ResultCache(2, 60_000);
+        AtomicInteger runs = new AtomicInteger();
+
+        cache.get(request(1), () -> result(runs.incrementAndGet()));
+        cache.get(request(2), () -> result(runs.incrementAndGet()));
+        cache.get(request(1), () -> result(runs.incrementAndGet()));   // 1 is now the most recent
+        cache.get(request(3), () -> result(runs.incrementAndGet()));   // evicts 2
+
+        assertEquals(2, cache.size());
+        assertTrue(cache.get(request(1), () -> result(-1)).getCached());
+        assertFalse(cache.get(request(2), () -> result(-1)).getCached());
+    }
+
+    @Test
+    @Timeout(30)
+    void testIdenticalRequestsInFlightShareOneComputation() throws Exception {
+        ResultCache cache = new ResultCache(10, 60_000);
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        // every copy blocks the same way, so nothing depends on which one turns out to be the owner
+        ResultCache.Computation blocked = () -> {
+            runs.incrementAndGet();
+            started.countDown();
+            release.await();
+            return result(42);
+        };
+        ExecutorService clients = Executors.newFixedThreadPool(4);
+        try {
+            Future<ResultResponse> owner = clients.submit(() -> cache.get(request(7), blocked));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            List<Future<ResultResponse>> answers = List.of(owner,
+                    clients.submit(() -> cache.get(request(7), blocked)),
+                    clients.submit(() -> cache.get(request(7), blocked)));
+            waitFor(() -> cache.shared() == 2);
+            release.countDown();
+
+            for (Future<ResultResponse> answer : answers) {
+                assertEquals(42, answer.get(5, TimeUnit.SECONDS).getSum());
+            }
+        } finally {
+            release.countDown();
+            clients.shutdownNow();
+        }
+        assertEquals(1, runs.get());
+        assertEquals(1, cache.misses());
+    }
+
+    @Test
+    void testFailuresAreNotCached() throws Exception {
+        ResultCache cache = new ResultCache(10, 60_000);
+
+        TaskFailure failure = assertThrows(TaskFailure.class,
+                () -> cache.get(request(1), () -> { throw new TaskFailure(1, "Not enough healthy nodes"); }));
+        assertEquals(1, failure.code);
+
+        ResultResponse retried = cache.get(request(1), () -> result(5));
+        assertEquals(5, retried.getSum());
+        assertFalse(retried.getCached());
+    }
+
+    @Test
+    @Timeout(30)
+    void testWaiterTakesOverWhenOwnerIsCancelled() throws Exception {
+        ResultCache cache = new ResultCache(10, 60_000);
+        CountDownLatch started = new CountDownLatch(1);
+
+        Thread owner = new Thread(() -> {
+            try {
+                cache.get(request(9), () -> {
+                    started.countDown();
+                    Thread.sleep(60_000);
+                    return result(-1);
+                });
+            } catch (TaskFailure | InterruptedException ignored) {}
+        });
+        owner.start();
+        started.await();
+
+        ExecutorService waiter = Executors.newSingleThreadExecutor();
+        Future<ResultResponse> answer = waiter.submit(() -> cache.get(request(9), () -> result(9)));
+        waitFor(() -> cache.shared() == 1);
+        owner.interrupt();
+
+        ResultResponse result = answer.get(5, TimeUnit.SECONDS);
+        waiter.shutdown();
+        assertEquals(9, result.getSum());
+        assertFalse(result.getCached());
+    }
+
+    @Test
+    void testDisabledCacheAlwaysComputes() throws Exception {
+        ResultCache cache = new ResultCache(0, 60_000);
+        AtomicInteger runs = new AtomicInteger();
+        cache.get(request(1), () -> result(runs.incrementAndGet()));
+        cache.get(request(1), () -> result(runs.incrementAndGet()));
+        assertEquals(2, runs.get());
+    }
+}
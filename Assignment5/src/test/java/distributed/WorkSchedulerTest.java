@@ -0,0 +1,207 @@
+package distributed;
+
+import distributed.protocol.LeaderMessage;
+import distributed.protocol.NodeMessage;
+import distributed.protocol.NodeStats;
+import distributed.protocol.ReduceOp;
+import distributed.protocol.Reduction;
+import distributed.protocol.SubtaskRequest;
+import distributed.protocol.SubtaskResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WorkSchedulerTest {
+
+    private final List<Socket> sockets = new ArrayList<>();
+
+    @AfterEach
+    void closeSockets() throws IOException {
+        for (Socket s : sockets) s.close();
+    }
+
+    private NodeConnection fakeNode(String nodeId, long latencyMs, int maxAnswers) throws IOException {
+        return fakeNode(nodeId, latencyMs, maxAnswers, false);
+    }
+
+    /**
+     * Connects a fake Node that answers each subtask after {@code latencyMs},
+     * and stops answering (closes its socket) after {@code maxAnswers} subtasks.
+     * A faulty Node reports {@link Node#faulty} instead of the real reduction.
+     */
+    private NodeConnection fakeNode(String nodeId, long latencyMs, int maxAnswers, boolean faulty) throws IOException {
+        try (ServerSocket server = new ServerSocket(0)) {
+            Socket nodeSide = new Socket("localhost", server.getLocalPort());
+            Socket leaderSide = server.accept();
+            sockets.add(nodeSide);
+            sockets.add(leaderSide);
+
+            new Thread(() -> {
+                try (nodeSide) {
+                    InputStream in = nodeSide.getInputStream();
+                    OutputStream out = nodeSide.getOutputStream();
+                    for (int answered = 0; answered < maxAnswers; ) {
+                        LeaderMessage message = LeaderMessage.parseDelimitedFrom(in);
+                        if (message == null) return;
+                        if (!message.hasSubtask()) continue;
+                        SubtaskRequest req = message.getSubtask();
+                        Thread.sleep(latencyMs);
+                        int[] values = req.getListList().stream().mapToInt(Integer::intValue).toArray();
+                        ReduceOperation op = ReduceOperation.of(req.getOp(), req.getTopK(), req.getBucketWidth());
+                        Reduction reduction = faulty ? Node.faulty(op, values) : op.reduce(values, 0, values.length);
+                        SubtaskResult result = SubtaskResult.newBuilder()
+                                .setTaskId(req.getTaskId())
+                                .setReduction(reduction)
+                                .build();
+                        NodeMessage.newBuilder().setResult(result).build().writeDelimitedTo(out);
+                        answered++;
+                    }
+                } catch (IOException | InterruptedException ignored) {}
+            }).start();
+
+            NodeConnection node = new NodeConnection(leaderSide, leaderSide.getInputStream(),
+                    leaderSide.getOutputStream(), nodeId);
+            node.start(() -> {});
+            return node;
+        }
+    }
+
+    private static int[] range(int n) {
+        return IntStream.rangeClosed(1, n).toArray();
+    }
+
+    @Test
+    void testSlowNodePullsFewerChunks() throws Exception {
+        List<NodeConnection> nodes = List.of(
+                fakeNode("fast-1", 5, Integer.MAX_VALUE),
+                fakeNode("fast-2", 5, Integer.MAX_VALUE),
+                fakeNode("slow", 200, Integer.MAX_VALUE));
+
+        WorkScheduler.Result result = WorkScheduler.of(range(120), 24, 0, 0).run(nodes, Thread.ofVirtual().factory());
+
+        assertEquals(7260, result.reduction.getValue());
+        int totalChunks = result.nodeStats.stream().mapToInt(NodeStats::getChunks).sum();
+        assertEquals(24, totalChunks);
+        NodeStats slow = result.nodeStats.stream().filter(s -> s.getNodeId().equals("slow")).findFirst().get();
+        NodeStats fast = result.nodeStats.stream().filter(s -> s.getNodeId().equals("fast-1")).findFirst().get();
+        assertTrue(slow.getChunks() < fast.getChunks(), "Slow node should pull fewer chunks");
+    }
+
+    @Test
+    void testChunksOfDroppedNodeAreRequeued() throws Exception {
+        List<NodeConnection> nodes = List.of(
+                fakeNode("steady", 5, Integer.MAX_VALUE),
+                fakeNode("flaky", 5, 2));
+
+        WorkScheduler.Result result = WorkScheduler.of(range(40), 10, 0, 0).run(nodes, Thread.ofVirtual().factory());
+
+        assertEquals(820, result.reduction.getValue());
+        int totalChunks = result.nodeStats.stream().mapToInt(NodeStats::getChunks).sum();
+        assertEquals(10, totalChunks);
+    }
+
+    @Test
+    void testFailsWhenAllNodesDrop() throws Exception {
+        List<NodeConnection> nodes = List.of(fakeNode("flaky", 5, 1));
+        WorkScheduler scheduler = WorkScheduler.of(range(10), 5, 0, 0);
+        assertThrows(IOException.class, () -> scheduler.run(nodes, Thread.ofVirtual().factory()));
+    }
+
+    @Test
+    void testStragglerIsReExecutedOnIdleNode() throws Exception {
+        List<NodeConnection> nodes = List.of(
+                fakeNode("fast-1", 5, Integer.MAX_VALUE),
+                fakeNode("fast-2", 5, Integer.MAX_VALUE),
+                fakeNode("stuck", 60_000, Integer.MAX_VALUE));
+
+        long start = System.currentTimeMillis();
+        WorkScheduler.Result result = WorkScheduler.of(range(30), 6, 0, 0.9).run(nodes, Thread.ofVirtual().factory());
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals(465, result.reduction.getValue());
+        assertTrue(result.mismatches.isEmpty());
+        assertTrue(elapsed < 10_000, "Stuck chunk should be won by a speculative copy");
+        int speculative = result.nodeStats.stream().mapToInt(NodeStats::getSpeculativeChunks).sum();
+        assertTrue(speculative >= 1);
+        NodeStats stuck = result.nodeStats.stream().filter(s -> s.getNodeId().equals("stuck")).findFirst().get();
+        assertEquals(0, stuck.getChunks());
+    }
+
+    @Test
+    void testCrossCheckCatchesWrongStraggler() throws Exception {
+        List<NodeConnection> nodes = List.of(
+                fakeNode("fast-1", 5, Integer.MAX_VALUE),
+                fakeNode("fast-2", 5, Integer.MAX_VALUE),
+                fakeNode("slow-faulty", 300, Integer.MAX_VALUE, true));
+
+        WorkScheduler.Result result = WorkScheduler.of(range(30), 6, 0, 0.9).run(nodes, Thread.ofVirtual().factory());
+
+        assertEquals(1, result.mismatches.size());
+        assertTrue(result.mismatches.get(0).contains("slow-faulty"));
+    }
+
+    @Test
+    void testStreamedChunksAreBackpressured() throws Exception {
+        List<NodeConnection> nodes = List.of(
+                fakeNode("node-1", 20, Integer.MAX_VALUE),
+                fakeNode("node-2", 20, Integer.MAX_VALUE));
+        WorkScheduler scheduler = new WorkScheduler(0, 0, 2);
+        ExecutorService runner = Executors.newSingleThreadExecutor();
+        Future<WorkScheduler.Result> running = runner.submit(() -> scheduler.run(nodes, Thread.ofVirtual().factory()));
+
+        // 40 chunks through a backlog of 2: put() has to wait for the Nodes most of the time
+        int[] values = range(200);
+        long start = System.currentTimeMillis();
+        for (int from = 0; from < values.length; from += 5) {
+            scheduler.put(values, from, from + 5);
+        }
+        long feedMs = System.currentTimeMillis() - start;
+        scheduler.close();
+
+        WorkScheduler.Result result = running.get(10, TimeUnit.SECONDS);
+        runner.shutdown();
+        assertEquals(20100, result.reduction.getValue());
+        assertTrue(feedMs >= 200, "Producer should have been held back, took " + feedMs + "ms");
+    }
+
+    @Test
+    void testNodesReduceWithTheTaskOperation() throws Exception {
+        List<NodeConnection> nodes = List.of(
+                fakeNode("node-1", 5, Integer.MAX_VALUE),
+                fakeNode("node-2", 5, Integer.MAX_VALUE));
+        int[] values = {7, -2, 40, 13, 40, 0, 9, 25, -11, 3};
+
+        ReduceOperation topK = ReduceOperation.of(ReduceOp.TOP_K, 3, 0);
+        WorkScheduler.Result top = WorkScheduler.of(topK, values, 5, 0, 0).run(nodes, Thread.ofVirtual().factory());
+        assertEquals(List.of(40L, 40L, 25L), top.reduction.getTopList());
+        assertEquals(10, top.reduction.getCount());
+        assertEquals(12.4, top.reduction.getMean(), 1e-9);
+
+        ReduceOperation min = ReduceOperation.of(ReduceOp.MIN, 0, 0);
+        WorkScheduler.Result lowest = WorkScheduler.of(min, values, 5, 0, 0).run(nodes, Thread.ofVirtual().factory());
+        assertEquals(-11, lowest.reduction.getValue());
+    }
+
+    @Test
+    void testPercentileNearestRank() {
+        List<Long> samples = List.of(40L, 10L, 30L, 20L, 50L);
+        assertEquals(10, WorkScheduler.percentile(samples, 0.1));
+        assertEquals(30, WorkScheduler.percentile(samples, 0.5));
+        assertEquals(50, WorkScheduler.percentile(samples, 0.9));
+        assertEquals(50, WorkScheduler.percentile(samples, 1.0));
+    }
+}
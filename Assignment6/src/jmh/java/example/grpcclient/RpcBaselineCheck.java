@@ -0,0 +1,117 @@
+package example.grpcclient;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+import org.openjdk.jmh.util.Statistics;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs {@link RpcBenchmark} through JMH and prints calls per second and latency percentiles for
+ * each RPC. With a baseline file, results are compared with it and the run fails if any RPC is
+ * more than 10% slower. The file is written by the first run that names it; delete it to take a
+ * new baseline.
+ *
+ * Usage: RpcBaselineCheck [seconds=1] [iterations=5] [transports=inprocess|netty|inprocess,netty] [baselineFile]
+ *        (gradle runRpcBenchmark -Pseconds=1 -Piterations=5 -Ptransports=inprocess,netty -Pbaseline=rpc-baseline.properties)
+ */
+public class RpcBaselineCheck {
+
+    private static final int WARMUP_ITERATIONS = 2;
+    private static final double REGRESSION = 0.10;
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 1;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        String[] transports = (args.length > 2 ? args[2] : "inprocess").split(",");
+        Path baseline = args.length > 3 && !args[3].isEmpty() ? Paths.get(args[3]) : null;
+
+        Collection<RunResult> runs = new Runner(new OptionsBuilder()
+                .include(RpcBenchmark.class.getName() + "\\.")
+                .param("transport", transports)
+                .warmupIterations(WARMUP_ITERATIONS)
+                .warmupTime(TimeValue.seconds(seconds))
+                .measurementIterations(iterations)
+                .measurementTime(TimeValue.seconds(seconds))
+                .timeUnit(TimeUnit.MICROSECONDS)
+                .forks(1)
+                .build()).run();
+
+        // keyed as the baseline files always were: IN_PROCESS.parrot, NETTY.getJoke, ...
+        Map<String, Statistics> throughput = new TreeMap<>();
+        Map<String, Statistics> latency = new TreeMap<>();
+        for (RunResult run : runs) {
+            String benchmark = run.getParams().getBenchmark();
+            String key = RpcBenchmark.parseTransport(run.getParams().getParam("transport")) + "."
+                    + benchmark.substring(benchmark.lastIndexOf('.') + 1);
+            Statistics stats = run.getPrimaryResult().getStatistics();
+            if (run.getParams().getMode() == Mode.Throughput) {
+                throughput.put(key, stats);
+            } else if (run.getParams().getMode() == Mode.SampleTime) {
+                latency.put(key, stats);
+            }
+        }
+
+        Properties results = new Properties();
+        System.out.println();
+        for (Map.Entry<String, Statistics> rpc : throughput.entrySet()) {
+            // scores are calls per microsecond
+            double perSecond = rpc.getValue().getMean() * 1e6;
+            Statistics sampled = latency.get(rpc.getKey());
+            System.out.printf("%-30s %,12.0f ± %,9.0f calls/s%s%n", rpc.getKey(), perSecond,
+                    rpc.getValue().getStandardDeviation() * 1e6,
+                    sampled == null ? "" : String.format("  p50=%.1fµs p99=%.1fµs p99.9=%.1fµs",
+                            sampled.getPercentile(50), sampled.getPercentile(99), sampled.getPercentile(99.9)));
+            results.setProperty(rpc.getKey(), String.format("%.0f", perSecond));
+        }
+
+        if (baseline != null && !compare(results, baseline)) {
+            System.exit(1);
+        }
+    }
+
+    /** Prints each RPC's change against the baseline; false if any got slower than allowed. */
+    private static boolean compare(Properties results, Path baseline) throws IOException {
+        if (!Files.exists(baseline)) {
+            try (Writer out = Files.newBufferedWriter(baseline)) {
+                results.store(out, "RpcBenchmark calls/s");
+            }
+            System.out.println("\nBaseline written to " + baseline);
+            return true;
+        }
+        Properties before = new Properties();
+        try (Reader in = Files.newBufferedReader(baseline)) {
+            before.load(in);
+        }
+        boolean ok = true;
+        System.out.printf("%nCompared with %s:%n", baseline);
+        for (String key : new TreeSet<>(results.stringPropertyNames())) {
+            String old = before.getProperty(key);
+            if (old == null) {
+                continue;
+            }
+            double was = Double.parseDouble(old);
+            double now = Double.parseDouble(results.getProperty(key));
+            double change = (now - was) / was;
+            boolean regressed = change < -REGRESSION;
+            ok &= !regressed;
+            System.out.printf("%-30s %,12.0f -> %,12.0f  %+6.1f%%%s%n", key, was, now, 100 * change,
+                    regressed ? "  REGRESSED" : "");
+        }
+        return ok;
+    }
+}
@@ -0,0 +1,171 @@
+package example.grpcclient;
+
+import com.google.protobuf.Empty;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import service.*;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every Node RPC, one call at a time from one caller, against a NodeHarness. On the in-process
+ * transport this is what the service code and protobuf cost without any network, which makes it
+ * a steady baseline for spotting a slower RPC; the netty transport shows what loopback HTTP/2
+ * adds on top.
+ *
+ * Throughput gives calls per microsecond, sample time the latency distribution. Each RPC gets 2
+ * warm-up iterations and 5 measured ones of a second each. {@link RpcBaselineCheck} runs these
+ * and compares them with a stored baseline.
+ *
+ * Usage: gradle jmh -PjmhIncludes=RpcBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RpcBenchmark {
+
+    @Param({"inprocess"})
+    String transport;
+
+    private NodeHarness node;
+    private EchoGrpc.EchoBlockingStub echo;
+    private JokeGrpc.JokeBlockingStub jokes;
+    private CaesarGrpc.CaesarBlockingStub caesar;
+    private WeatherGrpc.WeatherBlockingStub weather;
+    private NoteServiceGrpc.NoteServiceBlockingStub notes;
+    private RegistryGrpc.RegistryBlockingStub registry;
+    private MetricsGrpc.MetricsBlockingStub metrics;
+
+    private final ClientRequest parrot = ClientRequest.newBuilder().setMessage("benchmark").build();
+    private final JokeReq oneJoke = JokeReq.newBuilder().setNumber(1).build();
+    private final JokeReq hundredJokes = JokeReq.newBuilder().setNumber(100).build();
+    private final SaveReq save = SaveReq.newBuilder().setName("bench").setPassword("Pa55word!").build();
+    private final PasswordReq decrypt = PasswordReq.newBuilder().setName("bench").build();
+    private final WeatherCityRequest seattle = WeatherCityRequest.newBuilder().setCityName("Seattle").build();
+    private final GetNotesPageRequest page = GetNotesPageRequest.newBuilder().setCursor(0).setPageSize(100).build();
+    private final SearchNotesRequest search = SearchNotesRequest.newBuilder().setQuery("apple").build();
+    private final CreateNoteRequest create = CreateNoteRequest.newBuilder().setNote("created while benchmarking").build();
+    private SaveBatchReq saveBatch;
+
+    /** "netty" or anything else for in-process, as the transports are named on the command line. */
+    static NodeHarness.Transport parseTransport(String name) {
+        return name.trim().equalsIgnoreCase("netty") ? NodeHarness.Transport.NETTY : NodeHarness.Transport.IN_PROCESS;
+    }
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        node = NodeHarness.start(parseTransport(transport));
+        echo = EchoGrpc.newBlockingStub(node.channel());
+        jokes = JokeGrpc.newBlockingStub(node.channel());
+        caesar = CaesarGrpc.newBlockingStub(node.channel());
+        weather = WeatherGrpc.newBlockingStub(node.channel());
+        notes = NoteServiceGrpc.newBlockingStub(node.channel());
+        registry = RegistryGrpc.newBlockingStub(node.channel());
+        metrics = MetricsGrpc.newBlockingStub(node.channel());
+
+        // something to find, page through and decrypt
+        for (int i = 0; i < 1000; i++) {
+            notes.createNote(CreateNoteRequest.newBuilder().setNote("benchmark note " + i + (i % 10 == 0 ? " apple" : "")).build());
+        }
+        caesar.encrypt(save);
+        SaveBatchReq.Builder batch = SaveBatchReq.newBuilder();
+        for (int i = 0; i < 100; i++) {
+            batch.addEntries(SaveReq.newBuilder().setName("bench" + i).setPassword("Pa55word!" + i));
+        }
+        saveBatch = batch.build();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws InterruptedException {
+        node.close();
+    }
+
+    @Benchmark
+    public ServerResponse parrot() {
+        return echo.parrot(parrot);
+    }
+
+    @Benchmark
+    public JokeRes getJoke() {
+        return jokes.getJoke(oneJoke);
+    }
+
+    @Benchmark
+    public int streamJokes100() {
+        int n = 0;
+        for (Iterator<?> it = jokes.streamJokes(hundredJokes); it.hasNext(); it.next()) {
+            n++;
+        }
+        return n;
+    }
+
+    @Benchmark
+    public SaveRes encrypt() {
+        return caesar.encrypt(save);
+    }
+
+    @Benchmark
+    public PasswordRes decrypt() {
+        return caesar.decrypt(decrypt);
+    }
+
+    @Benchmark
+    public SaveBatchRes encryptBatch100() {
+        return caesar.encryptBatch(saveBatch);
+    }
+
+    @Benchmark
+    public PasswordList listPasswords() {
+        return caesar.listPasswords(Empty.getDefaultInstance());
+    }
+
+    @Benchmark
+    public CitiesResponse listCities() {
+        return weather.listCities(Empty.getDefaultInstance());
+    }
+
+    @Benchmark
+    public WeatherResponse inCity() {
+        return weather.inCity(seattle);
+    }
+
+    @Benchmark
+    public GetNotesPageResponse getNotesPage100() {
+        return notes.getNotesPage(page);
+    }
+
+    @Benchmark
+    public SearchNotesResponse searchNotes() {
+        return notes.searchNotes(search);
+    }
+
+    @Benchmark
+    public ServicesListRes getServices() {
+        return registry.getServices(GetServicesReq.getDefaultInstance());
+    }
+
+    @Benchmark
+    public MetricsRes getMetrics() {
+        return metrics.getMetrics(MetricsReq.getDefaultInstance());
+    }
+
+    // adds a note per call; each benchmark gets its own fork and harness, so the listings never see these
+    @Benchmark
+    public CreateNoteResponse createNote() {
+        return notes.createNote(create);
+    }
+}
@@ -0,0 +1,175 @@
+package example.grpcclient;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.protobuf.Empty;
+import io.grpc.Channel;
+import service.*;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Non-blocking counterpart of Client built on the future stubs. Every method returns at once with
+ * a CompletableFuture, so many calls, to one service or several, can be in flight together.
+ *
+ * At most {@code maxInFlight} calls are sent at a time. Further calls wait in a queue and are
+ * started, in order, as earlier ones finish; no thread blocks while they wait.
+ */
+public class AsyncClient {
+  private final EchoGrpc.EchoFutureStub echoStub;
+  private final JokeGrpc.JokeFutureStub jokeStub;
+  private final CaesarGrpc.CaesarFutureStub caesarStub;
+  private final WeatherGrpc.WeatherFutureStub weatherStub;
+  private final NoteServiceGrpc.NoteServiceFutureStub noteStub;
+
+  private final int maxInFlight;
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final ConcurrentLinkedQueue<Runnable> waiting = new ConcurrentLinkedQueue<>();
+
+  public AsyncClient(Channel channel, int maxInFlight) {
+    if (maxInFlight < 1) {
+      throw new IllegalArgumentException("maxInFlight must be at least 1");
+    }
+    this.maxInFlight = maxInFlight;
+    echoStub = EchoGrpc.newFutureStub(channel);
+    jokeStub = JokeGrpc.newFutureStub(channel);
+    caesarStub = CaesarGrpc.newFutureStub(channel);
+    weatherStub = WeatherGrpc.newFutureStub(PooledMarshaller.forLargePayloads(channel));
+    noteStub = NoteServiceGrpc.newFutureStub(PooledMarshaller.forLargePayloads(channel));
+  }
+
+  public CompletableFuture<ServerResponse> parrot(String message) {
+    return call(() -> echoStub.parrot(ClientRequest.newBuilder().setMessage(message).build()));
+  }
+
+  public CompletableFuture<JokeRes> jokes(int number) {
+    return call(() -> jokeStub.getJoke(JokeReq.newBuilder().setNumber(number).build()));
+  }
+
+  public CompletableFuture<SaveRes> encrypt(String name, String password) {
+    return call(() -> caesarStub.encrypt(SaveReq.newBuilder().setName(name).setPassword(password).build()));
+  }
+
+  public CompletableFuture<PasswordRes> decrypt(String name) {
+    return call(() -> caesarStub.decrypt(PasswordReq.newBuilder().setName(name).build()));
+  }
+
+  public CompletableFuture<PasswordList> listPasswords() {
+    return call(() -> caesarStub.listPasswords(Empty.getDefaultInstance()));
+  }
+
+  public CompletableFuture<CitiesResponse> listCities() {
+    return call(() -> weatherStub.listCities(Empty.getDefaultInstance()));
+  }
+
+  public CompletableFuture<WeatherResponse> weatherInCity(String city) {
+    return call(() -> weatherStub.inCity(WeatherCityRequest.newBuilder().setCityName(city).build()));
+  }
+
+  public CompletableFuture<CreateNoteResponse> createNote(String text) {
+    return call(() -> noteStub.createNote(CreateNoteRequest.newBuilder().setNote(text).build()));
+  }
+
+  public CompletableFuture<GetNotesPageResponse> notesPage(long cursor, int pageSize) {
+    return call(() -> noteStub.getNotesPage(GetNotesPageRequest.newBuilder()
+            .setCursor(cursor).setPageSize(pageSize).build()));
+  }
+
+  public CompletableFuture<SearchNotesResponse> searchNotes(String query) {
+    return call(() -> noteStub.searchNotes(SearchNotesRequest.newBuilder().setQuery(query).build()));
+  }
+
+  /**
+   * Completes once every given call has finished, whether it succeeded or not; look at each
+   * call's own future for its result. Unlike CompletableFuture.allOf it never fails early.
+   */
+  public static CompletableFuture<Void> all(CompletableFuture<?>... calls) {
+    return CompletableFuture.allOf(Arrays.stream(calls)
+            .map(c -> c.handle((v, e) -> null))
+            .toArray(CompletableFuture[]::new));
+  }
+
+  /** Calls sent and not yet finished. */
+  int inFlight() {
+    return inFlight.get();
+  }
+
+  /** Calls waiting for a free slot. */
+  int queued() {
+    return waiting.size();
+  }
+
+  /** Queues one call and starts it as soon as there is room. */
+  <T> CompletableFuture<T> call(Supplier<ListenableFuture<T>> rpc) {
+    CompletableFuture<T> result = new CompletableFuture<>();
+    waiting.add(() -> start(rpc, result));
+    drain();
+    return result;
+  }
+
+  private <T> void start(Supplier<ListenableFuture<T>> rpc, CompletableFuture<T> result) {
+    if (result.isDone()) {
+      // cancelled while it waited
+      finish();
+      return;
+    }
+    ListenableFuture<T> f;
+    try {
+      f = rpc.get();
+    } catch (RuntimeException e) {
+      finish();
+      result.completeExceptionally(e);
+      return;
+    }
+    Futures.addCallback(f, new FutureCallback<T>() {
+      @Override
+      public void onSuccess(T value) {
+        // free the slot first, so work chained on the result can start right away
+        finish();
+        result.complete(value);
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        finish();
+        result.completeExceptionally(t);
+      }
+    }, MoreExecutors.directExecutor());
+    result.whenComplete((v, e) -> {
+      if (result.isCancelled()) {
+        f.cancel(true);
+      }
+    });
+  }
+
+  private void finish() {
+    inFlight.decrementAndGet();
+    drain();
+  }
+
+  private void drain() {
+    while (!waiting.isEmpty()) {
+      int n = inFlight.get();
+      if (n >= maxInFlight) {
+        // whoever finishes next drains the queue
+        return;
+      }
+      if (!inFlight.compareAndSet(n, n + 1)) {
+        continue;
+      }
+      Runnable next = waiting.poll();
+      if (next == null) {
+        // another thread took it; give the slot back and look again
+        inFlight.decrementAndGet();
+        continue;
+      }
+      next.run();
+    }
+  }
+}
@@ -0,0 +1,135 @@
+package example.grpcclient;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ForwardingClientCall.SimpleForwardingClientCall;
+import io.grpc.ForwardingClientCallListener.SimpleForwardingClientCallListener;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import service.Connection;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Channel that sends each call to one of the nodes the registry lists for its method, picking the
+ * node with the fewest calls in flight from this client. There is one pooled channel per node,
+ * reused by every call and service. Methods no node offers go to the fallback channel.
+ *
+ * A call that fails with UNAVAILABLE drops its node from the directory, so the following calls
+ * go elsewhere. Once no cached answer lists a node any more, its channel is closed.
+ */
+class BalancedChannel extends Channel {
+
+  private static final class Node {
+    final Connection connection;
+    final ManagedChannel channel;
+    final AtomicInteger outstanding = new AtomicInteger();
+
+    Node(Connection connection) {
+      this.connection = connection;
+      this.channel = ManagedChannelBuilder.forAddress(connection.getUri(), connection.getPort())
+          .usePlaintext()
+          .build();
+    }
+  }
+
+  private final ServiceDirectory directory;
+  private final Channel fallback;
+  private final ConcurrentHashMap<String,Node> pool = new ConcurrentHashMap<>();
+
+  BalancedChannel(ServiceDirectory directory, Channel fallback) {
+    this.directory = directory;
+    this.fallback = fallback;
+    directory.onDropped(this::close);
+  }
+
+  @Override
+  public <ReqT, RespT> ClientCall<ReqT, RespT> newCall(MethodDescriptor<ReqT, RespT> method,
+                                                       CallOptions options) {
+    Node node = pick(directory.lookup(method.getFullMethodName()));
+    if (node == null) {
+      return fallback.newCall(method, options);
+    }
+    return new SimpleForwardingClientCall<ReqT, RespT>(node.channel.newCall(method, options)) {
+      @Override
+      public void start(Listener<RespT> listener, Metadata headers) {
+        node.outstanding.incrementAndGet();
+        super.start(new SimpleForwardingClientCallListener<RespT>(listener) {
+          @Override
+          public void onClose(Status status, Metadata trailers) {
+            node.outstanding.decrementAndGet();
+            if (status.getCode() == Status.Code.UNAVAILABLE) {
+              directory.invalidate(node.connection);
+            }
+            super.onClose(status, trailers);
+          }
+        }, headers);
+      }
+    };
+  }
+
+  @Override
+  public String authority() {
+    return fallback.authority();
+  }
+
+  /** Calls in flight to the node at uri:port, for tests. */
+  int outstanding(String uri, int port) {
+    Node node = pool.get(uri + ":" + port);
+    return node == null ? 0 : node.outstanding.get();
+  }
+
+  /** Nodes that currently have a pooled channel, for tests. */
+  int pooled() {
+    return pool.size();
+  }
+
+  /** Shuts down the pooled node channels; the fallback belongs to the caller. */
+  void shutdown() throws InterruptedException {
+    for (Node node : pool.values()) {
+      node.channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+    }
+    pool.clear();
+  }
+
+  private Node pick(List<Connection> nodes) {
+    if (nodes.isEmpty()) {
+      return null;
+    }
+    // start at a random node so that ties do not all land on the first one
+    int start = ThreadLocalRandom.current().nextInt(nodes.size());
+    Node best = null;
+    for (int i = 0; i < nodes.size(); i++) {
+      Connection c = nodes.get((start + i) % nodes.size());
+      Node node = pool.computeIfAbsent(key(c), k -> new Node(c));
+      if (node.channel.isShutdown()) {
+        // closed between the lookup and now, and listed again since
+        node = pool.compute(key(c), (k, n) -> n == null || n.channel.isShutdown() ? new Node(c) : n);
+      }
+      if (best == null || node.outstanding.get() < best.outstanding.get()) {
+        best = node;
+      }
+    }
+    return best;
+  }
+
+  /** Closes the channel to a node no cached answer lists; calls already on it may finish. */
+  private void close(Connection c) {
+    Node node = pool.remove(key(c));
+    if (node != null) {
+      node.channel.shutdown();
+    }
+  }
+
+  private static String key(Connection c) {
+    return c.getUri() + ":" + c.getPort();
+  }
+}
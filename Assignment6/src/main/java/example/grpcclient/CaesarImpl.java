@@ -3,15 +3,20 @@ package example.grpcclient;
 import com.google.protobuf.Empty;
 import io.grpc.stub.StreamObserver;
 import service.CaesarGrpc;
+import service.PasswordBatchReq;
+import service.PasswordBatchRes;
 import service.PasswordList;
 import service.PasswordReq;
 import service.PasswordRes;
+import service.SaveBatchReq;
+import service.SaveBatchRes;
+import service.SaveFailure;
 import service.SaveReq;
 import service.SaveRes;
 
 import java.util.Map;
-import java.util.Random;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * A simple in-memory store that:
@@ -19,6 +24,8 @@ import java.util.concurrent.ConcurrentHashMap;
  *    and remembers both the key and ciphertext under the given name.
  *  - on decrypt: looks up the name, reverses the shift, and returns the plaintext.
  *  - on listPasswords: returns the set of all names stored.
+ *  - the batch and stream variants do the same for many passwords in one call,
+ *    saving per-call overhead when thousands are loaded at once.
  */
 public class CaesarImpl extends CaesarGrpc.CaesarImplBase {
 
@@ -33,74 +40,158 @@ public class CaesarImpl extends CaesarGrpc.CaesarImplBase {
 
     // thread-safe map of name → (shift key + ciphertext)
     private final Map<String,Entry> store = new ConcurrentHashMap<>();
-    private final Random rng = new Random();
+
+    private static final SaveRes OK = SaveRes.newBuilder().setOk(true).build();
 
     @Override
     public void encrypt(SaveReq req, StreamObserver<SaveRes> obs) {
+        obs.onNext(save(req));
+        obs.onCompleted();
+    }
+
+    @Override
+    public void decrypt(PasswordReq req, StreamObserver<PasswordRes> obs) {
+        obs.onNext(lookup(req.getName()));
+        obs.onCompleted();
+    }
+
+    @Override
+    public void listPasswords(Empty unused, StreamObserver<PasswordList> obs) {
+        PasswordList.Builder b = PasswordList.newBuilder();
+        store.keySet().forEach(b::addPassList);
+        obs.onNext(b.build());
+        obs.onCompleted();
+    }
+
+    @Override
+    public void encryptBatch(SaveBatchReq req, StreamObserver<SaveBatchRes> obs) {
+        SaveBatchRes.Builder res = SaveBatchRes.newBuilder();
+        for (int i = 0; i < req.getEntriesCount(); i++) {
+            record(res, i, req.getEntries(i));
+        }
+        obs.onNext(res.build());
+        obs.onCompleted();
+    }
+
+    /** Saves each password as it arrives and answers once the client has sent them all. */
+    @Override
+    public StreamObserver<SaveReq> encryptStream(StreamObserver<SaveBatchRes> obs) {
+        return new StreamObserver<SaveReq>() {
+            private final SaveBatchRes.Builder res = SaveBatchRes.newBuilder();
+            private int index;
+
+            @Override
+            public void onNext(SaveReq req) {
+                record(res, index++, req);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                // the client gave up; what was saved so far stays saved
+            }
+
+            @Override
+            public void onCompleted() {
+                obs.onNext(res.build());
+                obs.onCompleted();
+            }
+        };
+    }
+
+    @Override
+    public void decryptBatch(PasswordBatchReq req, StreamObserver<PasswordBatchRes> obs) {
+        PasswordBatchRes.Builder res = PasswordBatchRes.newBuilder();
+        for (String name : req.getNamesList()) {
+            res.addResults(lookup(name));
+        }
+        obs.onNext(res.build());
+        obs.onCompleted();
+    }
+
+    @Override
+    public StreamObserver<PasswordReq> decryptStream(StreamObserver<PasswordBatchRes> obs) {
+        return new StreamObserver<PasswordReq>() {
+            private final PasswordBatchRes.Builder res = PasswordBatchRes.newBuilder();
+
+            @Override
+            public void onNext(PasswordReq req) {
+                res.addResults(lookup(req.getName()));
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                // nothing to undo for lookups
+            }
+
+            @Override
+            public void onCompleted() {
+                obs.onNext(res.build());
+                obs.onCompleted();
+            }
+        };
+    }
+
+    private void record(SaveBatchRes.Builder res, int index, SaveReq req) {
+        SaveRes r = save(req);
+        if (r.getOk()) {
+            res.setSaved(res.getSaved() + 1);
+        } else {
+            res.addFailed(SaveFailure.newBuilder()
+                    .setIndex(index)
+                    .setName(req.getName())
+                    .setError(r.getError()));
+        }
+    }
+
+    private SaveRes save(SaveReq req) {
         String name = req.getName();
         String pw   = req.getPassword();
 
         // Basic validation
         if (name == null || name.isEmpty() || pw == null || pw.isEmpty()) {
-            SaveRes err = SaveRes.newBuilder()
+            return SaveRes.newBuilder()
                     .setOk(false)
                     .setError("Both name and password must be non-empty")
                     .build();
-            obs.onNext(err);
-            obs.onCompleted();
-            return;
         }
 
-        // Pick a shift in [1..25]
-        int shift = rng.nextInt(25) + 1;
-        StringBuilder cipher = new StringBuilder(pw.length());
-        for (char c : pw.toCharArray()) {
-            cipher.append((char)(c + shift));
-        }
+        // Pick a shift in [1..25]; ThreadLocalRandom keeps concurrent calls off a shared seed
+        int shift = ThreadLocalRandom.current().nextInt(1, 26);
 
         // Store it
-        store.put(name, new Entry(shift, cipher.toString()));
-
-        SaveRes ok = SaveRes.newBuilder()
-                .setOk(true)
-                .build();
-        obs.onNext(ok);
-        obs.onCompleted();
+        store.put(name, new Entry(shift, shift(pw, shift)));
+        return OK;
     }
 
-    @Override
-    public void decrypt(PasswordReq req, StreamObserver<PasswordRes> obs) {
-        String name = req.getName();
+    private PasswordRes lookup(String name) {
         Entry e = store.get(name);
         if (e == null) {
-            PasswordRes notFound = PasswordRes.newBuilder()
+            return PasswordRes.newBuilder()
                     .setOk(false)
                     .setError("No password saved under name: " + name)
                     .build();
-            obs.onNext(notFound);
-            obs.onCompleted();
-            return;
         }
 
         // Reverse the shift
-        StringBuilder plain = new StringBuilder(e.encrypted.length());
-        for (char c : e.encrypted.toCharArray()) {
-            plain.append((char)(c - e.key));
-        }
-
-        PasswordRes ok = PasswordRes.newBuilder()
+        return PasswordRes.newBuilder()
                 .setOk(true)
-                .setPassword(plain.toString())
+                .setPassword(shift(e.encrypted, -e.key))
                 .build();
-        obs.onNext(ok);
-        obs.onCompleted();
     }
 
-    @Override
-    public void listPasswords(Empty unused, StreamObserver<PasswordList> obs) {
-        PasswordList.Builder b = PasswordList.newBuilder();
-        store.keySet().forEach(b::addPassList);
-        obs.onNext(b.build());
-        obs.onCompleted();
+    /**
+     * Adds {@code by} to every char of {@code s}. The chars are copied into an array of exactly
+     * their length and shifted in place by a plain counted loop, which the JIT turns into SIMD code.
+     * The array is short-lived and per call: under virtual threads a ThreadLocal would be a fresh
+     * array every call anyway, and on pooled threads it would keep the longest password's buffer.
+     */
+    static String shift(String s, int by) {
+        int n = s.length();
+        char[] buf = new char[n];
+        s.getChars(0, n, buf, 0);
+        for (int i = 0; i < n; i++) {
+            buf[i] = (char) (buf[i] + by);
+        }
+        return new String(buf, 0, n);
     }
 }
@@ -5,7 +5,10 @@ import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import service.*;
 
 import java.io.BufferedReader;
@@ -24,6 +27,14 @@ public class Client {
   private final CaesarGrpc.CaesarBlockingStub caesarStub;
   private final WeatherGrpc.WeatherBlockingStub weatherStub;
   private final NoteServiceGrpc.NoteServiceBlockingStub noteStub;
+  private final MetricsGrpc.MetricsBlockingStub metricsStub;
+  private final AsyncClient async;
+
+  private static final int NOTES_PAGE_SIZE = 50;
+  // calls the async client keeps in flight at once
+  private static final int MAX_IN_FLIGHT = 16;
+  // how long the registry's answer for a method is reused before asking again
+  private static final long DISCOVERY_TTL_MS = 30_000;
 
   /** Construct client for accessing server using the existing channel. */
   public Client(Channel channel, Channel regChannel) {
@@ -38,8 +49,10 @@ public class Client {
     blockingStub3 = RegistryGrpc.newBlockingStub(regChannel);
     blockingStub4 = RegistryGrpc.newBlockingStub(channel);
     caesarStub = CaesarGrpc.newBlockingStub(channel);
-    weatherStub = WeatherGrpc.newBlockingStub(channel);
-    noteStub = NoteServiceGrpc.newBlockingStub(channel);
+    weatherStub = WeatherGrpc.newBlockingStub(PooledMarshaller.forLargePayloads(channel));
+    noteStub = NoteServiceGrpc.newBlockingStub(PooledMarshaller.forLargePayloads(channel));
+    metricsStub = MetricsGrpc.newBlockingStub(channel);
+    async = new AsyncClient(channel, MAX_IN_FLIGHT);
   }
 
   /** Construct client for accessing server using the existing channel. */
@@ -55,8 +68,54 @@ public class Client {
     blockingStub3 = null;
     blockingStub4 = null;
     caesarStub = CaesarGrpc.newBlockingStub(channel);
-    weatherStub = WeatherGrpc.newBlockingStub(channel);
-    noteStub = NoteServiceGrpc.newBlockingStub(channel);
+    weatherStub = WeatherGrpc.newBlockingStub(PooledMarshaller.forLargePayloads(channel));
+    noteStub = NoteServiceGrpc.newBlockingStub(PooledMarshaller.forLargePayloads(channel));
+    metricsStub = MetricsGrpc.newBlockingStub(channel);
+    async = new AsyncClient(channel, MAX_IN_FLIGHT);
+  }
+
+  /**
+   * Asks every service for something at the same time and prints the answers once all are in, so
+   * the whole round takes about as long as the slowest call rather than the sum of all of them.
+   */
+  public void serviceOverview() {
+    CompletableFuture<ServerResponse> echo = async.parrot("overview");
+    CompletableFuture<JokeRes> joke = async.jokes(1);
+    CompletableFuture<PasswordList> passwords = async.listPasswords();
+    CompletableFuture<CitiesResponse> cities = async.listCities();
+    CompletableFuture<GetNotesPageResponse> notes = async.notesPage(0, 5);
+    AsyncClient.all(echo, joke, passwords, cities, notes).join();
+
+    print("Echo", echo, r -> r.getMessage());
+    print("Joke", joke, r -> r.getJokeList().toString());
+    print("Passwords", passwords, r -> r.getPassListList().toString());
+    print("Cities", cities, r -> r.getCityNameList().toString());
+    print("Notes", notes, r -> r.getNotesCount() + (r.getHasMore() ? "+" : "") + " notes");
+  }
+
+  private static <T> void print(String label, CompletableFuture<T> call, Function<T,String> show) {
+    try {
+      System.out.printf("%-10s %s%n", label + ":", show.apply(call.join()));
+    } catch (CompletionException e) {
+      System.out.printf("%-10s RPC failed: %s%n", label + ":", e.getCause().getMessage());
+    }
+  }
+
+  /** Prints the node's call statistics for every method it has served, busiest first. */
+  public void serverMetrics() {
+    MetricsRes res;
+    try {
+      res = metricsStub.getMetrics(MetricsReq.getDefaultInstance());
+    } catch (Exception e) {
+      System.out.println("RPC failed: " + e);
+      return;
+    }
+    res.getMethodsList().stream()
+        .filter(m -> m.getStarted() > 0)
+        .sorted((a, b) -> Long.compare(b.getTotalUs(), a.getTotalUs()))
+        .forEach(m -> System.out.printf("%-36s calls=%-5d p50=%dus p99=%dus max=%dus in=%dB out=%dB%n",
+            m.getMethod(), m.getStarted(), m.getP50Us(), m.getP99Us(), m.getMaxUs(),
+            m.getRequestBytes(), m.getResponseBytes()));
   }
 
   public void askServerToParrot(String message) {
@@ -227,10 +286,27 @@ public class Client {
     }
   }
 
+  /** Pages through the notes so no single response has to hold the whole store. */
   public void listNotes() {
-    GetNotesResponse res = noteStub.getNotes(Empty.getDefaultInstance());
-    res.getNotesList().forEach(n ->
-            System.out.printf("  [%d] %s%n", n.getId(), n.getNote()));
+    long cursor = 0;
+    GetNotesPageResponse page;
+    do {
+      page = noteStub.getNotesPage(GetNotesPageRequest.newBuilder()
+              .setCursor(cursor).setPageSize(NOTES_PAGE_SIZE).build());
+      page.getNotesList().forEach(n ->
+              System.out.printf("  [%d] %s%n", n.getId(), n.getNote()));
+      cursor = page.getNextCursor();
+    } while (page.getHasMore());
+  }
+
+  public void searchNotes(String query) {
+    SearchNotesResponse res = noteStub.searchNotes(
+            SearchNotesRequest.newBuilder().setQuery(query).build());
+    if (res.getResultsCount() == 0) {
+      System.out.println("No matching notes");
+    }
+    res.getResultsList().forEach(r ->
+            System.out.printf("  [%d] %s (score %.2f)%n", r.getNote().getId(), r.getNote().getNote(), r.getScore()));
   }
 
   public void deleteNote(long id) {
@@ -318,8 +394,14 @@ public class Client {
               client.listPasswords();
               break;
 
+            case 4:
+              // Search
+              System.out.print("Enter search words: ");
+              client.searchNotes(reader.readLine());
+              break;
+
             default:
-              System.out.println("Choose 1-4.");
+              System.out.println("Choose 1-5.");
           }
         }
         break;
@@ -374,17 +456,18 @@ public class Client {
           System.out.println("1: Create Note");
           System.out.println("2: List Notes");
           System.out.println("3: Delete Note");
-          System.out.println("4: Back to Main");
-          System.out.print("Select [1-4]: ");
+          System.out.println("4: Search Notes");
+          System.out.println("5: Back to Main");
+          System.out.print("Select [1-5]: ");
 
           int noteChoice;
           try {
             noteChoice = Integer.parseInt(reader.readLine());
           } catch (NumberFormatException e) {
-            System.out.println("Invalid input; please enter 1-4.");
+            System.out.println("Invalid input; please enter 1-5.");
             continue;
           }
-          if (noteChoice == 4) break;   // back to main menu
+          if (noteChoice == 5) break;   // back to main menu
 
           switch (noteChoice) {
             case 1:
@@ -410,8 +493,14 @@ public class Client {
               }
               break;
 
+            case 4:
+              // Search
+              System.out.print("Enter search words: ");
+              client.searchNotes(reader.readLine());
+              break;
+
             default:
-              System.out.println("Choose 1-4.");
+              System.out.println("Choose 1-5.");
           }
         }
         break;
@@ -460,16 +549,24 @@ public class Client {
     System.out.println("Listing notes:");
     client.listNotes();
 
+    System.out.println("Searching notes for \"auto\":");
+    client.searchNotes("auto");
+
     System.out.println("Deleting note ID=1");
     client.deleteNote(1);
 
     System.out.println("Attempting to delete non-existent note ID=999");
     client.deleteNote(999);
 
+    // 6) All services at once
+    System.out.println("\n-- Concurrent overview --");
+    client.serviceOverview();
+
+    // 7) What the calls above cost the node, most total time first
+    System.out.println("\n-- Server metrics --");
+    client.serverMetrics();
+
     System.out.println("=== AUTO MODE END ===");
-    // clean shutdown and exit
-    channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
-    if (useReg) regChannel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
   }
 
   public static void main(String[] args) throws Exception {
@@ -492,27 +589,36 @@ public class Client {
     ManagedChannel regChannel = ManagedChannelBuilder.forAddress(regHost, regPort)
             .usePlaintext().build();
 
+    // with the registry on, each call goes to the least busy node offering its method, and the
+    // registry is only asked again once its answer is DISCOVERY_TTL_MS old
+    BalancedChannel balanced = useReg
+            ? new BalancedChannel(new ServiceDirectory(RegistryGrpc.newBlockingStub(regChannel), DISCOVERY_TTL_MS), channel)
+            : null;
     Client client = useReg
-            ? new Client(channel, regChannel)
+            ? new Client(balanced, regChannel)
             : new Client(channel);
 
     if (autoMode) {
       performAutoFunctions(client, channel, useReg, regChannel);
-      return;
-    }
-
-    BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
-    boolean exit = false;
+    } else {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+      boolean exit = false;
 
-    while (!exit) {
-      exit = performMainLoop(reader, client, exit);
+      while (!exit) {
+        exit = performMainLoop(reader, client, exit);
+      }
     }
 
     // Clean shutdown
+    if (balanced != null) {
+      balanced.shutdown();
+    }
     channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
     if (useReg) {
       regChannel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
     }
-    System.out.println("Goodbye!");
+    if (!autoMode) {
+      System.out.println("Goodbye!");
+    }
   }
 }
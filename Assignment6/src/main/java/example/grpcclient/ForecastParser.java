@@ -0,0 +1,354 @@
+package example.grpcclient;
+
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Flow;
+
+/**
+ * Single-pass reader for OpenWeatherMap's 5-day forecast that keeps only what WeatherImpl needs:
+ * the highest {@code main.temp_max} of each day, in the order the days appear.
+ *
+ * Bytes are pushed in as the HTTP body arrives and scanned token by token; no String of the body
+ * and no JSON tree are built. The scanner is lenient: it follows the nesting well enough to find
+ * {@code list[*].main.temp_max} and {@code list[*].dt_txt} and does not validate the rest.
+ * Entries are expected in time order, as the API sends them, so a day ends when the date changes.
+ */
+class ForecastParser {
+
+    private static final byte[] LIST     = "list".getBytes();
+    private static final byte[] MAIN     = "main".getBytes();
+    private static final byte[] TEMP_MAX = "temp_max".getBytes();
+    private static final byte[] DT_TXT   = "dt_txt".getBytes();
+
+    // what the key of the value being read at each depth is, as far as this parser cares
+    private static final byte K_OTHER = 0, K_LIST = 1, K_MAIN = 2, K_TEMP_MAX = 3, K_DT_TXT = 4;
+
+    // depths: 1 = response object, 2 = list array, 3 = one forecast entry, 4 = its main object
+    private static final int ENTRY = 3;
+
+    private static final int DATE_LENGTH = 10; // "2025-07-09" of "2025-07-09 12:00:00"
+
+    private enum State { STRUCTURE, STRING, ESCAPE, UNICODE, NUMBER, LITERAL }
+
+    private State state = State.STRUCTURE;
+    private int depth;
+    private boolean[] isObject = new boolean[16];
+    private byte[] keyAt = new byte[16];
+    private boolean expectKey;
+    private boolean sawList;
+
+    // current string or number token, reused for every token
+    private byte[] token = new byte[64];
+    private int tokenLength;
+    private int unicodeLeft;
+
+    // the forecast entry being read
+    private final byte[] entryDate = new byte[DATE_LENGTH];
+    private boolean entryHasDate;
+    private double entryMax = Double.NaN;
+
+    // finished days
+    private final byte[] dayDate = new byte[DATE_LENGTH];
+    private boolean inDay;
+    private double dayMax;
+    private double[] highs = new double[8];
+    private int days;
+
+    /** Scans the next chunk of the body. */
+    void feed(ByteBuffer chunk) {
+        while (chunk.hasRemaining()) {
+            byte b = chunk.get(chunk.position());
+            if (step(b)) {
+                chunk.position(chunk.position() + 1);
+            }
+        }
+    }
+
+    void feed(byte[] bytes) {
+        feed(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * The daily maxima, one per date, in the order the dates appeared.
+     *
+     * @throws IllegalStateException if the body had no forecast list
+     */
+    double[] finish() {
+        if (state == State.NUMBER) {
+            endNumber();
+        }
+        if (!sawList) {
+            throw new IllegalStateException("Forecast has no list");
+        }
+        closeDay();
+        return Arrays.copyOf(highs, days);
+    }
+
+    /** Handles one byte; false means the byte ended a token and must be looked at again. */
+    private boolean step(byte b) {
+        switch (state) {
+            case STRING:
+                if (b == '"') {
+                    state = State.STRUCTURE;
+                    endString();
+                } else if (b == '\\') {
+                    state = State.ESCAPE;
+                } else {
+                    append(b);
+                }
+                return true;
+            case ESCAPE:
+                if (b == 'u') {
+                    unicodeLeft = 4;
+                    state = State.UNICODE;
+                } else {
+                    append(b == 'n' ? (byte) '\n' : b == 't' ? (byte) '\t' : b);
+                    state = State.STRING;
+                }
+                return true;
+            case UNICODE:
+                // none of the fields read here contain escapes; keep a placeholder
+                if (--unicodeLeft == 0) {
+                    append((byte) '?');
+                    state = State.STRING;
+                }
+                return true;
+            case NUMBER:
+                if ((b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.' || b == 'e' || b == 'E') {
+                    append(b);
+                    return true;
+                }
+                state = State.STRUCTURE;
+                endNumber();
+                return false;
+            case LITERAL:
+                if (b >= 'a' && b <= 'z') {
+                    return true;
+                }
+                state = State.STRUCTURE;
+                return false;
+            default:
+                structure(b);
+                return true;
+        }
+    }
+
+    private void structure(byte b) {
+        switch (b) {
+            case '{':
+            case '[':
+                push(b == '{');
+                break;
+            case '}':
+            case ']':
+                pop();
+                break;
+            case ',':
+                expectKey = depth > 0 && isObject[depth];
+                break;
+            case ':':
+                expectKey = false;
+                break;
+            case '"':
+                tokenLength = 0;
+                state = State.STRING;
+                break;
+            case ' ':
+            case '\n':
+            case '\r':
+            case '\t':
+                break;
+            default:
+                if ((b >= '0' && b <= '9') || b == '-') {
+                    tokenLength = 0;
+                    append(b);
+                    state = State.NUMBER;
+                } else {
+                    state = State.LITERAL; // true, false or null
+                }
+        }
+    }
+
+    private void push(boolean object) {
+        depth++;
+        if (depth == isObject.length) {
+            isObject = Arrays.copyOf(isObject, depth * 2);
+            keyAt = Arrays.copyOf(keyAt, depth * 2);
+        }
+        isObject[depth] = object;
+        keyAt[depth] = K_OTHER;
+        expectKey = object;
+        if (depth == 2 && keyAt[1] == K_LIST && !object) {
+            sawList = true;
+        }
+        if (depth == ENTRY && inList()) {
+            entryHasDate = false;
+            entryMax = Double.NaN;
+        }
+    }
+
+    private void pop() {
+        if (depth == ENTRY && inList()) {
+            endEntry();
+        }
+        depth--;
+        expectKey = false;
+    }
+
+    private boolean inList() {
+        return keyAt[1] == K_LIST && !isObject[2];
+    }
+
+    private void endString() {
+        if (expectKey) {
+            keyAt[depth] = keyOf();
+            expectKey = false;
+        } else if (depth == ENTRY && keyAt[ENTRY] == K_DT_TXT && inList() && tokenLength >= DATE_LENGTH) {
+            System.arraycopy(token, 0, entryDate, 0, DATE_LENGTH);
+            entryHasDate = true;
+        }
+    }
+
+    private void endNumber() {
+        if (depth == ENTRY + 1 && keyAt[ENTRY + 1] == K_TEMP_MAX && keyAt[ENTRY] == K_MAIN && inList()) {
+            entryMax = parseNumber();
+        }
+    }
+
+    private byte keyOf() {
+        if (depth == 1 && is(LIST)) {
+            return K_LIST;
+        }
+        if (depth == ENTRY && is(MAIN)) {
+            return K_MAIN;
+        }
+        if (depth == ENTRY && is(DT_TXT)) {
+            return K_DT_TXT;
+        }
+        if (depth == ENTRY + 1 && is(TEMP_MAX)) {
+            return K_TEMP_MAX;
+        }
+        return K_OTHER;
+    }
+
+    private boolean is(byte[] name) {
+        return Arrays.equals(token, 0, tokenLength, name, 0, name.length);
+    }
+
+    private void endEntry() {
+        if (!entryHasDate || Double.isNaN(entryMax)) {
+            return;
+        }
+        if (inDay && Arrays.equals(dayDate, entryDate)) {
+            dayMax = Math.max(dayMax, entryMax);
+            return;
+        }
+        closeDay();
+        System.arraycopy(entryDate, 0, dayDate, 0, DATE_LENGTH);
+        dayMax = entryMax;
+        inDay = true;
+    }
+
+    private void closeDay() {
+        if (!inDay) {
+            return;
+        }
+        if (days == highs.length) {
+            highs = Arrays.copyOf(highs, days * 2);
+        }
+        highs[days++] = dayMax;
+        inDay = false;
+    }
+
+    private void append(byte b) {
+        if (tokenLength == token.length) {
+            token = Arrays.copyOf(token, tokenLength * 2);
+        }
+        token[tokenLength++] = b;
+    }
+
+    /**
+     * Plain decimals such as "-12.34" are parsed in place: with at most 15 significant digits and
+     * 22 decimals both operands are exact doubles, so the one division rounds the same way
+     * Double.parseDouble does. Anything else goes to Double.parseDouble.
+     */
+    private double parseNumber() {
+        int i = 0;
+        boolean negative = token[0] == '-';
+        if (negative) {
+            i++;
+        }
+        long digits = 0;
+        int scale = 0;
+        boolean fraction = false;
+        int significant = 0;
+        for (; i < tokenLength; i++) {
+            byte c = token[i];
+            if (c == '.' && !fraction) {
+                fraction = true;
+            } else if (c >= '0' && c <= '9' && significant < 15 && scale < POWERS_OF_TEN.length - 1) {
+                digits = digits * 10 + (c - '0');
+                if (digits != 0) {
+                    significant++;
+                }
+                if (fraction) {
+                    scale++;
+                }
+            } else {
+                // exponent or too many digits
+                return Double.parseDouble(new String(token, 0, tokenLength));
+            }
+        }
+        double value = scale == 0 ? digits : digits / POWERS_OF_TEN[scale];
+        return negative ? -value : value;
+    }
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /**
+     * Body handler that runs the parser on each chunk as it arrives. A non-200 response is
+     * discarded and its body is null.
+     */
+    static HttpResponse.BodyHandler<double[]> bodyHandler() {
+        return info -> {
+            if (info.statusCode() != 200) {
+                return HttpResponse.BodySubscribers.replacing((double[]) null);
+            }
+            return HttpResponse.BodySubscribers.fromSubscriber(new Subscriber(), Subscriber::result);
+        };
+    }
+
+    private static final class Subscriber implements Flow.Subscriber<List<ByteBuffer>> {
+        private final ForecastParser parser = new ForecastParser();
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> chunks) {
+            for (ByteBuffer chunk : chunks) {
+                parser.feed(chunk);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            // the HTTP client fails the response future itself
+        }
+
+        @Override
+        public void onComplete() {
+        }
+
+        double[] result() {
+            return parser.finish();
+        }
+    }
+}
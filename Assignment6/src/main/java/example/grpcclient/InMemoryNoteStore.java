@@ -0,0 +1,31 @@
+package example.grpcclient;
+
+import java.util.Collections;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Notes held only in memory; they are gone when the node stops.
+ */
+public class InMemoryNoteStore implements NoteStore {
+    private final ConcurrentSkipListMap<Long,String> notes = new ConcurrentSkipListMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+
+    @Override
+    public long create(String note) {
+        long id = nextId.getAndIncrement();
+        notes.put(id, note);
+        return id;
+    }
+
+    @Override
+    public boolean delete(long id) {
+        return notes.remove(id) != null;
+    }
+
+    @Override
+    public NavigableMap<Long,String> after(long id) {
+        return Collections.unmodifiableNavigableMap(notes.tailMap(id, false));
+    }
+}
@@ -3,11 +3,15 @@ package example.grpcclient;
 import io.grpc.Server;
 import io.grpc.ServerBuilder;
 import io.grpc.ServerMethodDefinition;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 import java.io.IOException;
 import java.util.concurrent.TimeUnit;
 import service.*;
-import java.util.Stack;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -20,56 +24,81 @@ import buffers.RequestProtos.Request.RequestType;
 import buffers.ResponseProtos.Response;
 
 
-// Implement the joke service. It has two sevices getJokes and setJoke
+// Implement the joke service. It has three sevices getJoke, streamJokes and setJoke
 class JokeImpl extends JokeGrpc.JokeImplBase {
-    
-    // having a global set of jokes
-    Stack<String> jokes = new Stack<String>();
+
+    static final String OUT_OF_JOKES = "I am out of jokes...";
+    // one response holds at most this many; larger numbers are what streamJokes is for
+    static final int MAX_JOKES = 1000;
+    static final int MAX_STREAMED = 100_000;
+
+    // having a global set of jokes, shared by all calls without locking
+    final JokePool jokes = new JokePool();
     
     public JokeImpl(){
         super();
         // copying some dad jokes
-        jokes.add("How do you get a squirrel to like you? Act like a nut.");
-        jokes.add("I don't trust stairs. They're always up to something.");
-        jokes.add("What do you call someone with no body and no nose? Nobody knows.");
-        jokes.add("Did you hear the rumor about butter? Well, I'm not going to spread it!");
-        
+        jokes.addAll(List.of(
+                "How do you get a squirrel to like you? Act like a nut.",
+                "I don't trust stairs. They're always up to something.",
+                "What do you call someone with no body and no nose? Nobody knows.",
+                "Did you hear the rumor about butter? Well, I'm not going to spread it!"));
     }
     
-    // We are reading how many jokes the clients wants and put them in a list to send back to client
+    // We are reading how many jokes the clients wants and put them in a list to send back to client.
+    // Jokes are not used up, so the same joke can be told to many clients.
     @Override
     public void getJoke(JokeReq req, StreamObserver<JokeRes> responseObserver) {
-        System.out.println("Received from client: " + req.getNumber());
         JokeRes.Builder response = JokeRes.newBuilder();
-        for (int i=0; i < req.getNumber(); i++){
-            if(!jokes.empty()) {
-                response.addJoke(jokes.pop()); // yes, I take the joke out when it was used already, should probably be done differently since this way a joke cannot be told twice even to different clients
-            }
-            else {
-                response.addJoke("I am out of jokes..."); // this is more of a hack, better would be to either check the number at the beginnig and say right away if you do not have enough. Or send an error code or similar as well. 
-                break;
-            }
+        jokes.pick(Math.min(req.getNumber(), MAX_JOKES), req.getRandom(), response::addJoke);
+        if (jokes.size() == 0 && req.getNumber() > 0) {
+            response.addJoke(OUT_OF_JOKES);
         }
-        JokeRes resp = response.build();
-        responseObserver.onNext(resp);
+        responseObserver.onNext(response.build());
         responseObserver.onCompleted();
     }
+
+    // Same as getJoke but one joke per message, sent only as fast as the client reads them
+    @Override
+    public void streamJokes(JokeReq req, StreamObserver<JokeItem> responseObserver) {
+        ServerCallStreamObserver<JokeItem> call = (ServerCallStreamObserver<JokeItem>) responseObserver;
+        if (jokes.size() == 0 && req.getNumber() > 0) {
+            call.onNext(JokeItem.newBuilder().setJoke(OUT_OF_JOKES).build());
+            call.onCompleted();
+            return;
+        }
+        AtomicInteger left = new AtomicInteger(Math.max(0, Math.min(req.getNumber(), MAX_STREAMED)));
+        AtomicBoolean done = new AtomicBoolean();
+        call.setOnCancelHandler(() -> done.set(true));
+
+        // runs on the call's serialized executor, both here and from the ready handler
+        Consumer<String> send = joke -> call.onNext(JokeItem.newBuilder().setJoke(joke).build());
+        Runnable drain = () -> {
+            while (!done.get() && call.isReady() && left.get() > 0) {
+                left.decrementAndGet();
+                jokes.pick(1, req.getRandom(), send);
+            }
+            if (left.get() == 0 && done.compareAndSet(false, true)) {
+                call.onCompleted();
+            }
+        };
+        call.setOnReadyHandler(drain);
+        drain.run();
+    }
     
-    // We take the joke the user wants to set and put it in our set of jokes
+    // We take the jokes the user wants to set and put them in our set of jokes, all in one go
     @Override
     public void setJoke(JokeSetReq req, StreamObserver<JokeSetRes> responseObserver) {
-        
-        System.out.println("Received from client: " + req.getJoke());
-        JokeSetRes.Builder response = JokeSetRes.newBuilder();
-        if (req.getJoke().isEmpty()) { // we do not want to add empty jokes
-            response.setOk(false);
-        } else {
-            jokes.add(req.getJoke());
-            response.setOk(true);
-        }
+        List<String> batch = new ArrayList<>(req.getMoreCount() + 1);
+        batch.add(req.getJoke());
+        batch.addAll(req.getMoreList());
+        int added = jokes.addAll(batch); // we do not want to add empty jokes
 
-        JokeSetRes resp = response.build();
-        responseObserver.onNext(resp);
+        JokeSetRes.Builder response = JokeSetRes.newBuilder().setOk(added > 0);
+        if (batch.size() > 1) {
+            response.setMessage("Added " + added + " of " + batch.size() + " jokes");
+        }
+        responseObserver.onNext(response.build());
         responseObserver.onCompleted();
     }
-}
\ No newline at end of file
+}
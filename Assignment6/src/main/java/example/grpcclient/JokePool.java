@@ -0,0 +1,73 @@
+package example.grpcclient;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Append-only set of jokes that any number of threads can read without locking. Telling a joke
+ * does not remove it.
+ *
+ * Writers are serialized and publish through the volatile {@code count}: they store the jokes
+ * (growing into a new array if needed) before raising it, so a reader that reads {@code count}
+ * first and then {@code jokes} always sees at least that many filled slots. Round-robin picks
+ * reserve their whole range with one atomic add, so concurrent callers get different jokes.
+ */
+class JokePool {
+
+    private volatile String[] jokes = new String[16];
+    private volatile int count;
+    private final AtomicLong cursor = new AtomicLong();
+
+    /** Adds the non-empty jokes as one batch and returns how many were added. */
+    synchronized int addAll(Collection<String> batch) {
+        String[] arr = jokes;
+        int n = count;
+        if (n + batch.size() > arr.length) {
+            arr = Arrays.copyOf(arr, Math.max(arr.length * 2, n + batch.size()));
+        }
+        int added = 0;
+        for (String joke : batch) {
+            if (joke != null && !joke.isEmpty()) {
+                arr[n + added++] = joke;
+            }
+        }
+        jokes = arr;
+        count = n + added;
+        return added;
+    }
+
+    boolean add(String joke) {
+        return addAll(List.of(joke)) == 1;
+    }
+
+    int size() {
+        return count;
+    }
+
+    /**
+     * Hands {@code n} jokes to {@code out}, the next ones in turn or random picks. Does nothing
+     * if there are no jokes.
+     */
+    void pick(int n, boolean random, Consumer<String> out) {
+        int size = count;
+        String[] arr = jokes;
+        if (size == 0 || n <= 0) {
+            return;
+        }
+        if (random) {
+            ThreadLocalRandom rnd = ThreadLocalRandom.current();
+            for (int i = 0; i < n; i++) {
+                out.accept(arr[rnd.nextInt(size)]);
+            }
+        } else {
+            long first = cursor.getAndAdd(n);
+            for (int i = 0; i < n; i++) {
+                out.accept(arr[(int) Long.remainderUnsigned(first + i, size)]);
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package example.grpcclient;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histogram in microseconds with log-linear buckets: every power of two is split into 8
+ * equal buckets, so any recorded value is known to within 12.5% whatever its size. Recording is
+ * lock-free and may happen from any number of threads.
+ */
+class LatencyHistogram {
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB = 1 << SUB_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(buckets());
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+
+    void record(long nanos) {
+        long us = Math.max(0, nanos / 1000);
+        counts.incrementAndGet(index(us));
+        total.incrementAndGet();
+        sum.addAndGet(us);
+        max.accumulateAndGet(us, Math::max);
+    }
+
+    long count() {
+        return total.get();
+    }
+
+    long maxMicros() {
+        return max.get();
+    }
+
+    /** All recorded values added up, in microseconds. */
+    long totalMicros() {
+        return sum.get();
+    }
+
+    /** Values recorded in the bucket with this index. */
+    long bucketCount(int index) {
+        return counts.get(index);
+    }
+
+    /**
+     * Values below us. Exact when us starts a bucket, as every power of two does; otherwise the
+     * bucket holding us is left out.
+     */
+    long countBelow(long us) {
+        long n = 0;
+        for (int i = 0, end = index(us); i < end; i++) {
+            n += counts.get(i);
+        }
+        return n;
+    }
+
+    /** Upper bound in microseconds of the bucket holding the p-th fraction of values. */
+    long percentile(double p) {
+        long n = total.get();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(n * p));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(upper(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /** One line of percentiles. */
+    String summary() {
+        return String.format("n=%d p50=%s p90=%s p99=%s p99.9=%s max=%s", count(),
+                format(percentile(0.5)), format(percentile(0.9)), format(percentile(0.99)),
+                format(percentile(0.999)), format(maxMicros()));
+    }
+
+    /** The non-empty buckets with their share of values and a bar. */
+    void print(PrintStream out) {
+        long n = total.get();
+        if (n == 0) {
+            out.println("  (no values)");
+            return;
+        }
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            long c = counts.get(i);
+            if (c == 0) {
+                continue;
+            }
+            seen += c;
+            int bar = (int) Math.round(40.0 * c / n);
+            out.printf("  %9s - %-9s %8d %6.2f%% %7.3f%% %s%n", format(lower(i)), format(upper(i)), c,
+                    100.0 * c / n, 100.0 * seen / n, "#".repeat(bar));
+        }
+    }
+
+    /** Number of buckets; indexes run from 0 to buckets() - 1. */
+    static int buckets() {
+        return (64 - SUB_BITS + 1) * SUB;
+    }
+
+    static int index(long us) {
+        if (us < SUB) {
+            return (int) us;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(us) - SUB_BITS;
+        return SUB + shift * SUB + (int) ((us >>> shift) & (SUB - 1));
+    }
+
+    static long lower(int index) {
+        if (index < SUB) {
+            return index;
+        }
+        int shift = (index - SUB) / SUB;
+        return (long) (SUB + (index - SUB) % SUB) << shift;
+    }
+
+    static long upper(int index) {
+        if (index < SUB) {
+            return index;
+        }
+        int shift = (index - SUB) / SUB;
+        return ((long) (SUB + (index - SUB) % SUB + 1) << shift) - 1;
+    }
+
+    private static String format(long us) {
+        return us < 1000 ? us + "us" : us < 1_000_000 ? String.format("%.2fms", us / 1e3) : String.format("%.2fs", us / 1e6);
+    }
+}
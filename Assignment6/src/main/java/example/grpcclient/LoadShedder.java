@@ -0,0 +1,89 @@
+package example.grpcclient;
+
+import io.grpc.ForwardingServerCallListener.SimpleForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caps how many calls a service has in flight. A call over the cap is not queued: it fails at
+ * once with RESOURCE_EXHAUSTED, before the service sees it, so an overloaded node answers quickly
+ * and the client can back off or go to another node. A streaming call holds its slot until it
+ * completes or is cancelled.
+ */
+class LoadShedder implements ServerInterceptor {
+
+    private final int limit;
+    private final Semaphore permits;
+    private final LongAdder shed = new LongAdder();
+
+    LoadShedder(int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be at least 1");
+        }
+        this.limit = limit;
+        this.permits = new Semaphore(limit);
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        if (!permits.tryAcquire()) {
+            shed.increment();
+            call.close(Status.RESOURCE_EXHAUSTED.withDescription(
+                    "Over " + limit + " calls in flight to " + call.getMethodDescriptor().getServiceName()),
+                    new Metadata());
+            return new ServerCall.Listener<ReqT>() { };
+        }
+        AtomicBoolean released = new AtomicBoolean();
+        ServerCall.Listener<ReqT> listener;
+        try {
+            listener = next.startCall(call, headers);
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+        return new SimpleForwardingServerCallListener<ReqT>(listener) {
+            @Override
+            public void onComplete() {
+                try {
+                    super.onComplete();
+                } finally {
+                    release();
+                }
+            }
+
+            @Override
+            public void onCancel() {
+                try {
+                    super.onCancel();
+                } finally {
+                    release();
+                }
+            }
+
+            private void release() {
+                // a call ends with either onComplete or onCancel, but never give a slot back twice
+                if (released.compareAndSet(false, true)) {
+                    permits.release();
+                }
+            }
+        };
+    }
+
+    /** Calls in flight right now. */
+    int inFlight() {
+        return limit - permits.availablePermits();
+    }
+
+    /** Calls turned away so far. */
+    long shed() {
+        return shed.sum();
+    }
+}
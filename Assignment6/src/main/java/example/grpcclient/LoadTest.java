@@ -0,0 +1,151 @@
+package example.grpcclient;
+
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Status;
+
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Drives a Node at a fixed rate and reports the latency of every method as a histogram.
+ *
+ * Calls are issued on a fixed schedule whether or not earlier ones have answered (open loop), and
+ * each call's latency is measured from when it was due, not from when it was sent. Time spent
+ * waiting for one of the {@code maxInFlight} slots therefore counts, and a slow server cannot
+ * hide its slowness by slowing the load down.
+ *
+ * Usage: LoadTest <host> <port> [qps=500] [seconds=10] [maxInFlight=64] [echo|mixed]
+ */
+public class LoadTest {
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 2) {
+      System.err.println("Usage: <host> <port> [qps] [seconds] [maxInFlight] [echo|mixed]");
+      System.exit(1);
+    }
+    String host = args[0];
+    int port = Integer.parseInt(args[1]);
+    int qps = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+    int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+    int maxInFlight = args.length > 4 ? Integer.parseInt(args[4]) : 64;
+    boolean mixed = args.length > 5 && "mixed".equals(args[5]);
+
+    ManagedChannel channel = ManagedChannelBuilder.forAddress(host, port).usePlaintext().build();
+    try {
+      AsyncClient client = new AsyncClient(channel, maxInFlight);
+      client.createNote("load test note").get(); // something for searchNotes to find
+
+      Map<String,Supplier<CompletableFuture<?>>> calls = workload(client, mixed);
+      System.out.printf("Driving %s:%d at %d calls/s for %d s (%s, at most %d in flight)%n",
+              host, port, qps, seconds, String.join(", ", calls.keySet()), maxInFlight);
+      LoadTest test = new LoadTest(client, calls);
+      test.run(qps, seconds);
+      test.print(System.out);
+    } finally {
+      channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+    }
+  }
+
+  /** The calls to rotate through: parrot alone, or parrot, getJoke, listPasswords and searchNotes. */
+  static Map<String,Supplier<CompletableFuture<?>>> workload(AsyncClient client, boolean mixed) {
+    Map<String,Supplier<CompletableFuture<?>>> calls = new LinkedHashMap<>();
+    calls.put("parrot", () -> client.parrot("load"));
+    if (mixed) {
+      calls.put("getJoke", () -> client.jokes(1));
+      calls.put("listPasswords", client::listPasswords);
+      calls.put("searchNotes", () -> client.searchNotes("load"));
+    }
+    return calls;
+  }
+
+  private final AsyncClient client;
+  private final List<Map.Entry<String,Supplier<CompletableFuture<?>>>> calls;
+  private final Map<String,LatencyHistogram> latency = new ConcurrentHashMap<>();
+  private final LatencyHistogram overall = new LatencyHistogram();
+  private final Map<String,LongAdder> errors = new ConcurrentHashMap<>();
+  private long total;
+  private double sent;
+  private double elapsed;
+
+  LoadTest(AsyncClient client, Map<String,Supplier<CompletableFuture<?>>> calls) {
+    this.client = client;
+    this.calls = List.copyOf(calls.entrySet());
+    for (String name : calls.keySet()) {
+      latency.put(name, new LatencyHistogram());
+    }
+  }
+
+  /** Sends qps calls a second for the given time, then waits up to 10 s for the last answers. */
+  void run(int qps, int seconds) throws InterruptedException {
+    long period = TimeUnit.SECONDS.toNanos(1) / qps;
+    total = (long) qps * seconds;
+    long start = System.nanoTime();
+    for (long i = 0; i < total; i++) {
+      long due = start + i * period;
+      long wait = due - System.nanoTime();
+      if (wait > 0) {
+        LockSupport.parkNanos(wait);
+      }
+      // calls that are already late go out straight away, each still timed from when it was due
+      Map.Entry<String,Supplier<CompletableFuture<?>>> call = calls.get((int) (i % calls.size()));
+      call.getValue().get().whenComplete((v, e) -> done(call.getKey(), due, e));
+    }
+    sent = (System.nanoTime() - start) / 1e9;
+
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while ((client.inFlight() > 0 || client.queued() > 0) && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    elapsed = (System.nanoTime() - start) / 1e9;
+  }
+
+  void print(PrintStream out) {
+    out.printf("%nSent %d calls in %.2f s (%.0f/s offered), %d answered in %.2f s (%.0f/s)%n",
+            total, sent, total / sent, overall.count(), elapsed, answeredPerSecond());
+    errors.forEach((code, n) -> out.printf("  %d failed with %s%n", n.sum(), code));
+    for (Map.Entry<String,Supplier<CompletableFuture<?>>> call : calls) {
+      out.printf("%-14s %s%n", call.getKey(), latency.get(call.getKey()).summary());
+    }
+    out.printf("%-14s %s%n", "all", overall.summary());
+    out.println("\nLatency histogram (all calls):");
+    overall.print(out);
+  }
+
+  /** Latency of every answered call, failed ones included. */
+  LatencyHistogram overall() {
+    return overall;
+  }
+
+  double answeredPerSecond() {
+    return overall.count() / elapsed;
+  }
+
+  /** Calls that failed with the given status code. */
+  long failed(Status.Code code) {
+    LongAdder n = errors.get(code.toString());
+    return n == null ? 0 : n.sum();
+  }
+
+  /** Calls that failed, whatever the reason. */
+  long failed() {
+    return errors.values().stream().mapToLong(LongAdder::sum).sum();
+  }
+
+  private void done(String name, long due, Throwable error) {
+    long nanos = System.nanoTime() - due;
+    latency.get(name).record(nanos);
+    overall.record(nanos);
+    if (error != null) {
+      errors.computeIfAbsent(Status.fromThrowable(error).getCode().toString(), k -> new LongAdder()).increment();
+    }
+  }
+}
@@ -0,0 +1,427 @@
+package example.grpcclient;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32C;
+
+/**
+ * Notes kept in memory and made durable with a write-ahead log in a directory.
+ *
+ * A create or delete is applied to the in-memory index and queued for one writer thread, which
+ * appends everything that has queued up with a single write and a single fsync (group commit).
+ * With {@code syncCommit} the call returns once its record is on disk. Without it the call returns
+ * straight away and the writer fsyncs every {@code flushIntervalMs}, so a crash loses at most that
+ * window of changes.
+ *
+ * On startup the store loads {@value #SNAPSHOT} and replays {@value #LOG} on top of it, dropping a
+ * torn record at the end of the log; a snapshot that does not read back whole fails startup. Once
+ * the log passes {@code compactBytes} the writer thread saves a snapshot of the live notes and
+ * empties the log, which reclaims the space of deleted notes.
+ */
+public class LogNoteStore implements NoteStore {
+    static final String LOG      = "notes.log";
+    static final String SNAPSHOT = "notes.snapshot";
+
+    static final long DEFAULT_FLUSH_INTERVAL_MS = 10;
+    static final long DEFAULT_COMPACT_BYTES     = 16L << 20;
+
+    private static final byte PUT    = 1;
+    private static final byte DELETE = 2;
+    private static final int SNAPSHOT_MAGIC = 0x4E4F5445; // "NOTE"
+    private static final int RECORD_HEADER  = 8;          // length + CRC
+    private static final int MAX_RECORD     = 64 << 20;
+
+    /** One encoded record waiting for the writer thread. */
+    private static final class Pending {
+        final byte[] record;
+        final CompletableFuture<Void> synced; // null when the caller does not wait for the fsync
+
+        Pending(byte[] record, CompletableFuture<Void> synced) {
+            this.record = record;
+            this.synced = synced;
+        }
+    }
+
+    private static final Pending STOP = new Pending(new byte[0], null);
+
+    private final ConcurrentSkipListMap<Long,String> notes = new ConcurrentSkipListMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+
+    private final Path dir;
+    private final long flushIntervalMs;
+    private final boolean syncCommit;
+    private final long compactBytes;
+
+    private final FileChannel log;
+    private final LinkedBlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    // an index change and the queueing of its record happen together, so the log order matches
+    // the order the changes became visible in (a delete can never be queued before its PUT)
+    private final Object mutations = new Object();
+    // appends share the read side; close takes the write side so nothing is queued after STOP
+    private final ReentrantReadWriteLock closing = new ReentrantReadWriteLock();
+    private final Thread writer;
+    private volatile boolean closed;
+    private volatile IOException failure;
+
+    // only touched by the writer thread once it has started
+    private ByteBuffer batchBuffer = ByteBuffer.allocateDirect(64 << 10);
+    private volatile long logBytes;
+    private final AtomicLong compactions = new AtomicLong();
+
+    public LogNoteStore(Path dir) throws IOException {
+        this(dir, DEFAULT_FLUSH_INTERVAL_MS, false, DEFAULT_COMPACT_BYTES);
+    }
+
+    /**
+     * @param flushIntervalMs how long the writer lets records gather before an fsync when callers do not wait
+     * @param syncCommit      whether create/delete wait until their record has been fsynced
+     * @param compactBytes    log size that triggers a snapshot and log truncation
+     */
+    public LogNoteStore(Path dir, long flushIntervalMs, boolean syncCommit, long compactBytes) throws IOException {
+        this.dir = dir;
+        this.flushIntervalMs = flushIntervalMs;
+        this.syncCommit = syncCommit;
+        this.compactBytes = compactBytes;
+
+        Files.createDirectories(dir);
+        recover();
+        log = FileChannel.open(dir.resolve(LOG), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        long valid = logBytes;
+        log.truncate(valid); // drop a torn tail found during recovery
+        log.position(valid);
+
+        writer = new Thread(this::writeLoop, "note-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public long create(String note) throws IOException {
+        long id = nextId.getAndIncrement();
+        byte[] record = encode(PUT, id, note);
+        CompletableFuture<Void> synced;
+        synchronized (mutations) {
+            // index first: anything in the log is then guaranteed to be in a later snapshot
+            notes.put(id, note);
+            try {
+                synced = enqueue(record);
+            } catch (IOException e) {
+                notes.remove(id);
+                throw e;
+            }
+        }
+        try {
+            awaitSync(synced);
+        } catch (IOException e) {
+            synchronized (mutations) {
+                notes.remove(id);
+            }
+            throw e;
+        }
+        return id;
+    }
+
+    @Override
+    public boolean delete(long id) throws IOException {
+        String old;
+        CompletableFuture<Void> synced;
+        synchronized (mutations) {
+            old = notes.remove(id);
+            if (old == null) {
+                return false;
+            }
+            try {
+                synced = enqueue(encode(DELETE, id, null));
+            } catch (IOException e) {
+                notes.put(id, old);
+                throw e;
+            }
+        }
+        try {
+            awaitSync(synced);
+        } catch (IOException e) {
+            synchronized (mutations) {
+                notes.putIfAbsent(id, old);
+            }
+            throw e;
+        }
+        return true;
+    }
+
+    @Override
+    public NavigableMap<Long,String> after(long id) {
+        return Collections.unmodifiableNavigableMap(notes.tailMap(id, false));
+    }
+
+    /** Writes any queued records, stops the writer thread and closes the log. */
+    @Override
+    public void close() throws IOException {
+        closing.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            queue.add(STOP);
+        } finally {
+            closing.writeLock().unlock();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.close();
+        if (failure != null) {
+            throw new IOException("Note log failed", failure);
+        }
+    }
+
+    long logBytes() {
+        return logBytes;
+    }
+
+    long compactions() {
+        return compactions.get();
+    }
+
+    /** Queues a record for the writer; the returned future is null unless callers wait for the fsync. */
+    private CompletableFuture<Void> enqueue(byte[] record) throws IOException {
+        CompletableFuture<Void> synced = syncCommit ? new CompletableFuture<>() : null;
+        closing.readLock().lock();
+        try {
+            if (failure != null) {
+                throw new IOException("Note log is unavailable", failure);
+            }
+            if (closed) {
+                throw new IOException("Note store is closed");
+            }
+            queue.add(new Pending(record, synced));
+        } finally {
+            closing.readLock().unlock();
+        }
+        return synced;
+    }
+
+    private static void awaitSync(CompletableFuture<Void> synced) throws IOException {
+        if (synced != null) {
+            // not interruptible: once queued the record will be written, so the index must keep it
+            try {
+                synced.join();
+            } catch (CompletionException e) {
+                throw new IOException("Could not write note log", e.getCause());
+            }
+        }
+    }
+
+    // ---- writer thread ----
+
+    private void writeLoop() {
+        List<Pending> batch = new ArrayList<>();
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                batch.add(queue.take());
+                if (!syncCommit && flushIntervalMs > 0) {
+                    Thread.sleep(flushIntervalMs); // let a batch build up behind the first record
+                }
+            } catch (InterruptedException e) {
+                // only close() stops the writer, and it does so with STOP
+            }
+            queue.drainTo(batch);
+            stopping = batch.remove(STOP);
+            writeBatch(batch);
+            batch.clear();
+        }
+    }
+
+    private void writeBatch(List<Pending> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            if (failure != null) {
+                throw failure;
+            }
+            int size = 0;
+            for (Pending p : batch) {
+                size += p.record.length;
+            }
+            if (batchBuffer.capacity() < size) {
+                batchBuffer = ByteBuffer.allocateDirect(Integer.highestOneBit(size) << 1);
+            }
+            batchBuffer.clear();
+            for (Pending p : batch) {
+                batchBuffer.put(p.record);
+            }
+            batchBuffer.flip();
+            while (batchBuffer.hasRemaining()) {
+                log.write(batchBuffer);
+            }
+            log.force(false);
+            logBytes += size;
+            for (Pending p : batch) {
+                if (p.synced != null) {
+                    p.synced.complete(null);
+                }
+            }
+            if (logBytes >= compactBytes) {
+                compact();
+            }
+        } catch (IOException e) {
+            if (failure == null) {
+                failure = e;
+            }
+            for (Pending p : batch) {
+                if (p.synced != null) {
+                    p.synced.completeExceptionally(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Saves every live note to a new snapshot and empties the log. Runs on the writer thread, so
+     * no record is appended meanwhile; records still queued are idempotent on replay.
+     */
+    private void compact() throws IOException {
+        Path tmp = dir.resolve(SNAPSHOT + ".tmp");
+        try (FileChannel file = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(file), 64 << 10));
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(nextId.get());
+            for (Map.Entry<Long,String> e : notes.entrySet()) {
+                out.write(encode(PUT, e.getKey(), e.getValue()));
+            }
+            out.flush();
+            file.force(true);
+        }
+        Files.move(tmp, dir.resolve(SNAPSHOT),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        // a crash before this point replays the old log on top of the new snapshot, which is harmless
+        log.truncate(0);
+        log.position(0);
+        log.force(true);
+        logBytes = 0;
+        compactions.incrementAndGet();
+    }
+
+    // ---- records and recovery ----
+
+    /** [length][CRC32C of payload][type][id][UTF-8 note], lengths and numbers big-endian. */
+    private static byte[] encode(byte type, long id, String note) {
+        byte[] text = note == null ? new byte[0] : note.getBytes(StandardCharsets.UTF_8);
+        int payload = 1 + Long.BYTES + text.length;
+        ByteBuffer b = ByteBuffer.allocate(RECORD_HEADER + payload);
+        b.putInt(payload).putInt(0).put(type).putLong(id).put(text);
+        CRC32C crc = new CRC32C();
+        crc.update(b.array(), RECORD_HEADER, payload);
+        b.putInt(Integer.BYTES, (int) crc.getValue());
+        return b.array();
+    }
+
+    private void recover() throws IOException {
+        long next = 1;
+        Path snapshot = dir.resolve(SNAPSHOT);
+        if (Files.exists(snapshot)) {
+            try (DataInputStream in = open(snapshot)) {
+                if (in.readInt() != SNAPSHOT_MAGIC) {
+                    throw new IOException("Not a note snapshot: " + snapshot);
+                }
+                next = in.readLong();
+                // unlike the log, a snapshot is only ever renamed into place whole: a record that
+                // does not check out is corruption, and carrying on would drop notes at the next
+                // compaction
+                long valid = Integer.BYTES + Long.BYTES + replay(in);
+                long size = Files.size(snapshot);
+                if (valid != size) {
+                    throw new IOException("Corrupt note snapshot " + snapshot + ": bad record at byte "
+                            + valid + " of " + size);
+                }
+            }
+        }
+        Path logFile = dir.resolve(LOG);
+        if (Files.exists(logFile)) {
+            try (DataInputStream in = open(logFile)) {
+                logBytes = replay(in);
+            }
+        }
+        // the snapshot remembers IDs of notes deleted before it was taken, the records the rest
+        nextId.accumulateAndGet(next, Math::max);
+    }
+
+    private static DataInputStream open(Path file) throws IOException {
+        InputStream in = Files.newInputStream(file);
+        return new DataInputStream(new BufferedInputStream(in, 64 << 10));
+    }
+
+    /**
+     * Applies records until the end of the stream or the first torn or corrupt one, and returns
+     * how many bytes of whole records were read.
+     */
+    private long replay(DataInputStream in) throws IOException {
+        long good = 0;
+        CRC32C crc = new CRC32C();
+        while (true) {
+            int length;
+            int expected;
+            byte[] payload;
+            try {
+                length = in.readInt();
+                if (length < 1 + Long.BYTES || length > MAX_RECORD) {
+                    return good;
+                }
+                expected = in.readInt();
+                payload = new byte[length];
+                in.readFully(payload);
+            } catch (EOFException e) {
+                return good;
+            }
+            crc.reset();
+            crc.update(payload);
+            if ((int) crc.getValue() != expected) {
+                return good;
+            }
+            apply(ByteBuffer.wrap(payload));
+            good += RECORD_HEADER + length;
+        }
+    }
+
+    private void apply(ByteBuffer payload) {
+        byte type = payload.get();
+        long id = payload.getLong();
+        if (type == PUT) {
+            notes.put(id, StandardCharsets.UTF_8.decode(payload).toString());
+            nextId.accumulateAndGet(id + 1, Math::max);
+        } else if (type == DELETE) {
+            notes.remove(id);
+            nextId.accumulateAndGet(id + 1, Math::max);
+        }
+    }
+}
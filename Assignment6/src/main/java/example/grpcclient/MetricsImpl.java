@@ -0,0 +1,20 @@
+package example.grpcclient;
+
+import io.grpc.stub.StreamObserver;
+import service.*;
+
+// Answers with whatever the node's ServerMetrics has recorded so far
+class MetricsImpl extends MetricsGrpc.MetricsImplBase {
+
+    private final ServerMetrics metrics;
+
+    MetricsImpl(ServerMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void getMetrics(MetricsReq req, StreamObserver<MetricsRes> responseObserver) {
+        responseObserver.onNext(metrics.snapshot(req.getPrefix()));
+        responseObserver.onCompleted();
+    }
+}
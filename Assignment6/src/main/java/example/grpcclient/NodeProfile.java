@@ -0,0 +1,205 @@
+package example.grpcclient;
+
+import io.grpc.BindableService;
+import io.grpc.ServerInterceptors;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How a Node's gRPC server is tuned: which executor runs the service methods, how many calls each
+ * service may have in flight, and the HTTP/2 flow-control and keepalive settings. A profile is a
+ * properties file; the built-in ones (default, throughput, virtual, direct) live under
+ * {@code src/main/resources/profiles}. Keys that are left out keep gRPC's own defaults.
+ *
+ * <pre>
+ * executor=cached|forkjoin|virtual|direct
+ * executor.threads=8                  # forkjoin only, 0 = one per core
+ * limit.default=256                   # calls in flight per service, 0 = no limit
+ * limit.services.Weather=64           # per service, by its full proto name
+ * flowControlWindow=1048576           # bytes
+ * maxConcurrentCallsPerConnection=1000
+ * keepAliveTime.ms=60000
+ * keepAliveTimeout.ms=20000
+ * permitKeepAliveTime.ms=10000
+ * permitKeepAliveWithoutCalls=true
+ * maxConnectionIdle.ms=300000
+ * </pre>
+ */
+class NodeProfile {
+
+  enum ExecutorKind { CACHED, FORKJOIN, VIRTUAL, DIRECT }
+
+  static final String DEFAULT = "default";
+
+  final String name;
+  final ExecutorKind executor;
+  final int threads;
+  final int defaultLimit;
+  private final Map<String,Integer> limits;
+  final int flowControlWindow;
+  final int maxConcurrentCallsPerConnection;
+  final long keepAliveTimeMs;
+  final long keepAliveTimeoutMs;
+  final long permitKeepAliveTimeMs;
+  final boolean permitKeepAliveWithoutCalls;
+  final long maxConnectionIdleMs;
+
+  private NodeProfile(String name, Properties p) {
+    this.name = name;
+    String kind = p.getProperty("executor", "cached").trim();
+    try {
+      executor = ExecutorKind.valueOf(kind.toUpperCase());
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException(name + ": unknown executor '" + kind + "'");
+    }
+    threads = intValue(p, "executor.threads");
+    defaultLimit = intValue(p, "limit.default");
+    limits = new HashMap<>();
+    for (String key : p.stringPropertyNames()) {
+      if (key.startsWith("limit.") && !key.equals("limit.default")) {
+        limits.put(key.substring("limit.".length()), intValue(p, key));
+      }
+    }
+    flowControlWindow = intValue(p, "flowControlWindow");
+    maxConcurrentCallsPerConnection = intValue(p, "maxConcurrentCallsPerConnection");
+    keepAliveTimeMs = longValue(p, "keepAliveTime.ms");
+    keepAliveTimeoutMs = longValue(p, "keepAliveTimeout.ms");
+    permitKeepAliveTimeMs = longValue(p, "permitKeepAliveTime.ms");
+    permitKeepAliveWithoutCalls = Boolean.parseBoolean(p.getProperty("permitKeepAliveWithoutCalls", "false").trim());
+    maxConnectionIdleMs = longValue(p, "maxConnectionIdle.ms");
+  }
+
+  /**
+   * Loads a profile from a properties file, or failing that the built-in profile of that name.
+   * An empty name gives the default profile.
+   */
+  static NodeProfile load(String nameOrPath) throws IOException {
+    if (nameOrPath == null || nameOrPath.isEmpty()) {
+      nameOrPath = DEFAULT;
+    }
+    Properties p = new Properties();
+    Path file = Paths.get(nameOrPath);
+    if (Files.isRegularFile(file)) {
+      try (Reader in = Files.newBufferedReader(file)) {
+        p.load(in);
+      }
+      String fileName = file.getFileName().toString();
+      return new NodeProfile(fileName.replaceFirst("\\.properties$", ""), p);
+    }
+    try (InputStream in = NodeProfile.class.getResourceAsStream("/profiles/" + nameOrPath + ".properties")) {
+      if (in == null) {
+        throw new IllegalArgumentException("No profile file or built-in profile called '" + nameOrPath + "'");
+      }
+      p.load(in);
+    }
+    return new NodeProfile(nameOrPath, p);
+  }
+
+  /** A profile from properties already in hand, e.g. built by a test. */
+  static NodeProfile of(String name, Properties p) {
+    return new NodeProfile(name, p);
+  }
+
+  /** Calls the service may have in flight at once, 0 for no limit. */
+  int limitFor(String service) {
+    return limits.getOrDefault(service, defaultLimit);
+  }
+
+  /**
+   * A new executor for the service methods, or null when gRPC's own shared pool (cached) or the
+   * transport threads (direct) run them. The caller owns it and shuts it down with the server.
+   */
+  ExecutorService newExecutor() {
+    switch (executor) {
+      case FORKJOIN:
+        int parallelism = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        // async mode: tasks are run in the order they were submitted, like the default pool
+        return new ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+      case VIRTUAL:
+        return Executors.newVirtualThreadPerTaskExecutor();
+      default:
+        return null;
+    }
+  }
+
+  /** Applies the executor and the transport settings to the builder. */
+  NettyServerBuilder configure(NettyServerBuilder builder, ExecutorService pool) {
+    if (executor == ExecutorKind.DIRECT) {
+      builder.directExecutor();
+    } else if (pool != null) {
+      builder.executor(pool);
+    }
+    if (flowControlWindow > 0) {
+      builder.flowControlWindow(flowControlWindow);
+    }
+    if (maxConcurrentCallsPerConnection > 0) {
+      builder.maxConcurrentCallsPerConnection(maxConcurrentCallsPerConnection);
+    }
+    if (keepAliveTimeMs > 0) {
+      builder.keepAliveTime(keepAliveTimeMs, TimeUnit.MILLISECONDS);
+    }
+    if (keepAliveTimeoutMs > 0) {
+      builder.keepAliveTimeout(keepAliveTimeoutMs, TimeUnit.MILLISECONDS);
+    }
+    if (permitKeepAliveTimeMs > 0) {
+      builder.permitKeepAliveTime(permitKeepAliveTimeMs, TimeUnit.MILLISECONDS);
+    }
+    builder.permitKeepAliveWithoutCalls(permitKeepAliveWithoutCalls);
+    if (maxConnectionIdleMs > 0) {
+      builder.maxConnectionIdle(maxConnectionIdleMs, TimeUnit.MILLISECONDS);
+    }
+    return builder;
+  }
+
+  /** The service, behind a LoadShedder if the profile limits it. */
+  ServerServiceDefinition limit(BindableService service) {
+    ServerServiceDefinition definition = service.bindService();
+    int max = limitFor(definition.getServiceDescriptor().getName());
+    return max > 0 ? ServerInterceptors.intercept(definition, new LoadShedder(max)) : definition;
+  }
+
+  @Override
+  public String toString() {
+    return name + " (" + executor.name().toLowerCase()
+        + (executor == ExecutorKind.FORKJOIN && threads > 0 ? " x" + threads : "")
+        + (defaultLimit > 0 ? ", limit " + defaultLimit : "") + ")";
+  }
+
+  private int intValue(Properties p, String key) {
+    long value = longValue(p, key);
+    if (value > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException(name + ": " + key + " is too large");
+    }
+    return (int) value;
+  }
+
+  private long longValue(Properties p, String key) {
+    String value = p.getProperty(key);
+    if (value == null || value.trim().isEmpty()) {
+      return 0;
+    }
+    try {
+      long n = Long.parseLong(value.trim());
+      if (n < 0) {
+        throw new IllegalArgumentException(name + ": " + key + " must not be negative");
+      }
+      return n;
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(name + ": " + key + " is not a number: '" + value + "'");
+    }
+  }
+}
@@ -0,0 +1,218 @@
+package example.grpcclient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Inverted index over note text: each lower-cased word maps to the sorted IDs of the notes that
+ * contain it, kept in primitive arrays. Notes are ranked by TF-IDF, so words that are rare across
+ * the store count for more than common ones.
+ *
+ * There is no index-wide lock. Adding and removing a note both run inside {@code noteTerms}' per-key
+ * compute for that note's ID, so changes to one note are applied one at a time and never interleave.
+ * Each word's postings are updated inside the map's per-key compute, and a search copies each posting
+ * list it needs under that list's own monitor.
+ *
+ * A note removed before it was added leaves a tombstone, so the late add is dropped instead of
+ * indexing a note that no longer exists. IDs are never reused, so the add is the only thing that
+ * ever looks at the tombstone, and it clears it.
+ */
+class NoteIndex {
+
+    /** A note ID and how well it matched. */
+    static final class Hit {
+        final long id;
+        final double score;
+
+        Hit(long id, double score) {
+            this.id = id;
+            this.score = score;
+        }
+    }
+
+    /** Sorted note IDs containing one word, with how often the word occurs in each note. */
+    private static final class Postings {
+        private long[] ids = new long[4];
+        private int[] freqs = new int[4];
+        private int size;
+
+        synchronized void add(long id, int freq) {
+            int at = size;
+            // IDs mostly arrive in increasing order, so this is usually an append
+            if (size > 0 && ids[size - 1] >= id) {
+                at = Arrays.binarySearch(ids, 0, size, id);
+                if (at >= 0) {
+                    freqs[at] = freq;
+                    return;
+                }
+                at = -at - 1;
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                freqs = Arrays.copyOf(freqs, size * 2);
+            }
+            System.arraycopy(ids, at, ids, at + 1, size - at);
+            System.arraycopy(freqs, at, freqs, at + 1, size - at);
+            ids[at] = id;
+            freqs[at] = freq;
+            size++;
+        }
+
+        synchronized void remove(long id) {
+            int at = Arrays.binarySearch(ids, 0, size, id);
+            if (at >= 0) {
+                System.arraycopy(ids, at + 1, ids, at, size - at - 1);
+                System.arraycopy(freqs, at + 1, freqs, at, size - at - 1);
+                size--;
+            }
+        }
+
+        synchronized boolean isEmpty() {
+            return size == 0;
+        }
+
+        synchronized Postings copy() {
+            Postings p = new Postings();
+            p.ids = Arrays.copyOf(ids, size);
+            p.freqs = Arrays.copyOf(freqs, size);
+            p.size = size;
+            return p;
+        }
+    }
+
+    // stands in noteTerms for a note that was removed before it was added
+    private static final String[] REMOVED = new String[0];
+
+    private final ConcurrentHashMap<String,Postings> terms = new ConcurrentHashMap<>();
+    // words of each indexed note, so a delete knows which postings to touch
+    private final ConcurrentHashMap<Long,String[]> noteTerms = new ConcurrentHashMap<>();
+    // indexed notes, not counting tombstones
+    private final AtomicInteger notes = new AtomicInteger();
+
+    /** Indexes a note; does nothing if the note was already removed. */
+    void add(long id, String text) {
+        Map<String,Integer> freqs = tokenize(text);
+        String[] words = freqs.keySet().toArray(new String[0]);
+        noteTerms.compute(id, (k, previous) -> {
+            if (previous == REMOVED) {
+                return null;
+            }
+            if (previous != null) {
+                unindex(id, previous);
+            } else {
+                notes.incrementAndGet();
+            }
+            freqs.forEach((term, freq) -> terms.compute(term, (t, p) -> {
+                Postings postings = p == null ? new Postings() : p;
+                postings.add(id, freq);
+                return postings;
+            }));
+            return words;
+        });
+    }
+
+    /**
+     * Removes a note that the store had. If it has not been added yet, the add that is still on its way
+     * will be dropped.
+     */
+    void remove(long id) {
+        noteTerms.compute(id, (k, words) -> {
+            if (words == null || words == REMOVED) {
+                return REMOVED;
+            }
+            unindex(id, words);
+            notes.decrementAndGet();
+            return null;
+        });
+    }
+
+    private void unindex(long id, String[] words) {
+        for (String term : words) {
+            terms.computeIfPresent(term, (t, p) -> {
+                p.remove(id);
+                return p.isEmpty() ? null : p;
+            });
+        }
+    }
+
+    int size() {
+        return notes.get();
+    }
+
+    /**
+     * Returns up to {@code limit} notes containing any word of {@code query}, best first.
+     * Equal scores rank the newer note first.
+     */
+    List<Hit> search(String query, int limit) {
+        List<Postings> lists = new ArrayList<>();
+        List<Double> idfs = new ArrayList<>();
+        double notes = Math.max(1, this.notes.get());
+        for (String term : tokenize(query).keySet()) {
+            Postings p = terms.get(term);
+            if (p == null) {
+                continue;
+            }
+            Postings copy = p.copy();
+            if (copy.size > 0) {
+                lists.add(copy);
+                idfs.add(Math.log(1 + notes / copy.size));
+            }
+        }
+
+        Comparator<Hit> worstFirst = Comparator.<Hit>comparingDouble(h -> h.score)
+                .thenComparingLong(h -> h.id);
+        PriorityQueue<Hit> best = new PriorityQueue<>(worstFirst);
+        int[] at = new int[lists.size()];
+        // walk the sorted lists together, scoring each note once
+        while (true) {
+            long id = Long.MAX_VALUE;
+            for (int i = 0; i < at.length; i++) {
+                if (at[i] < lists.get(i).size) {
+                    id = Math.min(id, lists.get(i).ids[at[i]]);
+                }
+            }
+            if (id == Long.MAX_VALUE) {
+                break;
+            }
+            double score = 0;
+            for (int i = 0; i < at.length; i++) {
+                Postings p = lists.get(i);
+                if (at[i] < p.size && p.ids[at[i]] == id) {
+                    score += p.freqs[at[i]] * idfs.get(i);
+                    at[i]++;
+                }
+            }
+            best.add(new Hit(id, score));
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+
+        List<Hit> hits = new ArrayList<>(best);
+        hits.sort(worstFirst.reversed());
+        return hits;
+    }
+
+    /** Lower-cased runs of letters and digits, with how often each occurs. */
+    static Map<String,Integer> tokenize(String text) {
+        Map<String,Integer> freqs = new HashMap<>();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                word.append(Character.toLowerCase(c));
+            } else if (word.length() > 0) {
+                freqs.merge(word.toString(), 1, Integer::sum);
+                word.setLength(0);
+            }
+        }
+        return freqs;
+    }
+}
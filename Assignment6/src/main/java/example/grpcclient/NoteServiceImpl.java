@@ -1,23 +1,47 @@
 package example.grpcclient;
 
 import com.google.protobuf.Empty;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 import service.NoteServiceGrpc;
 import service.CreateNoteRequest;
 import service.CreateNoteResponse;
 import service.GetNotesResponse;
+import service.GetNotesPageRequest;
+import service.GetNotesPageResponse;
+import service.ListNotesRequest;
+import service.ScoredNote;
+import service.SearchNotesRequest;
+import service.SearchNotesResponse;
 import service.DeleteNoteRequest;
 import service.DeleteNoteResponse;
 import service.Note;
 
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class NoteServiceImpl extends NoteServiceGrpc.NoteServiceImplBase {
-    // Persist notes in memory
-    private final Map<Long,String> store = new ConcurrentHashMap<>();
-    private final AtomicLong nextId         = new AtomicLong(1);
+    static final int DEFAULT_PAGE_SIZE = 100;
+    static final int MAX_PAGE_SIZE     = 1000;
+    static final int DEFAULT_SEARCH_LIMIT = 10;
+    static final int MAX_SEARCH_LIMIT     = 100;
+
+    // notes ordered by ID so listings can resume from a cursor
+    private final NoteStore store;
+    private final NoteIndex index = new NoteIndex();
+
+    public NoteServiceImpl() {
+        this(new InMemoryNoteStore());
+    }
+
+    public NoteServiceImpl(NoteStore store) {
+        this.store = store;
+        // a durable store may come back with notes from an earlier run
+        store.after(0).forEach(index::add);
+    }
 
     @Override
     public void createNote(CreateNoteRequest req,
@@ -31,8 +55,18 @@ public class NoteServiceImpl extends NoteServiceGrpc.NoteServiceImplBase {
             obs.onCompleted();
             return;
         }
-        long id = nextId.getAndIncrement();
-        store.put(id, text);
+        long id;
+        try {
+            id = store.create(text);
+            index.add(id, text);
+        } catch (IOException e) {
+            obs.onNext(CreateNoteResponse.newBuilder()
+                    .setOk(false)
+                    .setError("Could not save note: " + e.getMessage())
+                    .build());
+            obs.onCompleted();
+            return;
+        }
 
         obs.onNext(CreateNoteResponse.newBuilder()
                 .setOk(true)
@@ -45,17 +79,121 @@ public class NoteServiceImpl extends NoteServiceGrpc.NoteServiceImplBase {
     public void getNotes(Empty _unused,
                          StreamObserver<GetNotesResponse> obs) {
         GetNotesResponse.Builder b = GetNotesResponse.newBuilder();
-        store.forEach((id, note) ->
+        store.after(0).forEach((id, note) ->
                 b.addNotes(Note.newBuilder().setId(id).setNote(note).build()));
         obs.onNext(b.build());
         obs.onCompleted();
     }
 
+    /**
+     * Streams the notes after {@code after_id} in ID order. Messages are only written while the
+     * transport is ready, so a slow client holds the server to one iterator, not a copy of the store.
+     * Notes created or deleted while the stream runs may or may not be seen.
+     */
+    @Override
+    public void listNotes(ListNotesRequest req, StreamObserver<Note> obs) {
+        ServerCallStreamObserver<Note> call = (ServerCallStreamObserver<Note>) obs;
+        Iterator<Map.Entry<Long,String>> notes =
+                store.after(req.getAfterId()).entrySet().iterator();
+        AtomicBoolean done = new AtomicBoolean();
+        call.setOnCancelHandler(() -> done.set(true));
+
+        // runs on the call's serialized executor, both here and from the ready handler
+        Runnable drain = () -> {
+            while (!done.get() && call.isReady() && notes.hasNext()) {
+                Map.Entry<Long,String> e = notes.next();
+                call.onNext(Note.newBuilder().setId(e.getKey()).setNote(e.getValue()).build());
+            }
+            if (!notes.hasNext() && done.compareAndSet(false, true)) {
+                call.onCompleted();
+            }
+        };
+        call.setOnReadyHandler(drain);
+        drain.run();
+    }
+
+    /**
+     * Returns up to {@code page_size} notes with an ID greater than {@code cursor}. The last ID
+     * returned is the next cursor, so paging stays correct while notes are added or removed.
+     */
+    @Override
+    public void getNotesPage(GetNotesPageRequest req,
+                             StreamObserver<GetNotesPageResponse> obs) {
+        int pageSize = req.getPageSize() <= 0
+                ? DEFAULT_PAGE_SIZE
+                : Math.min(req.getPageSize(), MAX_PAGE_SIZE);
+
+        GetNotesPageResponse.Builder b = GetNotesPageResponse.newBuilder();
+        long cursor = req.getCursor();
+        boolean hasMore = false;
+        for (Map.Entry<Long,String> e : store.after(cursor).entrySet()) {
+            if (b.getNotesCount() == pageSize) {
+                hasMore = true;
+                break;
+            }
+            b.addNotes(Note.newBuilder().setId(e.getKey()).setNote(e.getValue()).build());
+            cursor = e.getKey();
+        }
+        obs.onNext(b.setNextCursor(cursor).setHasMore(hasMore).build());
+        obs.onCompleted();
+    }
+
+    /**
+     * Ranks the notes containing any word of the query by TF-IDF and returns the best
+     * {@code limit}. Notes deleted while the search ran are left out, and more hits are
+     * fetched in their place.
+     */
+    @Override
+    public void searchNotes(SearchNotesRequest req,
+                            StreamObserver<SearchNotesResponse> obs) {
+        int limit = req.getLimit() <= 0
+                ? DEFAULT_SEARCH_LIMIT
+                : Math.min(req.getLimit(), MAX_SEARCH_LIMIT);
+
+        SearchNotesResponse.Builder b = SearchNotesResponse.newBuilder();
+        // ask for twice as many hits each time until enough of them are still in the store
+        for (int fetch = limit; ; fetch *= 2) {
+            b.clearResults();
+            List<NoteIndex.Hit> hits = index.search(req.getQuery(), fetch);
+            for (NoteIndex.Hit hit : hits) {
+                String note = store.get(hit.id);
+                if (note != null) {
+                    b.addResults(ScoredNote.newBuilder()
+                            .setNote(Note.newBuilder().setId(hit.id).setNote(note))
+                            .setScore(hit.score));
+                    if (b.getResultsCount() == limit) {
+                        break;
+                    }
+                }
+            }
+            if (b.getResultsCount() == limit || hits.size() < fetch) {
+                break;
+            }
+        }
+        obs.onNext(b.build());
+        obs.onCompleted();
+    }
+
     @Override
     public void deleteNote(DeleteNoteRequest req,
                            StreamObserver<DeleteNoteResponse> obs) {
         long id = req.getId();
-        if (store.remove(id) != null) {
+        boolean removed;
+        try {
+            removed = store.delete(id);
+            // only a note the store had, so a tombstone is left only for an add still on its way
+            if (removed) {
+                index.remove(id);
+            }
+        } catch (IOException e) {
+            obs.onNext(DeleteNoteResponse.newBuilder()
+                    .setOk(false)
+                    .setError("Could not delete note: " + e.getMessage())
+                    .build());
+            obs.onCompleted();
+            return;
+        }
+        if (removed) {
             obs.onNext(DeleteNoteResponse.newBuilder().setOk(true).build());
         } else {
             obs.onNext(DeleteNoteResponse.newBuilder()
@@ -0,0 +1,29 @@
+package example.grpcclient;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.NavigableMap;
+
+/**
+ * Where NoteServiceImpl keeps its notes. IDs are handed out by the store, start at 1 and are
+ * never reused, so a listing can always resume after the last ID it saw.
+ */
+public interface NoteStore extends Closeable {
+
+    /** Saves a note and returns its new ID. */
+    long create(String note) throws IOException;
+
+    /** Removes a note; false if there was no note with that ID. */
+    boolean delete(long id) throws IOException;
+
+    /** The note with this ID, or null. */
+    default String get(long id) {
+        return after(id - 1).get(id);
+    }
+
+    /** Read-only view of the notes with an ID greater than {@code id}, in ID order. */
+    NavigableMap<Long,String> after(long id);
+
+    @Override
+    default void close() throws IOException {}
+}
@@ -0,0 +1,282 @@
+package example.grpcclient;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.Parser;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ClientInterceptors;
+import io.grpc.Drainable;
+import io.grpc.KnownLength;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerMethodDefinition;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.ServiceDescriptor;
+import io.grpc.Status;
+import service.NoteServiceGrpc;
+import service.WeatherGrpc;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Protobuf marshaller for the RPCs with large messages (note listings and search results,
+ * weather), used in place of gRPC's default one on both the node and the client.
+ *
+ * The default marshaller allocates per message: a new CodedOutputStream buffer each time a
+ * message is written, and a new byte[] the size of every inbound message over 4 KiB. Here both
+ * directions borrow a buffer from a small shared pool instead. A message is serialized into the
+ * pooled buffer and handed to gRPC's framer in one write (the framer's own buffers come from
+ * Netty's pooled allocator); an inbound message is read into a pooled buffer and parsed from
+ * there. Messages over MAX_POOLED bytes are written straight to the framer and read through a
+ * one-off array, so the pool never holds on to a huge buffer.
+ *
+ * Over the in-process transport a message is handed to the other side as it is, unserialized.
+ */
+final class PooledMarshaller<T extends MessageLite> implements MethodDescriptor.PrototypeMarshaller<T> {
+
+    /** Methods whose request and response messages go through a PooledMarshaller. */
+    static final Set<String> LARGE_PAYLOADS = Set.of(
+            NoteServiceGrpc.getGetNotesMethod().getFullMethodName(),
+            NoteServiceGrpc.getGetNotesPageMethod().getFullMethodName(),
+            NoteServiceGrpc.getListNotesMethod().getFullMethodName(),
+            NoteServiceGrpc.getSearchNotesMethod().getFullMethodName(),
+            WeatherGrpc.getInCityMethod().getFullMethodName(),
+            WeatherGrpc.getAtCoordinatesMethod().getFullMethodName());
+
+    static final int MIN_BUFFER = 8 * 1024;
+    static final int MAX_POOLED = 1024 * 1024;
+    private static final int POOL_SIZE = 32;
+    static final BlockingQueue<byte[]> POOL = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    private final T prototype;
+    private final Parser<T> parser;
+
+    @SuppressWarnings("unchecked")
+    PooledMarshaller(T prototype) {
+        this.prototype = prototype;
+        this.parser = (Parser<T>) prototype.getParserForType();
+    }
+
+    /** The service with the LARGE_PAYLOADS methods bound to pooled marshallers. */
+    static ServerServiceDefinition forLargePayloads(ServerServiceDefinition definition) {
+        if (definition.getMethods().stream()
+                .noneMatch(m -> LARGE_PAYLOADS.contains(m.getMethodDescriptor().getFullMethodName()))) {
+            return definition;
+        }
+        ServiceDescriptor old = definition.getServiceDescriptor();
+        ServiceDescriptor.Builder descriptor = ServiceDescriptor.newBuilder(old.getName())
+                .setSchemaDescriptor(old.getSchemaDescriptor());
+        List<ServerMethodDefinition<?, ?>> methods = new ArrayList<>();
+        for (ServerMethodDefinition<?, ?> method : definition.getMethods()) {
+            ServerMethodDefinition<?, ?> bound =
+                    LARGE_PAYLOADS.contains(method.getMethodDescriptor().getFullMethodName()) ? rebind(method) : method;
+            // the service descriptor has to hold the very descriptors the methods are bound to
+            descriptor.addMethod(bound.getMethodDescriptor());
+            methods.add(bound);
+        }
+        ServerServiceDefinition.Builder builder = ServerServiceDefinition.builder(descriptor.build());
+        for (ServerMethodDefinition<?, ?> method : methods) {
+            builder.addMethod(method);
+        }
+        return builder.build();
+    }
+
+    /** The channel, with calls to the LARGE_PAYLOADS methods using pooled marshallers. */
+    static Channel forLargePayloads(Channel channel) {
+        return ClientInterceptors.intercept(channel, new ClientInterceptor() {
+            // generated method descriptors are singletons, so each is rebuilt once
+            private final Map<MethodDescriptor<?, ?>, MethodDescriptor<?, ?>> pooled = new ConcurrentHashMap<>();
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public <Q, R> ClientCall<Q, R> interceptCall(MethodDescriptor<Q, R> method, CallOptions options, Channel next) {
+                if (!LARGE_PAYLOADS.contains(method.getFullMethodName())) {
+                    return next.newCall(method, options);
+                }
+                return next.newCall((MethodDescriptor<Q, R>) pooled.computeIfAbsent(method, m -> pooled(method)), options);
+            }
+        });
+    }
+
+    /** The method with both marshallers pooled, where they are protobuf ones. */
+    static <Q, R> MethodDescriptor<Q, R> pooled(MethodDescriptor<Q, R> method) {
+        return method.toBuilder(pooled(method.getRequestMarshaller()), pooled(method.getResponseMarshaller())).build();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> MethodDescriptor.Marshaller<T> pooled(MethodDescriptor.Marshaller<T> marshaller) {
+        if (marshaller instanceof PooledMarshaller || !(marshaller instanceof MethodDescriptor.PrototypeMarshaller)) {
+            return marshaller;
+        }
+        Object prototype = ((MethodDescriptor.PrototypeMarshaller<T>) marshaller).getMessagePrototype();
+        return prototype instanceof MessageLite
+                ? (MethodDescriptor.Marshaller<T>) new PooledMarshaller<>((MessageLite) prototype)
+                : marshaller;
+    }
+
+    private static <Q, R> ServerMethodDefinition<Q, R> rebind(ServerMethodDefinition<Q, R> method) {
+        return ServerMethodDefinition.create(pooled(method.getMethodDescriptor()), method.getServerCallHandler());
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Class<T> getMessageClass() {
+        return (Class<T>) prototype.getClass();
+    }
+
+    @Override
+    public T getMessagePrototype() {
+        return prototype;
+    }
+
+    @Override
+    public InputStream stream(T value) {
+        return new MessageStream(value);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T parse(InputStream stream) {
+        if (stream instanceof MessageStream) {
+            MessageStream unread = (MessageStream) stream;
+            if (unread.message != null && unread.message.getClass() == prototype.getClass()) {
+                T message = (T) unread.message;
+                unread.message = null;
+                return message;
+            }
+        }
+        try {
+            if (!(stream instanceof KnownLength)) {
+                return parser.parseFrom(stream);
+            }
+            int size = stream.available();
+            if (size == 0) {
+                return prototype;
+            }
+            byte[] buffer = acquire(size);
+            try {
+                readFully(stream, buffer, size);
+                // the buffer goes back to the pool, so nothing may alias it: fields are copied out
+                CodedInputStream in = CodedInputStream.newInstance(buffer, 0, size);
+                T message = parser.parseFrom(in);
+                in.checkLastTagWas(0);
+                return message;
+            } finally {
+                release(buffer);
+            }
+        } catch (IOException e) {
+            throw Status.INTERNAL.withDescription("Invalid protobuf byte sequence").withCause(e).asRuntimeException();
+        }
+    }
+
+    private static void readFully(InputStream stream, byte[] buffer, int size) throws IOException {
+        int read = 0;
+        while (read < size) {
+            int n = stream.read(buffer, read, size - read);
+            if (n < 0) {
+                throw new InvalidProtocolBufferException("Message ended after " + read + " of " + size + " bytes");
+            }
+            read += n;
+        }
+    }
+
+    /** A pooled buffer of at least size bytes, or a one-off array for sizes over MAX_POOLED. */
+    static byte[] acquire(int size) {
+        if (size > MAX_POOLED) {
+            return new byte[size];
+        }
+        byte[] buffer = POOL.poll();
+        if (buffer != null && buffer.length >= size) {
+            return buffer;
+        }
+        // too small ones are dropped, so the pool grows towards the sizes actually sent
+        return new byte[Math.max(MIN_BUFFER, Integer.highestOneBit(size - 1) << 1)];
+    }
+
+    static void release(byte[] buffer) {
+        if (buffer.length <= MAX_POOLED) {
+            POOL.offer(buffer);
+        }
+    }
+
+    /**
+     * A message on its way out. gRPC's framer asks for its length and drains it into its own
+     * buffers; anything else reading it gets the serialized bytes.
+     */
+    private static final class MessageStream extends InputStream implements Drainable, KnownLength {
+        private MessageLite message;
+        private ByteArrayInputStream partial;
+
+        MessageStream(MessageLite message) {
+            this.message = message;
+        }
+
+        @Override
+        public int drainTo(OutputStream target) throws IOException {
+            if (message == null) {
+                if (partial == null) {
+                    return 0;
+                }
+                int rest = partial.available();
+                partial.transferTo(target);
+                return rest;
+            }
+            int size = message.getSerializedSize();
+            if (size > MAX_POOLED) {
+                message.writeTo(target);
+            } else {
+                byte[] buffer = acquire(size);
+                try {
+                    CodedOutputStream out = CodedOutputStream.newInstance(buffer, 0, size);
+                    message.writeTo(out);
+                    out.checkNoSpaceLeft();
+                    target.write(buffer, 0, size);
+                } finally {
+                    release(buffer);
+                }
+            }
+            message = null;
+            return size;
+        }
+
+        @Override
+        public int available() {
+            if (message != null) {
+                return message.getSerializedSize();
+            }
+            return partial == null ? 0 : partial.available();
+        }
+
+        @Override
+        public int read() {
+            return bytes().read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            return bytes().read(b, off, len);
+        }
+
+        private ByteArrayInputStream bytes() {
+            if (partial == null) {
+                partial = new ByteArrayInputStream(message == null ? new byte[0] : message.toByteArray());
+                message = null;
+            }
+            return partial;
+        }
+    }
+}
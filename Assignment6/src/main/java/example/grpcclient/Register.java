@@ -2,10 +2,24 @@ package example.grpcclient;
 
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
+import io.grpc.StatusRuntimeException;
+import java.util.concurrent.TimeUnit;
 import service.RegistryGrpc;
 
+/**
+ * Keeps this node registered. Registers as soon as the node has published its services, again
+ * whenever the catalogue changes, and otherwise renews every LEASE_MS so a registry that restarted
+ * or forgot the node learns about it again. All of it goes over one channel that lives as long as
+ * this thread; calls that fail are retried with a growing pause.
+ */
 public class Register extends Thread {
 
+  // how often the registration is renewed when nothing changes
+  static final long LEASE_MS = 30_000;
+  // first pause after a failed attempt, doubled on each further failure up to LEASE_MS
+  static final long RETRY_MS = 1_000;
+  private static final long CALL_TIMEOUT_MS = 5_000;
+
   // info where the registry port can be contacted
   String registryHost;
   int registryPort;
@@ -16,32 +30,84 @@ public class Register extends Thread {
 
   String name;
 
-  public Register(String registryHost, int registryPort, String serviceHost, int servicePort, String name) {
+  // the node's services; registering again when they change
+  private final ServiceCatalog catalog;
+  private final long leaseMs;
+  private volatile boolean running = true;
+  private volatile long registeredVersion;
+
+  public Register(String registryHost, int registryPort, String serviceHost, int servicePort, String name,
+                  ServiceCatalog catalog) {
+    this(registryHost, registryPort, serviceHost, servicePort, name, catalog, LEASE_MS);
+  }
+
+  Register(String registryHost, int registryPort, String serviceHost, int servicePort, String name,
+           ServiceCatalog catalog, long leaseMs) {
+    super("register-" + name);
+    setDaemon(true);
     this.registryHost = registryHost;
     this.registryPort = registryPort;
 
     this.servicePort = servicePort;
     this.serviceHost = serviceHost;
     this.name = name;
+    this.catalog = catalog;
+    this.leaseMs = leaseMs;
   }
 
   @Override
   public void run() {
+    ManagedChannel channel = ManagedChannelBuilder.forAddress(registryHost, registryPort)
+        // Channels are secure by default (via SSL/TLS). For the example we disable TLS
+        // to avoid
+        // needing certificates.
+        .usePlaintext().build();
     try {
-      Thread.sleep(1000); // to make sure the node is up and running
-      ManagedChannel channel = ManagedChannelBuilder.forAddress(registryHost, registryPort)
-          // Channels are secure by default (via SSL/TLS). For the example we disable TLS
-          // to avoid
-          // needing certificates.
-          .usePlaintext().build();
       RegistryGrpc.RegistryBlockingStub blockingStub = RegistryGrpc.newBlockingStub(channel);
       // "Grpc", serviceHost, servicePort, discoveryPort
       service.Connection oneConn = service.Connection.newBuilder().setProtocol("Grpc")
-      .setUri(serviceHost).setPort(servicePort).setDiscoveryPort(servicePort).setName(name).build();
+          .setUri(serviceHost).setPort(servicePort).setDiscoveryPort(servicePort).setName(name).build();
+      service.RegisterReq req = service.RegisterReq.newBuilder().setConnection(oneConn).build();
 
-      service.ServicesListRes res = blockingStub.register(service.RegisterReq.newBuilder().setConnection(oneConn).build());
-    } catch (Exception e) {
-      e.printStackTrace();
+      long pause = Math.min(RETRY_MS, leaseMs);
+      long version = catalog.awaitChange(0, Long.MAX_VALUE); // until the node is up
+      while (running) {
+        try {
+          service.ServicesListRes res = blockingStub
+              .withDeadlineAfter(CALL_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+              .register(req);
+          // the registry heard from us; a refusal (e.g. already registered) is not worth retrying
+          if (!res.getIsSuccess()) {
+            System.err.println("Registry answered: " + res.getError());
+          }
+          registeredVersion = version;
+          pause = Math.min(RETRY_MS, leaseMs);
+          // wake up early if the services change, otherwise renew when the lease is up
+          version = catalog.awaitChange(version, leaseMs);
+        } catch (StatusRuntimeException e) {
+          System.err.println("Registering with " + registryHost + ":" + registryPort + " failed: "
+              + e.getMessage() + ", retrying in " + pause + " ms");
+          Thread.sleep(pause);
+          pause = Math.min(pause * 2, leaseMs);
+          version = catalog.version();
+        }
+      }
+    } catch (InterruptedException e) {
+      // shut down
+    } finally {
+      channel.shutdownNow();
     }
   }
-}
\ No newline at end of file
+
+  /** The catalogue version the registry last accepted, 0 before the first success. */
+  long registeredVersion() {
+    return registeredVersion;
+  }
+
+  /** Stops renewing and closes the channel. */
+  void close() throws InterruptedException {
+    running = false;
+    interrupt();
+    join(5_000);
+  }
+}
@@ -1,21 +1,28 @@
 package example.grpcclient;
 
-import java.util.ArrayList;
 import service.*;
 
+// Answers the registry (and anyone else) with the services this node offers, from its catalogue
 public class RegistryAnswerImpl extends RegistryGrpc.RegistryImplBase {
-  private ArrayList<String> services;
-  public RegistryAnswerImpl(ArrayList<String> services) {
+  private final ServiceCatalog catalog;
+
+  RegistryAnswerImpl(ServiceCatalog catalog) {
     super();
-    this.services = services;
+    this.catalog = catalog;
   }
-  
+
   @Override
   public void getServices(service.GetServicesReq req,
       io.grpc.stub.StreamObserver<service.ServicesListRes> responseObserver) {
-    System.out.println("Received from client: GetServices");
-    ServicesListRes response = ServicesListRes.newBuilder().setIsSuccess(true).addAllServices(services).build();
-    responseObserver.onNext(response);
+    // built once per catalogue version, nothing is copied per call
+    responseObserver.onNext(catalog.listing());
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void getServiceChanges(ServiceChangesReq req,
+      io.grpc.stub.StreamObserver<ServiceChangesRes> responseObserver) {
+    responseObserver.onNext(catalog.changesSince(req.getSinceVersion()));
     responseObserver.onCompleted();
   }
 }
@@ -0,0 +1,268 @@
+package example.grpcclient;
+
+import com.google.protobuf.MessageLite;
+import io.grpc.ForwardingServerCall.SimpleForwardingServerCall;
+import io.grpc.ForwardingServerCallListener.SimpleForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.ServerInterceptors;
+import io.grpc.ServerMethodDefinition;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.Status;
+import service.LatencyBucket;
+import service.MethodMetrics;
+import service.MetricsRes;
+import service.StatusCount;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records, for every method a Node serves, how many calls came in, how many are in flight, how
+ * each ended, how long it took from start to close, and how many request and response bytes it
+ * carried. Installed as the outermost interceptor of every service, so calls refused by a
+ * LoadShedder are counted too.
+ *
+ * Recording is lock-free. Byte counts are the serialized size of the protobuf messages, which
+ * protobuf computes once per message and caches; gRPC framing and headers are not included.
+ */
+class ServerMetrics implements ServerInterceptor {
+
+    static final class MethodStats {
+        final String method;
+        final LongAdder started = new LongAdder();
+        final AtomicInteger inFlight = new AtomicInteger();
+        final Map<Status.Code, LongAdder> statuses = new ConcurrentHashMap<>();
+        final LongAdder requestMessages = new LongAdder();
+        final LongAdder requestBytes = new LongAdder();
+        final LongAdder responseMessages = new LongAdder();
+        final LongAdder responseBytes = new LongAdder();
+        final LatencyHistogram latency = new LatencyHistogram();
+
+        MethodStats(String method) {
+            this.method = method;
+        }
+
+        long finished(Status.Code code) {
+            LongAdder n = statuses.get(code);
+            return n == null ? 0 : n.sum();
+        }
+
+        private void finish(long startNanos, Status.Code code) {
+            inFlight.decrementAndGet();
+            statuses.computeIfAbsent(code, c -> new LongAdder()).increment();
+            latency.record(System.nanoTime() - startNanos);
+        }
+    }
+
+    private final Map<String, MethodStats> methods = new ConcurrentHashMap<>();
+    private final long startedAt = System.currentTimeMillis();
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        MethodStats stats = stats(call.getMethodDescriptor().getFullMethodName());
+        stats.started.increment();
+        stats.inFlight.incrementAndGet();
+        long start = System.nanoTime();
+        // a call is closed by the service, cancelled by the client, or both; count it once
+        AtomicBoolean finished = new AtomicBoolean();
+
+        ServerCall<ReqT, RespT> counted = new SimpleForwardingServerCall<ReqT, RespT>(call) {
+            @Override
+            public void sendMessage(RespT message) {
+                stats.responseMessages.increment();
+                stats.responseBytes.add(size(message));
+                super.sendMessage(message);
+            }
+
+            @Override
+            public void close(Status status, Metadata trailers) {
+                if (finished.compareAndSet(false, true)) {
+                    stats.finish(start, status.getCode());
+                }
+                super.close(status, trailers);
+            }
+        };
+
+        ServerCall.Listener<ReqT> listener;
+        try {
+            listener = next.startCall(counted, headers);
+        } catch (RuntimeException e) {
+            if (finished.compareAndSet(false, true)) {
+                stats.finish(start, Status.Code.UNKNOWN);
+            }
+            throw e;
+        }
+        return new SimpleForwardingServerCallListener<ReqT>(listener) {
+            @Override
+            public void onMessage(ReqT message) {
+                stats.requestMessages.increment();
+                stats.requestBytes.add(size(message));
+                super.onMessage(message);
+            }
+
+            @Override
+            public void onCancel() {
+                if (finished.compareAndSet(false, true)) {
+                    stats.finish(start, Status.Code.CANCELLED);
+                }
+                super.onCancel();
+            }
+        };
+    }
+
+    /** The service with every call recorded; its methods are listed from the start, at zero. */
+    ServerServiceDefinition instrument(ServerServiceDefinition service) {
+        for (ServerMethodDefinition<?, ?> method : service.getMethods()) {
+            stats(method.getMethodDescriptor().getFullMethodName());
+        }
+        return ServerInterceptors.intercept(service, this);
+    }
+
+    /** The stats of one method, by full name; created empty on first use. */
+    MethodStats stats(String method) {
+        MethodStats stats = methods.get(method);
+        return stats != null ? stats : methods.computeIfAbsent(method, MethodStats::new);
+    }
+
+    /** Every instrumented method, sorted by full name, optionally only those with a prefix. */
+    List<MethodStats> methods(String prefix) {
+        List<MethodStats> list = new ArrayList<>();
+        for (MethodStats stats : new TreeMap<>(methods).values()) {
+            if (stats.method.startsWith(prefix)) {
+                list.add(stats);
+            }
+        }
+        return list;
+    }
+
+    /** Everything recorded so far, for the Metrics service. */
+    MetricsRes snapshot(String prefix) {
+        MetricsRes.Builder res = MetricsRes.newBuilder().setUptimeMs(System.currentTimeMillis() - startedAt);
+        for (MethodStats stats : methods(prefix)) {
+            MethodMetrics.Builder m = MethodMetrics.newBuilder()
+                    .setMethod(stats.method)
+                    .setStarted(stats.started.sum())
+                    .setInFlight(stats.inFlight.get())
+                    .setRequestMessages(stats.requestMessages.sum())
+                    .setRequestBytes(stats.requestBytes.sum())
+                    .setResponseMessages(stats.responseMessages.sum())
+                    .setResponseBytes(stats.responseBytes.sum())
+                    .setP50Us(stats.latency.percentile(0.5))
+                    .setP90Us(stats.latency.percentile(0.9))
+                    .setP99Us(stats.latency.percentile(0.99))
+                    .setP999Us(stats.latency.percentile(0.999))
+                    .setMaxUs(stats.latency.maxMicros())
+                    .setTotalUs(stats.latency.totalMicros());
+            for (Map.Entry<Status.Code, LongAdder> e : new TreeMap<>(stats.statuses).entrySet()) {
+                m.addStatuses(StatusCount.newBuilder().setCode(e.getKey().name()).setCount(e.getValue().sum()));
+            }
+            for (int i = 0; i < LatencyHistogram.buckets(); i++) {
+                long n = stats.latency.bucketCount(i);
+                if (n > 0) {
+                    m.addBuckets(LatencyBucket.newBuilder().setUpperUs(LatencyHistogram.upper(i)).setCount(n));
+                }
+            }
+            res.addMethods(m);
+        }
+        return res.build();
+    }
+
+    /**
+     * Everything recorded so far in the Prometheus text format, with the metric names the usual
+     * gRPC exporters use. Latency buckets are powers of two from 128 µs to about 16 s, which line
+     * up with the histogram's own buckets, so the counts are exact.
+     */
+    String scrape() {
+        List<MethodStats> all = methods("");
+        StringBuilder out = new StringBuilder(256 + all.size() * 2048);
+        counter(out, all, "grpc_server_started_total", "Calls received.", s -> s.started.sum());
+        out.append("# HELP grpc_server_handled_total Calls finished, by status code.\n");
+        out.append("# TYPE grpc_server_handled_total counter\n");
+        for (MethodStats s : all) {
+            for (Map.Entry<Status.Code, LongAdder> e : new TreeMap<>(s.statuses).entrySet()) {
+                out.append("grpc_server_handled_total");
+                labels(out, s, "grpc_code", e.getKey().name()).append(' ').append(e.getValue().sum()).append('\n');
+            }
+        }
+        gauge(out, all, "grpc_server_in_flight", "Calls started and not yet finished.", s -> s.inFlight.get());
+        counter(out, all, "grpc_server_msg_received_total", "Request messages received.", s -> s.requestMessages.sum());
+        counter(out, all, "grpc_server_received_bytes_total", "Serialized size of the request messages.", s -> s.requestBytes.sum());
+        counter(out, all, "grpc_server_msg_sent_total", "Response messages sent.", s -> s.responseMessages.sum());
+        counter(out, all, "grpc_server_sent_bytes_total", "Serialized size of the response messages.", s -> s.responseBytes.sum());
+
+        out.append("# HELP grpc_server_handling_seconds Time from call start to close.\n");
+        out.append("# TYPE grpc_server_handling_seconds histogram\n");
+        for (MethodStats s : all) {
+            for (int shift = 7; shift <= 24; shift++) {
+                out.append("grpc_server_handling_seconds_bucket");
+                labels(out, s, "le", seconds(1L << shift))
+                        .append(' ').append(s.latency.countBelow(1L << shift)).append('\n');
+            }
+            out.append("grpc_server_handling_seconds_bucket");
+            labels(out, s, "le", "+Inf").append(' ').append(s.latency.count()).append('\n');
+            out.append("grpc_server_handling_seconds_sum");
+            labels(out, s).append(' ').append(seconds(s.latency.totalMicros())).append('\n');
+            out.append("grpc_server_handling_seconds_count");
+            labels(out, s).append(' ').append(s.latency.count()).append('\n');
+        }
+        return out.toString();
+    }
+
+    private interface Value {
+        long of(MethodStats stats);
+    }
+
+    private static void counter(StringBuilder out, List<MethodStats> all, String name, String help, Value value) {
+        metric(out, all, name, help, "counter", value);
+    }
+
+    private static void gauge(StringBuilder out, List<MethodStats> all, String name, String help, Value value) {
+        metric(out, all, name, help, "gauge", value);
+    }
+
+    private static void metric(StringBuilder out, List<MethodStats> all, String name, String help, String type,
+                               Value value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        for (MethodStats s : all) {
+            out.append(name);
+            labels(out, s).append(' ').append(value.of(s)).append('\n');
+        }
+    }
+
+    /** {grpc_service="services.Echo",grpc_method="parrot"} */
+    private static StringBuilder labels(StringBuilder out, MethodStats s) {
+        return labels(out, s, null, null);
+    }
+
+    /** The method's labels plus one more, e.g. {grpc_service="services.Echo",grpc_method="parrot",le="0.001"} */
+    private static StringBuilder labels(StringBuilder out, MethodStats s, String name, String value) {
+        int slash = s.method.lastIndexOf('/');
+        out.append("{grpc_service=\"").append(s.method, 0, Math.max(slash, 0))
+                .append("\",grpc_method=\"").append(s.method, slash + 1, s.method.length()).append('"');
+        if (name != null) {
+            out.append(',').append(name).append("=\"").append(value).append('"');
+        }
+        return out.append('}');
+    }
+
+    /** Microseconds as exact decimal seconds, e.g. 0.000128. */
+    private static String seconds(long us) {
+        return BigDecimal.valueOf(us, 6).toPlainString();
+    }
+
+    private static long size(Object message) {
+        return message instanceof MessageLite ? ((MessageLite) message).getSerializedSize() : 0;
+    }
+}
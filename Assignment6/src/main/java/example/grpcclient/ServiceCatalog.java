@@ -0,0 +1,178 @@
+package example.grpcclient;
+
+import service.ServiceChangesRes;
+import service.ServicesListRes;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The methods a node serves, as a series of immutable numbered versions. Each publish that changes
+ * the list makes a new version and remembers what it added and removed, so a caller that already
+ * has version N can be sent just the changes since N instead of the whole list.
+ *
+ * Readers never lock: the current version, its prebuilt getServices answer and the recent changes
+ * sit in one immutable state object that publish swaps in. Version 0 is the empty catalogue before
+ * anything was published.
+ */
+class ServiceCatalog {
+
+    /** How many past versions' changes are kept; callers further behind get the full list. */
+    static final int HISTORY = 64;
+
+    private static final class Change {
+        final long version;
+        final List<String> added;
+        final List<String> removed;
+
+        Change(long version, List<String> added, List<String> removed) {
+            this.version = version;
+            this.added = added;
+            this.removed = removed;
+        }
+    }
+
+    private static final class State {
+        final long version;
+        final List<String> services;
+        final ServicesListRes listing;
+        final ServiceChangesRes upToDate;
+        final List<Change> history; // oldest first, the last one made this version
+
+        State(long version, List<String> services, List<Change> history) {
+            this.version = version;
+            this.services = services;
+            this.history = history;
+            this.listing = ServicesListRes.newBuilder()
+                    .setIsSuccess(true)
+                    .addAllServices(services)
+                    .setVersion(version)
+                    .build();
+            this.upToDate = ServiceChangesRes.newBuilder().setIsSuccess(true).setVersion(version).build();
+        }
+    }
+
+    private volatile State state = new State(0, List.of(), List.of());
+
+    /**
+     * Makes the given methods the catalogue, as a new version if they differ from the current
+     * ones. Returns the version now current.
+     */
+    synchronized long publish(Collection<String> methods) {
+        State old = state;
+        TreeSet<String> next = new TreeSet<>(methods);
+        List<String> added = new ArrayList<>();
+        for (String m : next) {
+            if (Collections.binarySearch(old.services, m) < 0) {
+                added.add(m);
+            }
+        }
+        List<String> removed = new ArrayList<>();
+        for (String m : old.services) {
+            if (!next.contains(m)) {
+                removed.add(m);
+            }
+        }
+        if (added.isEmpty() && removed.isEmpty()) {
+            return old.version;
+        }
+        long version = old.version + 1;
+        List<Change> history = new ArrayList<>(old.history.subList(Math.max(0, old.history.size() - HISTORY + 1),
+                old.history.size()));
+        history.add(new Change(version, List.copyOf(added), List.copyOf(removed)));
+        state = new State(version, List.copyOf(next), List.copyOf(history));
+        notifyAll();
+        return version;
+    }
+
+    /** Adds methods to the catalogue, keeping the ones already there. */
+    synchronized long add(Collection<String> methods) {
+        Set<String> all = new LinkedHashSet<>(state.services);
+        all.addAll(methods);
+        return publish(all);
+    }
+
+    /** Drops methods from the catalogue. */
+    synchronized long remove(Collection<String> methods) {
+        Set<String> all = new LinkedHashSet<>(state.services);
+        all.removeAll(methods);
+        return publish(all);
+    }
+
+    long version() {
+        return state.version;
+    }
+
+    /** The current methods, sorted. */
+    List<String> services() {
+        return state.services;
+    }
+
+    /** The current list as getServices answers it; built once per version. */
+    ServicesListRes listing() {
+        return state.listing;
+    }
+
+    /**
+     * What a caller holding version {@code since} needs to catch up: nothing if it is current, the
+     * net additions and removals if its version is still in the history, otherwise the full list.
+     */
+    ServiceChangesRes changesSince(long since) {
+        State s = state;
+        if (since == s.version) {
+            return s.upToDate;
+        }
+        if (since <= 0 || since > s.version || s.history.isEmpty() || since < s.history.get(0).version - 1) {
+            return ServiceChangesRes.newBuilder()
+                    .setIsSuccess(true)
+                    .setVersion(s.version)
+                    .setFull(true)
+                    .addAllAdded(s.services)
+                    .build();
+        }
+        // fold the changes after since into one; a method added and removed again cancels out
+        Set<String> added = new TreeSet<>();
+        Set<String> removed = new TreeSet<>();
+        for (Change c : s.history) {
+            if (c.version <= since) {
+                continue;
+            }
+            for (String m : c.added) {
+                if (!removed.remove(m)) {
+                    added.add(m);
+                }
+            }
+            for (String m : c.removed) {
+                if (!added.remove(m)) {
+                    removed.add(m);
+                }
+            }
+        }
+        return ServiceChangesRes.newBuilder()
+                .setIsSuccess(true)
+                .setVersion(s.version)
+                .addAllAdded(added)
+                .addAllRemoved(removed)
+                .build();
+    }
+
+    /**
+     * Waits until the version differs from {@code seen} or the timeout passes, and returns the
+     * version then current.
+     */
+    synchronized long awaitChange(long seen, long timeoutMs) throws InterruptedException {
+        long now = System.currentTimeMillis();
+        long deadline = timeoutMs > Long.MAX_VALUE - now ? Long.MAX_VALUE : now + timeoutMs;
+        long left = timeoutMs;
+        while (state.version == seen && left > 0) {
+            wait(left);
+            left = deadline - System.currentTimeMillis();
+        }
+        return state.version;
+    }
+}
@@ -0,0 +1,161 @@
+package example.grpcclient;
+
+import io.grpc.StatusRuntimeException;
+import service.Connection;
+import service.FindServersReq;
+import service.RegistryGrpc;
+import service.ServerListRes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Client-side cache of the registry's answers to findServers, keyed by full method name
+ * (e.g. "services.Echo/parrot"). A lookup only goes to the registry when the cached answer is
+ * older than the TTL or was invalidated, so most calls never touch the registry.
+ *
+ * If the registry cannot be reached, the last known nodes keep being used until it can. Each
+ * registry call has a deadline, and only one runs per method at a time: callers with an older
+ * answer keep using it meanwhile, callers with none wait for that one call.
+ */
+class ServiceDirectory {
+
+  static final long REGISTRY_TIMEOUT_MS = 2_000;
+
+  private static final class Entry {
+    final List<Connection> nodes;
+    final long fetchedAt;
+
+    Entry(List<Connection> nodes, long fetchedAt) {
+      this.nodes = nodes;
+      this.fetchedAt = fetchedAt;
+    }
+  }
+
+  private final RegistryGrpc.RegistryBlockingStub registry;
+  private final long ttlMs;
+  private final long timeoutMs;
+  private final ConcurrentHashMap<String,Entry> entries = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String,CompletableFuture<Entry>> refreshing = new ConcurrentHashMap<>();
+  private final AtomicLong registryCalls = new AtomicLong();
+  private volatile Consumer<Connection> onDropped = c -> { };
+
+  ServiceDirectory(RegistryGrpc.RegistryBlockingStub registry, long ttlMs) {
+    this(registry, ttlMs, REGISTRY_TIMEOUT_MS);
+  }
+
+  ServiceDirectory(RegistryGrpc.RegistryBlockingStub registry, long ttlMs, long timeoutMs) {
+    this.registry = registry;
+    this.ttlMs = ttlMs;
+    this.timeoutMs = timeoutMs;
+  }
+
+  /** Nodes offering {@code method}; empty if the registry knows none. */
+  List<Connection> lookup(String method) {
+    Entry old = entries.get(method);
+    if (old != null && System.currentTimeMillis() - old.fetchedAt < ttlMs) {
+      return old.nodes;
+    }
+    CompletableFuture<Entry> mine = new CompletableFuture<>();
+    CompletableFuture<Entry> running = refreshing.putIfAbsent(method, mine);
+    if (running != null) {
+      // someone is already asking the registry: reuse what we had, or wait for their answer
+      return old != null ? old.nodes : nodes(running.join());
+    }
+    try {
+      mine.complete(refresh(method));
+    } catch (RuntimeException ex) {
+      mine.completeExceptionally(ex); // so the waiters do not wait forever
+      throw ex;
+    } finally {
+      refreshing.remove(method, mine);
+    }
+    return nodes(mine.join());
+  }
+
+  /** Forgets what is known about {@code method}, so the next lookup asks the registry. */
+  void invalidate(String method) {
+    Entry old = entries.remove(method);
+    if (old != null) {
+      dropped(old.nodes);
+    }
+  }
+
+  /**
+   * Drops a node that stopped answering from every cached answer it appears in. An answer left
+   * with no nodes is forgotten, so the next lookup asks the registry again.
+   */
+  void invalidate(Connection node) {
+    for (String method : entries.keySet()) {
+      entries.computeIfPresent(method, (m, e) -> {
+        List<Connection> rest = new ArrayList<>(e.nodes);
+        if (!rest.removeIf(c -> sameNode(c, node))) {
+          return e;
+        }
+        return rest.isEmpty() ? null : new Entry(Collections.unmodifiableList(rest), e.fetchedAt);
+      });
+    }
+    dropped(List.of(node));
+  }
+
+  /** Called with each node that no cached answer lists any more. */
+  void onDropped(Consumer<Connection> listener) {
+    onDropped = listener;
+  }
+
+  long registryCalls() {
+    return registryCalls.get();
+  }
+
+  static boolean sameNode(Connection a, Connection b) {
+    return a.getUri().equals(b.getUri()) && a.getPort() == b.getPort();
+  }
+
+  private Entry refresh(String method) {
+    Entry old = entries.get(method);
+    if (old != null && System.currentTimeMillis() - old.fetchedAt < ttlMs) {
+      return old; // refreshed by someone who finished just before we started
+    }
+    Entry fresh;
+    try {
+      fresh = new Entry(fetch(method), System.currentTimeMillis());
+    } catch (StatusRuntimeException ex) {
+      return old; // keep serving what we had, try again on the next lookup
+    }
+    old = entries.put(method, fresh);
+    if (old != null) {
+      dropped(old.nodes);
+    }
+    return fresh;
+  }
+
+  /** Tells the listener about those of {@code candidates} that no cached answer lists. */
+  private void dropped(List<Connection> candidates) {
+    for (Connection c : candidates) {
+      boolean listed = entries.values().stream().anyMatch(e -> e.nodes.stream().anyMatch(n -> sameNode(n, c)));
+      if (!listed) {
+        onDropped.accept(c);
+      }
+    }
+  }
+
+  private static List<Connection> nodes(Entry e) {
+    return e == null ? Collections.<Connection>emptyList() : e.nodes;
+  }
+
+  private List<Connection> fetch(String method) {
+    registryCalls.incrementAndGet();
+    ServerListRes res = registry.withDeadlineAfter(timeoutMs, TimeUnit.MILLISECONDS)
+        .findServers(FindServersReq.newBuilder().setServiceName(method).build());
+    if (!res.getIsSuccess()) {
+      return Collections.emptyList();
+    }
+    return Collections.unmodifiableList(new ArrayList<>(res.getConnectionsList()));
+  }
+}
@@ -0,0 +1,161 @@
+package example.grpcclient;
+
+import service.WeatherResponse;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of weather lookups keyed by location rounded to a 0.01 degree grid (about 1 km), so
+ * nearby coordinates and a city's name share one entry.
+ *
+ * A response is served as-is for {@code ttlMs}. For a further {@code staleMs} it is still served
+ * straight away, but the first such hit starts a refresh in the background (stale-while-revalidate).
+ * Lookups for a cell that is already being fetched wait for that fetch instead of starting another.
+ * A fetch is shared, so it runs on the fetcher's own timeout rather than any one caller's deadline;
+ * a caller that stops waiting cancels only its own copy. Failed lookups are never cached.
+ */
+class WeatherCache {
+
+    /**
+     * The upstream lookup behind a miss. The future completes with an unsuccessful response
+     * rather than exceptionally when the lookup fails.
+     */
+    interface Fetcher {
+        CompletableFuture<WeatherResponse> fetch(double lat, double lon);
+    }
+
+    private static final class Entry {
+        final WeatherResponse response;
+        final long fetchedAt;
+
+        Entry(WeatherResponse response, long fetchedAt) {
+            this.response = response;
+            this.fetchedAt = fetchedAt;
+        }
+    }
+
+    private final Fetcher upstream;
+    private final long ttlMs;
+    private final long staleMs;
+    private final int maxEntries;
+
+    private final ConcurrentHashMap<Long,Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long,CompletableFuture<WeatherResponse>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    WeatherCache(Fetcher upstream, long ttlMs, long staleMs, int maxEntries) {
+        this.upstream = upstream;
+        this.ttlMs = ttlMs;
+        this.staleMs = staleMs;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Weather at a place, from the cache or from upstream. Each caller gets its own future, so
+     * cancelling it does not affect other callers waiting on the same fetch.
+     */
+    CompletableFuture<WeatherResponse> get(double lat, double lon) {
+        long key = key(lat, lon);
+        Entry e = entries.get(key);
+        if (e != null) {
+            long age = System.currentTimeMillis() - e.fetchedAt;
+            if (age < ttlMs) {
+                hits.incrementAndGet();
+                return CompletableFuture.completedFuture(e.response);
+            }
+            if (age < ttlMs + staleMs) {
+                staleHits.incrementAndGet();
+                CompletableFuture<WeatherResponse> mine = new CompletableFuture<>();
+                if (inFlight.putIfAbsent(key, mine) == null) {
+                    fetch(key, lat, lon, mine);
+                }
+                return CompletableFuture.completedFuture(e.response);
+            }
+        }
+
+        CompletableFuture<WeatherResponse> mine = new CompletableFuture<>();
+        CompletableFuture<WeatherResponse> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            coalesced.incrementAndGet();
+            return running.copy();
+        }
+        misses.incrementAndGet();
+        fetch(key, lat, lon, mine);
+        return mine.copy();
+    }
+
+    private void fetch(long key, double lat, double lon, CompletableFuture<WeatherResponse> mine) {
+        CompletableFuture<WeatherResponse> res;
+        try {
+            res = upstream.fetch(lat, lon);
+        } catch (RuntimeException ex) {
+            res = CompletableFuture.failedFuture(ex);
+        }
+        res.whenComplete((r, err) -> {
+            if (err == null && r.getIsSuccess()) {
+                store(key, r);
+            }
+            inFlight.remove(key, mine);
+            if (err == null) {
+                mine.complete(r);
+            } else {
+                mine.completeExceptionally(err);
+            }
+        });
+    }
+
+    private void store(long key, WeatherResponse res) {
+        long now = System.currentTimeMillis();
+        entries.put(key, new Entry(res, now));
+        if (entries.size() > maxEntries) {
+            // drop what can no longer be served, then the oldest if that was not enough
+            entries.values().removeIf(e -> now - e.fetchedAt >= ttlMs + staleMs);
+            while (entries.size() > maxEntries) {
+                Map.Entry<Long,Entry> oldest = null;
+                for (Map.Entry<Long,Entry> c : entries.entrySet()) {
+                    if (oldest == null || c.getValue().fetchedAt < oldest.getValue().fetchedAt) {
+                        oldest = c;
+                    }
+                }
+                if (oldest == null) {
+                    break;
+                }
+                entries.remove(oldest.getKey(), oldest.getValue());
+            }
+        }
+    }
+
+    /** Latitude and longitude in hundredths of a degree, packed into one long. */
+    static long key(double lat, double lon) {
+        long la = Math.round(lat * 100);
+        long lo = Math.round(lon * 100);
+        return (la << 32) | (lo & 0xFFFFFFFFL);
+    }
+
+    long hits() {
+        return hits.get();
+    }
+
+    long staleHits() {
+        return staleHits.get();
+    }
+
+    long misses() {
+        return misses.get();
+    }
+
+    long coalesced() {
+        return coalesced.get();
+    }
+
+    int size() {
+        return entries.size();
+    }
+}
@@ -1,8 +1,8 @@
 package example.grpcclient;
 
 import com.google.protobuf.Empty;
+import io.grpc.Context;
 import io.grpc.stub.StreamObserver;
-import org.json.JSONArray;
 import org.json.JSONObject;
 import service.WeatherCoordinateRequest;
 import service.WeatherCityRequest;
@@ -10,16 +10,21 @@ import service.WeatherGrpc;
 import service.WeatherResponse;
 import service.CitiesResponse;
 
-import java.io.IOException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * Implements the Weather service against OpenWeatherMap’s One-Call API.
+ * Lookups go through a {@link WeatherCache}, so repeated and concurrent requests for the same
+ * place share one pair of upstream calls. Nothing blocks a gRPC thread: the HTTP calls are
+ * asynchronous and the response is sent from their completion.
  */
 public class WeatherImpl extends WeatherGrpc.WeatherImplBase {
 
@@ -30,11 +35,36 @@ public class WeatherImpl extends WeatherGrpc.WeatherImplBase {
             "NewYork",  new double[]{40.7128,  -74.0060}
     );
 
-    private static final String API_KEY = System.getenv("OPENWEATHER_API_KEY");
+    static final String OPENWEATHER_URL = "https://api.openweathermap.org";
+    static final long DEFAULT_TTL_MS    = 5 * 60 * 1000;
+    static final long DEFAULT_STALE_MS  = 15 * 60 * 1000;
+    static final int  MAX_CACHED_PLACES = 10_000;
+
+    static final Duration HTTP_TIMEOUT  = Duration.ofSeconds(5);
+
     private static final HttpClient HTTP = HttpClient.newBuilder()
-            .connectTimeout(Duration.ofSeconds(5))
+            .connectTimeout(HTTP_TIMEOUT)
             .build();
 
+    private final String baseUrl;
+    private final String apiKey;
+    final WeatherCache cache;
+
+    public WeatherImpl() {
+        this(OPENWEATHER_URL, System.getenv("OPENWEATHER_API_KEY"), DEFAULT_TTL_MS, DEFAULT_STALE_MS);
+    }
+
+    /**
+     * @param baseUrl scheme and host of the OpenWeatherMap API, or of a stand-in for tests
+     * @param ttlMs   how long a lookup is served without asking upstream again
+     * @param staleMs how much longer it is served while a refresh runs in the background
+     */
+    public WeatherImpl(String baseUrl, String apiKey, long ttlMs, long staleMs) {
+        this.baseUrl = baseUrl;
+        this.apiKey = apiKey;
+        this.cache = new WeatherCache(this::fetch, ttlMs, staleMs, MAX_CACHED_PLACES);
+    }
+
     @Override
     public void listCities(Empty _void, StreamObserver<CitiesResponse> obs) {
         CitiesResponse.Builder b = CitiesResponse.newBuilder()
@@ -69,7 +99,7 @@ public class WeatherImpl extends WeatherGrpc.WeatherImplBase {
     @Override
     public void atCoordinates(WeatherCoordinateRequest req,
                               StreamObserver<WeatherResponse> obs) {
-        if (API_KEY == null || API_KEY.isEmpty()) {
+        if (apiKey == null || apiKey.isEmpty()) {
             obs.onNext(WeatherResponse.newBuilder()
                     .setIsSuccess(false)
                     .setError("OPENWEATHER_API_KEY not set")
@@ -78,103 +108,107 @@ public class WeatherImpl extends WeatherGrpc.WeatherImplBase {
             return;
         }
 
-        double lat = req.getLatitude(), lon = req.getLongitude();
-
-        try {
-            // 1) Current weather
-            String currentUrl = String.format(
-                    "https://api.openweathermap.org/data/2.5/weather" +
-                            "?lat=%.6f&lon=%.6f&units=imperial&appid=%s",
-                    lat, lon, API_KEY);
-
-            HttpRequest curReq = HttpRequest.newBuilder()
-                    .uri(URI.create(currentUrl))
-                    .timeout(Duration.ofSeconds(5))
-                    .GET().build();
-
-            HttpResponse<String> curRes =
-                    HTTP.send(curReq, HttpResponse.BodyHandlers.ofString());
-
-            if (curRes.statusCode() != 200) {
-                obs.onNext(WeatherResponse.newBuilder()
-                        .setIsSuccess(false)
-                        .setError("Current-weather HTTP " + curRes.statusCode())
-                        .build());
-                obs.onCompleted();
-                return;
-            }
-
-            JSONObject curJson = new JSONObject(curRes.body());
-            double tempNow = curJson.getJSONObject("main").getDouble("temp");
-            String cond    = curJson
-                    .getJSONArray("weather")
-                    .getJSONObject(0)
-                    .getString("description");
-            double todayHigh = curJson.getJSONObject("main").getDouble("temp_max");
-
-            // 2) 5-day / 3-hour forecast
-            String forecastUrl = String.format(
-                    "https://api.openweathermap.org/data/2.5/forecast" +
-                            "?lat=%.6f&lon=%.6f&units=imperial&appid=%s",
-                    lat, lon, API_KEY);
-
-            HttpRequest fcReq = HttpRequest.newBuilder()
-                    .uri(URI.create(forecastUrl))
-                    .timeout(Duration.ofSeconds(5))
-                    .GET().build();
-
-            HttpResponse<String> fcRes =
-                    HTTP.send(fcReq, HttpResponse.BodyHandlers.ofString());
-
-            if (fcRes.statusCode() != 200) {
-                obs.onNext(WeatherResponse.newBuilder()
-                        .setIsSuccess(false)
-                        .setError("Forecast HTTP " + fcRes.statusCode())
-                        .build());
-                obs.onCompleted();
-                return;
+        // the upstream lookup may be shared with other calls, so it runs on HTTP_TIMEOUT; this
+        // call's own deadline only ends its wait
+        Context ctx = Context.current();
+        CompletableFuture<WeatherResponse> answer = cache.get(req.getLatitude(), req.getLongitude());
+
+        // a cancelled call or an expired deadline stops waiting; a shared lookup carries on for the others
+        Context.CancellationListener onCancel = c -> answer.cancel(false);
+        ctx.addListener(onCancel, Runnable::run);
+        answer.whenComplete((res, err) -> {
+            ctx.removeListener(onCancel);
+            if (answer.isCancelled()) {
+                return; // gRPC has already ended the call
             }
+            obs.onNext(err == null ? res : lookupFailed(err));
+            obs.onCompleted();
+        });
+    }
 
-            JSONObject fcJson = new JSONObject(fcRes.body());
-            JSONArray list    = fcJson.getJSONArray("list");
-
-            // Group by date (YYYY-MM-DD) → max temp
-            // Use LinkedHashMap to preserve insertion order (so days are in sequence)
-            Map<String,Double> dailyMax = new LinkedHashMap<>();
-            for (int i = 0; i < list.length(); i++) {
-                JSONObject item = list.getJSONObject(i);
-                String dtTxt    = item.getString("dt_txt");       // e.g. "2025-07-09 12:00:00"
-                String date     = dtTxt.substring(0, 10);
-                double tmax     = item.getJSONObject("main")
-                        .getDouble("temp_max");
-                dailyMax.merge(date, tmax, Math::max);
-            }
+    /**
+     * Asks OpenWeatherMap for the current weather and the 5-day forecast at one place. Both
+     * requests are sent at once and the response is built when the second one arrives, without
+     * holding a thread in between. Each request may take up to HTTP_TIMEOUT. Failures complete the
+     * future with an unsuccessful response.
+     */
+    CompletableFuture<WeatherResponse> fetch(double lat, double lon) {
+        // 1) Current weather
+        String currentUrl = String.format(
+                "%s/data/2.5/weather" +
+                        "?lat=%.6f&lon=%.6f&units=imperial&appid=%s",
+                baseUrl, lat, lon, apiKey);
+        // 2) 5-day / 3-hour forecast
+        String forecastUrl = String.format(
+                "%s/data/2.5/forecast" +
+                        "?lat=%.6f&lon=%.6f&units=imperial&appid=%s",
+                baseUrl, lat, lon, apiKey);
 
-            // 3) Build the proto response
-            WeatherResponse.Builder resp = WeatherResponse.newBuilder()
-                    .setIsSuccess(true)
-                    .setCurrentTemp(tempNow)
-                    .setCurrentConditions(cond)
-                    // first day’s high from the /weather call
-                    .addDailyHighs(todayHigh);
-
-            // now append highs for the *next* days
-            // skip the first date (today) if present in dailyMax
-            boolean skipFirst = true;
-            for (double high : dailyMax.values()) {
-                if (skipFirst) { skipFirst = false; continue; }
-                resp.addDailyHighs(high);
-            }
+        try {
+            CompletableFuture<HttpResponse<String>> current = HTTP.sendAsync(
+                    HttpRequest.newBuilder().uri(URI.create(currentUrl)).timeout(HTTP_TIMEOUT).GET().build(),
+                    HttpResponse.BodyHandlers.ofString());
+            // the forecast is a few dozen KB of which only the daily highs are kept, so it is
+            // reduced as it streams in rather than buffered and parsed into a tree
+            CompletableFuture<HttpResponse<double[]>> forecast = HTTP.sendAsync(
+                    HttpRequest.newBuilder().uri(URI.create(forecastUrl)).timeout(HTTP_TIMEOUT).GET().build(),
+                    ForecastParser.bodyHandler());
+
+            return current.thenCombine(forecast, WeatherImpl::toResponse)
+                    .exceptionally(WeatherImpl::lookupFailed);
+        } catch (RuntimeException e) {
+            // e.g. a base URL that is not a valid URI
+            return CompletableFuture.completedFuture(lookupFailed(e));
+        }
+    }
 
-            obs.onNext(resp.build());
-            obs.onCompleted();
+    private static WeatherResponse toResponse(HttpResponse<String> curRes, HttpResponse<double[]> fcRes) {
+        if (curRes.statusCode() != 200) {
+            return WeatherResponse.newBuilder()
+                    .setIsSuccess(false)
+                    .setError("Current-weather HTTP " + curRes.statusCode())
+                    .build();
         }
-        catch (IOException | InterruptedException e) {
-            obs.onNext(WeatherResponse.newBuilder()
+        if (fcRes.statusCode() != 200) {
+            return WeatherResponse.newBuilder()
                     .setIsSuccess(false)
-                    .setError("Weather lookup failed: " + e.getMessage())
-                    .build());
-            obs.onCompleted();
+                    .setError("Forecast HTTP " + fcRes.statusCode())
+                    .build();
+        }
+
+        JSONObject curJson = new JSONObject(curRes.body());
+        double tempNow = curJson.getJSONObject("main").getDouble("temp");
+        String cond    = curJson
+                .getJSONArray("weather")
+                .getJSONObject(0)
+                .getString("description");
+        double todayHigh = curJson.getJSONObject("main").getDouble("temp_max");
+
+        // max temp per date (YYYY-MM-DD), days in sequence
+        double[] dailyMax = fcRes.body();
+
+        // 3) Build the proto response
+        WeatherResponse.Builder resp = WeatherResponse.newBuilder()
+                .setIsSuccess(true)
+                .setCurrentTemp(tempNow)
+                .setCurrentConditions(cond)
+                // first day’s high from the /weather call
+                .addDailyHighs(todayHigh);
+
+        // now append highs for the *next* days
+        // skip the first date (today) if present in dailyMax
+        for (int i = 1; i < dailyMax.length; i++) {
+            resp.addDailyHighs(dailyMax[i]);
         }
+        return resp.build();
+    }
+
+    private static WeatherResponse lookupFailed(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        String reason = cause instanceof HttpTimeoutException ? "timed out" : cause.getMessage();
+        return WeatherResponse.newBuilder()
+                .setIsSuccess(false)
+                .setError("Weather lookup failed: " + reason)
+                .build();
     }
 }
\ No newline at end of file
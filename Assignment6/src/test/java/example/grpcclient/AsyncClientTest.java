@@ -0,0 +1,87 @@
+package example.grpcclient;
+
+import com.google.common.util.concurrent.SettableFuture;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.MethodDescriptor;
+import org.junit.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+public class AsyncClientTest {
+
+    // the limiter is tested on its own, so no call ever reaches the channel
+    private static final Channel NO_CHANNEL = new Channel() {
+        @Override
+        public <Q, R> ClientCall<Q, R> newCall(MethodDescriptor<Q, R> method, CallOptions options) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String authority() {
+            return "test";
+        }
+    };
+
+    private final List<SettableFuture<Integer>> sent = new ArrayList<>();
+
+    private CompletableFuture<Integer> send(AsyncClient client) {
+        return client.call(() -> {
+            SettableFuture<Integer> f = SettableFuture.create();
+            sent.add(f);
+            return f;
+        });
+    }
+
+    @Test
+    public void onlyMaxInFlightCallsAreSent() {
+        AsyncClient client = new AsyncClient(NO_CHANNEL, 3);
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            results.add(send(client));
+        }
+        assertEquals(3, sent.size());
+        assertEquals(3, client.inFlight());
+        assertEquals(7, client.queued());
+
+        // each answer lets exactly one more call go out, in the order they were made
+        for (int i = 0; i < 10; i++) {
+            sent.get(i).set(i);
+            assertEquals(i, (int) results.get(i).join());
+            assertEquals(Math.min(10, i + 4), sent.size());
+        }
+        assertEquals(0, client.inFlight());
+        assertEquals(0, client.queued());
+    }
+
+    @Test
+    public void allWaitsForFailedCallsToo() {
+        AsyncClient client = new AsyncClient(NO_CHANNEL, 4);
+        CompletableFuture<Integer> ok = send(client);
+        CompletableFuture<Integer> bad = send(client);
+        CompletableFuture<Void> both = AsyncClient.all(ok, bad);
+
+        sent.get(1).setException(new IllegalStateException("down"));
+        assertFalse(both.isDone());
+        sent.get(0).set(1);
+        assertTrue(both.isDone());
+        assertFalse(both.isCompletedExceptionally());
+        assertTrue(bad.isCompletedExceptionally());
+    }
+
+    @Test
+    public void callCancelledWhileQueuedIsNeverSent() {
+        AsyncClient client = new AsyncClient(NO_CHANNEL, 1);
+        send(client);
+        CompletableFuture<Integer> queued = send(client);
+        queued.cancel(true);
+        sent.get(0).set(0);
+        assertEquals(1, sent.size());
+        assertEquals(0, client.inFlight());
+    }
+}
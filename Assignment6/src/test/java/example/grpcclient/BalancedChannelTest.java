@@ -0,0 +1,199 @@
+package example.grpcclient;
+
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Server;
+import io.grpc.stub.StreamObserver;
+import org.junit.*;
+import service.ClientRequest;
+import service.Connection;
+import service.EchoGrpc;
+import service.FindServersReq;
+import service.RegistryGrpc;
+import service.ServerListRes;
+import service.ServerResponse;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class BalancedChannelTest {
+
+    /** Echo node that counts the calls it served and can hold them until released. */
+    private static class CountingEcho extends EchoImpl {
+        final AtomicInteger calls = new AtomicInteger();
+        volatile CountDownLatch hold;
+
+        @Override
+        public void parrot(ClientRequest req, StreamObserver<ServerResponse> obs) {
+            calls.incrementAndGet();
+            try {
+                if (hold != null) {
+                    hold.await(5, TimeUnit.SECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            super.parrot(req, obs);
+        }
+    }
+
+    /** Registry that lists every node for every method. */
+    private static class FakeRegistry extends RegistryGrpc.RegistryImplBase {
+        final List<Connection> nodes = new ArrayList<>();
+        final AtomicInteger lookups = new AtomicInteger();
+
+        @Override
+        public void findServers(FindServersReq req, StreamObserver<ServerListRes> obs) {
+            lookups.incrementAndGet();
+            obs.onNext(ServerListRes.newBuilder().setIsSuccess(true).addAllConnections(nodes).build());
+            obs.onCompleted();
+        }
+    }
+
+    private final List<Server> servers = new ArrayList<>();
+    private final CountingEcho echo1 = new CountingEcho();
+    private final CountingEcho echo2 = new CountingEcho();
+    private final FakeRegistry registry = new FakeRegistry();
+    private ManagedChannel regChannel;
+    private ManagedChannel fallback;
+    private ServiceDirectory directory;
+    private BalancedChannel balanced;
+    private Server node2;
+
+    @Before
+    public void start() throws IOException {
+        Server node1 = serve(echo1);
+        node2 = serve(echo2);
+        registry.nodes.add(connection(node1));
+        registry.nodes.add(connection(node2));
+        Server reg = serve(registry);
+
+        regChannel = ManagedChannelBuilder.forAddress("localhost", reg.getPort()).usePlaintext().build();
+        fallback = ManagedChannelBuilder.forAddress("localhost", node1.getPort()).usePlaintext().build();
+        directory = new ServiceDirectory(RegistryGrpc.newBlockingStub(regChannel), 60_000);
+        balanced = new BalancedChannel(directory, fallback);
+    }
+
+    @After
+    public void stop() throws InterruptedException {
+        balanced.shutdown();
+        regChannel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        fallback.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        for (Server s : servers) {
+            s.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void callsAreSpreadAndTheRegistryAskedOnce() {
+        EchoGrpc.EchoBlockingStub stub = EchoGrpc.newBlockingStub(balanced);
+        for (int i = 0; i < 100; i++) {
+            assertEquals("hi", stub.parrot(ClientRequest.newBuilder().setMessage("hi").build()).getMessage());
+        }
+        assertEquals(1, registry.lookups.get());
+        assertEquals(1, directory.registryCalls());
+        assertEquals(100, echo1.calls.get() + echo2.calls.get());
+        assertTrue(echo1.calls.get() > 10);
+        assertTrue(echo2.calls.get() > 10);
+    }
+
+    @Test
+    public void callsGoToTheNodeWithFewestInFlight() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        echo1.hold = release;
+        echo2.hold = release;
+        EchoGrpc.EchoStub async = EchoGrpc.newStub(balanced);
+        CountDownLatch answered = new CountDownLatch(4);
+        StreamObserver<ServerResponse> count = new StreamObserver<ServerResponse>() {
+            @Override public void onNext(ServerResponse value) { }
+            @Override public void onError(Throwable t) { }
+            @Override public void onCompleted() { answered.countDown(); }
+        };
+        for (int i = 0; i < 4; i++) {
+            async.parrot(ClientRequest.newBuilder().setMessage("held").build(), count);
+        }
+        Connection n1 = registry.nodes.get(0);
+        Connection n2 = registry.nodes.get(1);
+        // none has finished yet, so each node has been handed two
+        assertEquals(2, balanced.outstanding(n1.getUri(), n1.getPort()));
+        assertEquals(2, balanced.outstanding(n2.getUri(), n2.getPort()));
+
+        release.countDown();
+        assertTrue(answered.await(5, TimeUnit.SECONDS));
+        assertEquals(2, echo1.calls.get());
+        assertEquals(2, echo2.calls.get());
+        assertEquals(0, balanced.outstanding(n1.getUri(), n1.getPort()));
+    }
+
+    @Test
+    public void deadNodeIsDropped() throws InterruptedException {
+        EchoGrpc.EchoBlockingStub stub = EchoGrpc.newBlockingStub(balanced);
+        stub.parrot(ClientRequest.newBuilder().setMessage("warm").build());
+        node2.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+
+        int failures = 0;
+        for (int i = 0; i < 20; i++) {
+            try {
+                stub.parrot(ClientRequest.newBuilder().setMessage("hi").build());
+            } catch (RuntimeException e) {
+                failures++;
+            }
+        }
+        // at most the one call that found the node gone fails; the rest go to node 1
+        assertTrue(failures <= 1);
+        assertEquals(1, directory.lookup(EchoGrpc.getParrotMethod().getFullMethodName()).size());
+        // no answer lists node 2 any more, so its channel is gone too
+        assertEquals(1, balanced.pooled());
+        assertEquals(0, balanced.outstanding(registry.nodes.get(1).getUri(), registry.nodes.get(1).getPort()));
+    }
+
+    @Test
+    public void aHangingRegistryBlocksNoOneForLong() throws Exception {
+        Server silent = serve(new RegistryGrpc.RegistryImplBase() {
+            @Override
+            public void findServers(FindServersReq req, StreamObserver<ServerListRes> obs) {
+                // never answers
+            }
+        });
+        ManagedChannel silentChannel = ManagedChannelBuilder.forAddress("localhost", silent.getPort()).usePlaintext().build();
+        try {
+            ServiceDirectory slow = new ServiceDirectory(RegistryGrpc.newBlockingStub(silentChannel), 60_000, 300);
+            String parrot = EchoGrpc.getParrotMethod().getFullMethodName();
+            long start = System.nanoTime();
+            Thread first = new Thread(() -> slow.lookup(parrot));
+            first.start();
+            Thread.sleep(50);
+            // the lookup in flight holds no lock, so invalidating goes straight through
+            slow.invalidate(registry.nodes.get(0));
+            assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(250));
+            // callers of the same method wait for the one registry call, which has a deadline
+            assertEquals(List.of(), slow.lookup(parrot));
+            first.join(2_000);
+            assertFalse(first.isAlive());
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+            assertEquals(1, slow.registryCalls());
+        } finally {
+            silentChannel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private Server serve(io.grpc.BindableService service) throws IOException {
+        Server s = io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder
+                .forPort(0)
+                .addService(service)
+                .build()
+                .start();
+        servers.add(s);
+        return s;
+    }
+
+    private static Connection connection(Server s) {
+        return Connection.newBuilder().setUri("localhost").setPort(s.getPort()).setProtocol("Grpc").build();
+    }
+}
@@ -0,0 +1,67 @@
+package example.grpcclient;
+
+import org.junit.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class ForecastParserTest {
+
+    private static double[] parse(String json) {
+        ForecastParser parser = new ForecastParser();
+        parser.feed(json.getBytes(StandardCharsets.UTF_8));
+        return parser.finish();
+    }
+
+    @Test
+    public void oneHighPerDay() {
+        assertArrayEquals(new double[]{60, 61, 62, 63, 64}, parse(StubWeatherServer.forecast(5)), 0);
+    }
+
+    @Test
+    public void chunkBoundariesDoNotMatter() {
+        byte[] body = StubWeatherServer.forecast(2).getBytes(StandardCharsets.UTF_8);
+        for (int split = 0; split <= body.length; split++) {
+            ForecastParser parser = new ForecastParser();
+            parser.feed(ByteBuffer.wrap(body, 0, split));
+            parser.feed(ByteBuffer.wrap(body, split, body.length - split));
+            assertArrayEquals("split at " + split, new double[]{60, 61}, parser.finish(), 0);
+        }
+
+        ForecastParser parser = new ForecastParser();
+        for (byte b : body) {
+            parser.feed(new byte[]{b});
+        }
+        assertArrayEquals(new double[]{60, 61}, parser.finish(), 0);
+    }
+
+    @Test
+    public void fullResponseShape() {
+        String json = "{\"cod\":\"200\",\"message\":0,\"cnt\":3,\"list\":[\n"
+                + "  {\"dt\":1752055200,\"main\":{\"temp\":71.2,\"temp_min\":70.1,\"temp_max\":72.45,\"pressure\":1015},"
+                + "\"weather\":[{\"id\":800,\"main\":\"Clear\",\"description\":\"sky \\\"clear\\\" \\u00e9\"}],"
+                + "\"rain\":null,\"sys\":{\"pod\":\"d\"},\"dt_txt\":\"2025-07-09 09:00:00\"},\n"
+                // dt_txt before main, an exponent, and a nested temp_max that is not the entry's
+                + "  {\"dt_txt\":\"2025-07-09 12:00:00\",\"extra\":{\"main\":{\"temp_max\":999}},"
+                + "\"main\":{\"temp_max\":7.5e1},\"visible\":true},\n"
+                + "  {\"main\":{\"temp_max\":-3.25},\"dt_txt\":\"2025-07-10 00:00:00\"}\n"
+                + "],\"city\":{\"name\":\"list\",\"main\":{\"temp_max\":500},\"coord\":{\"lat\":47.6,\"lon\":-122.3}}}";
+        assertArrayEquals(new double[]{75, -3.25}, parse(json), 0);
+    }
+
+    @Test
+    public void plainDecimalsMatchDoubleParse() {
+        String[] temps = {"0.1", "72.45", "-0.3", "100", "98.60000000000001", "0.0000001", "1234567.891"};
+        for (String t : temps) {
+            String json = "{\"list\":[{\"main\":{\"temp_max\":" + t + "},\"dt_txt\":\"2025-07-09 00:00:00\"}]}";
+            assertEquals(t, Double.parseDouble(t), parse(json)[0], 0);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void missingListIsAnError() {
+        parse("{\"cod\":\"401\",\"message\":\"Invalid API key\"}");
+    }
+}
@@ -0,0 +1,10 @@
+package example.grpcclient;
+
+/** The Node contract over gRPC's in-process transport: no sockets, runs anywhere. */
+public class InProcessContractTest extends NodeContract {
+
+    @Override
+    protected NodeHarness.Transport transport() {
+        return NodeHarness.Transport.IN_PROCESS;
+    }
+}
@@ -0,0 +1,83 @@
+package example.grpcclient;
+
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.stub.StreamObserver;
+import service.JokeGrpc;
+import service.JokeReq;
+import service.JokeRes;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of getJoke under many concurrent callers: first straight against JokeImpl, which
+ * shows what the joke store itself costs, then over gRPC on a loopback port. Each caller asks
+ * for one joke at a time in a loop.
+ *
+ * Usage: JokeBenchmark [callers=64] [seconds=10]  (gradle runJokeBenchmark -Pcallers=64 -Pseconds=10)
+ */
+public class JokeBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int callers = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        JokeImpl jokes = new JokeImpl();
+        JokeReq req = JokeReq.newBuilder().setNumber(1).build();
+
+        StreamObserver<JokeRes> discard = new StreamObserver<JokeRes>() {
+            @Override public void onNext(JokeRes value) { }
+            @Override public void onError(Throwable t) { }
+            @Override public void onCompleted() { }
+        };
+        run("in-process", callers, seconds, () -> jokes.getJoke(req, discard));
+
+        Server server = ServerBuilder.forPort(0).addService(jokes).build().start();
+        ManagedChannel channel = ManagedChannelBuilder.forAddress("localhost", server.getPort())
+                .usePlaintext()
+                .build();
+        try {
+            JokeGrpc.JokeBlockingStub stub = JokeGrpc.newBlockingStub(channel);
+            run("grpc", callers, seconds, () -> stub.getJoke(req));
+        } finally {
+            channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+            server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private static void run(String name, int callers, int seconds, Runnable call) throws InterruptedException {
+        // one second of warm-up, not counted
+        measure(callers, 1, call, new LatencyHistogram());
+
+        LatencyHistogram latency = new LatencyHistogram();
+        long start = System.nanoTime();
+        measure(callers, seconds, call, latency);
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%-10s %3d callers: %,10.0f calls/s  %s%n",
+                name, callers, latency.count() / elapsed, latency.summary());
+    }
+
+    private static void measure(int callers, int seconds, Runnable call, LatencyHistogram latency)
+            throws InterruptedException {
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        CountDownLatch finished = new CountDownLatch(callers);
+        for (int t = 0; t < callers; t++) {
+            Thread thread = new Thread(() -> {
+                long now = System.nanoTime();
+                while (now < end) {
+                    call.run();
+                    long after = System.nanoTime();
+                    latency.record(after - now);
+                    now = after;
+                }
+                finished.countDown();
+            });
+            thread.start();
+        }
+        finished.await();
+    }
+}
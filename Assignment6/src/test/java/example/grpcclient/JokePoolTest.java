@@ -0,0 +1,89 @@
+package example.grpcclient;
+
+import org.junit.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.Assert.*;
+
+public class JokePoolTest {
+
+    @Test
+    public void emptyJokesAreSkipped() {
+        JokePool pool = new JokePool();
+        assertEquals(2, pool.addAll(List.of("a", "", "b")));
+        assertFalse(pool.add(""));
+        assertEquals(2, pool.size());
+
+        List<String> told = new ArrayList<>();
+        pool.pick(5, false, told::add);
+        assertEquals(List.of("a", "b", "a", "b", "a"), told);
+    }
+
+    @Test
+    public void concurrentCallersShareRoundRobinEvenly() throws Exception {
+        JokePool pool = new JokePool();
+        for (int i = 0; i < 8; i++) {
+            pool.add("joke " + i);
+        }
+        Map<String,LongAdder> counts = new ConcurrentHashMap<>();
+        ExecutorService callers = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<?>> done = new ArrayList<>();
+            for (int t = 0; t < 16; t++) {
+                done.add(callers.submit(() -> {
+                    for (int i = 0; i < 1000; i++) {
+                        pool.pick(3, false, j -> counts.computeIfAbsent(j, k -> new LongAdder()).increment());
+                    }
+                }));
+            }
+            for (Future<?> f : done) {
+                f.get();
+            }
+        } finally {
+            callers.shutdown();
+        }
+        // 48000 picks over 8 jokes, and no pick is handed out twice
+        assertEquals(8, counts.size());
+        for (LongAdder c : counts.values()) {
+            assertEquals(6000, c.sum());
+        }
+    }
+
+    @Test
+    public void readersNeverSeeAHalfAddedBatch() throws Exception {
+        JokePool pool = new JokePool();
+        pool.add("first");
+        CountDownLatch stop = new CountDownLatch(1);
+        ExecutorService readers = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> done = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                done.add(readers.submit(() -> {
+                    while (stop.getCount() > 0) {
+                        pool.pick(4, true, j -> assertNotNull(j));
+                        pool.pick(4, false, j -> assertNotNull(j));
+                    }
+                }));
+            }
+            for (int i = 0; i < 2000; i++) {
+                pool.addAll(List.of("a" + i, "b" + i, "c" + i));
+            }
+            stop.countDown();
+            for (Future<?> f : done) {
+                f.get();
+            }
+        } finally {
+            readers.shutdown();
+        }
+        assertEquals(6001, pool.size());
+    }
+}
@@ -0,0 +1,35 @@
+package example.grpcclient;
+
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void everyValueFallsInsideItsBucket() {
+        for (long us = 0; us < 1_000_000; us += 1 + us / 50) {
+            int i = LatencyHistogram.index(us);
+            assertTrue(us + " below bucket", LatencyHistogram.lower(i) <= us);
+            assertTrue(us + " above bucket", LatencyHistogram.upper(i) >= us);
+            // buckets are at most 1/8 of their lower bound wide
+            assertTrue(LatencyHistogram.upper(i) - LatencyHistogram.lower(i) <= Math.max(0, LatencyHistogram.lower(i) / 8));
+        }
+        assertEquals(LatencyHistogram.upper(LatencyHistogram.index(Long.MAX_VALUE)), Long.MAX_VALUE);
+    }
+
+    @Test
+    public void percentilesAreWithinOneBucket() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int ms = 1; ms <= 100; ms++) {
+            h.record(ms * 1_000_000L);
+        }
+        assertEquals(100, h.count());
+        long p50 = h.percentile(0.5);
+        assertTrue(p50 >= 50_000 && p50 <= 50_000 * 9 / 8);
+        long p99 = h.percentile(0.99);
+        assertTrue(p99 >= 99_000 && p99 <= 100_000);
+        assertEquals(100_000, h.percentile(1.0));
+        assertEquals(100_000, h.maxMicros());
+    }
+}
@@ -0,0 +1,169 @@
+package example.grpcclient;
+
+import org.junit.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class LogNoteStoreTest {
+    private Path dir;
+
+    @Before
+    public void createDir() throws IOException {
+        dir = Files.createTempDirectory("notes");
+    }
+
+    @After
+    public void deleteDir() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    public void notesSurviveRestart() throws IOException {
+        long kept, gone;
+        try (LogNoteStore store = new LogNoteStore(dir)) {
+            kept = store.create("keep me");
+            gone = store.create("delete me");
+            assertTrue(store.delete(gone));
+        }
+
+        try (LogNoteStore store = new LogNoteStore(dir)) {
+            assertEquals("keep me", store.after(0).get(kept));
+            assertFalse(store.after(0).containsKey(gone));
+            // IDs are never handed out twice, even the deleted one
+            assertTrue(store.create("new") > gone);
+        }
+    }
+
+    @Test
+    public void tornRecordAtEndOfLogIsDropped() throws IOException {
+        long id;
+        try (LogNoteStore store = new LogNoteStore(dir, 0, true, Long.MAX_VALUE)) {
+            id = store.create("complete");
+        }
+        // half of a record, as if the node died mid-write
+        Files.write(dir.resolve(LogNoteStore.LOG), new byte[]{0, 0, 0, 20, 1, 2},
+                StandardOpenOption.APPEND);
+
+        try (LogNoteStore store = new LogNoteStore(dir)) {
+            assertEquals(1, store.after(0).size());
+            assertEquals("complete", store.after(0).get(id));
+            long next = store.create("after crash");
+            assertEquals("after crash", store.after(id).get(next));
+        }
+        try (LogNoteStore store = new LogNoteStore(dir)) {
+            assertEquals(2, store.after(0).size());
+        }
+    }
+
+    @Test
+    public void compactionDropsDeletedNotes() throws IOException {
+        List<Long> live = new ArrayList<>();
+        try (LogNoteStore store = new LogNoteStore(dir, 0, true, 4096)) {
+            for (int i = 0; i < 200; i++) {
+                long id = store.create("note number " + i);
+                if (i % 4 == 0) {
+                    live.add(id);
+                } else {
+                    store.delete(id);
+                }
+            }
+            assertTrue(store.compactions() > 0);
+            assertTrue(store.logBytes() < 4096);
+        }
+        assertTrue(Files.exists(dir.resolve(LogNoteStore.SNAPSHOT)));
+
+        try (LogNoteStore store = new LogNoteStore(dir)) {
+            assertEquals(live, new ArrayList<>(store.after(0).keySet()));
+        }
+    }
+
+    @Test
+    public void notesDeletedAsSoonAsTheyAppearStayDeletedAfterRestart() throws Exception {
+        Set<Long> deleted = ConcurrentHashMap.newKeySet();
+        try (LogNoteStore store = new LogNoteStore(dir, 0, false, Long.MAX_VALUE)) {
+            AtomicBoolean creating = new AtomicBoolean(true);
+            Thread deleter = new Thread(() -> {
+                try {
+                    while (creating.get() || !store.after(0).isEmpty()) {
+                        for (long id : store.after(0).keySet()) {
+                            if (store.delete(id)) {
+                                deleted.add(id);
+                            }
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            deleter.start();
+            for (int i = 0; i < 5000; i++) {
+                store.create("short-lived " + i);
+            }
+            creating.set(false);
+            deleter.join();
+        }
+        assertEquals(5000, deleted.size());
+
+        try (LogNoteStore store = new LogNoteStore(dir)) {
+            assertEquals(List.of(), new ArrayList<>(store.after(0).keySet()));
+        }
+    }
+
+    @Test
+    public void corruptSnapshotFailsStartup() throws IOException {
+        try (LogNoteStore store = new LogNoteStore(dir, 0, true, 1024)) {
+            for (int i = 0; i < 100; i++) {
+                store.create("snapshotted note " + i);
+            }
+            assertTrue(store.compactions() > 0);
+        }
+        Path snapshot = dir.resolve(LogNoteStore.SNAPSHOT);
+        byte[] bytes = Files.readAllBytes(snapshot);
+        bytes[bytes.length / 2] ^= 0x55;
+        Files.write(snapshot, bytes);
+
+        try (LogNoteStore store = new LogNoteStore(dir)) {
+            fail("opened a store with a corrupt snapshot: " + store.after(0).size() + " notes");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Corrupt note snapshot"));
+        }
+    }
+
+    @Test
+    public void concurrentWritersShareCommits() throws Exception {
+        ExecutorService writers = Executors.newFixedThreadPool(8);
+        try (LogNoteStore store = new LogNoteStore(dir, 0, true, Long.MAX_VALUE)) {
+            List<Future<Long>> ids = new ArrayList<>();
+            for (int i = 0; i < 400; i++) {
+                String text = "concurrent " + i;
+                ids.add(writers.submit(() -> store.create(text)));
+            }
+            for (Future<Long> id : ids) {
+                assertTrue(id.get() > 0);
+            }
+        } finally {
+            writers.shutdown();
+        }
+
+        try (LogNoteStore store = new LogNoteStore(dir)) {
+            assertEquals(400, store.after(0).size());
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package example.grpcclient;
+
+/** The Node contract over Netty on a loopback port, as real clients reach a node. */
+public class NettyContractTest extends NodeContract {
+
+    @Override
+    protected NodeHarness.Transport transport() {
+        return NodeHarness.Transport.NETTY;
+    }
+}
@@ -0,0 +1,186 @@
+package example.grpcclient;
+
+import com.google.protobuf.Empty;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import service.*;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * What every Node service promises its callers, checked against a NodeHarness. Subclasses pick
+ * the transport, so the same contract is checked in memory and over a socket.
+ */
+public abstract class NodeContract {
+
+    protected NodeHarness node;
+    private EchoGrpc.EchoBlockingStub echo;
+    private JokeGrpc.JokeBlockingStub jokes;
+    private CaesarGrpc.CaesarBlockingStub caesar;
+    private WeatherGrpc.WeatherBlockingStub weather;
+    private NoteServiceGrpc.NoteServiceBlockingStub notes;
+    private RegistryGrpc.RegistryBlockingStub registry;
+    private MetricsGrpc.MetricsBlockingStub metrics;
+
+    protected abstract NodeHarness.Transport transport();
+
+    @Before
+    public void startNode() throws Exception {
+        node = NodeHarness.start(transport());
+        echo = EchoGrpc.newBlockingStub(node.channel());
+        jokes = JokeGrpc.newBlockingStub(node.channel());
+        caesar = CaesarGrpc.newBlockingStub(node.channel());
+        weather = WeatherGrpc.newBlockingStub(node.channel());
+        notes = NoteServiceGrpc.newBlockingStub(node.channel());
+        registry = RegistryGrpc.newBlockingStub(node.channel());
+        metrics = MetricsGrpc.newBlockingStub(node.channel());
+    }
+
+    @After
+    public void stopNode() throws Exception {
+        node.close();
+    }
+
+    @Test
+    public void echoParrotsOrRefusesEmptyMessages() {
+        ServerResponse ok = echo.parrot(ClientRequest.newBuilder().setMessage("contract").build());
+        assertTrue(ok.getIsSuccess());
+        assertEquals("contract", ok.getMessage());
+
+        ServerResponse empty = echo.parrot(ClientRequest.getDefaultInstance());
+        assertFalse(empty.getIsSuccess());
+        assertEquals("No message provided", empty.getError());
+    }
+
+    @Test
+    public void jokesAreToldAddedAndStreamed() {
+        assertEquals(3, jokes.getJoke(JokeReq.newBuilder().setNumber(3).build()).getJokeCount());
+
+        JokeSetRes added = jokes.setJoke(JokeSetReq.newBuilder().setJoke("first").addMore("second").build());
+        assertTrue(added.getOk());
+        assertEquals("Added 2 of 2 jokes", added.getMessage());
+        assertFalse(jokes.setJoke(JokeSetReq.newBuilder().setJoke("").build()).getOk());
+
+        Iterator<JokeItem> stream = jokes.streamJokes(JokeReq.newBuilder().setNumber(50).build());
+        int told = 0;
+        while (stream.hasNext()) {
+            assertFalse(stream.next().getJoke().isEmpty());
+            told++;
+        }
+        assertEquals(50, told);
+    }
+
+    @Test
+    public void passwordsRoundTripOneByOneAndInBulk() {
+        assertTrue(caesar.encrypt(SaveReq.newBuilder().setName("mail").setPassword("Secr3t!").build()).getOk());
+        PasswordRes mail = caesar.decrypt(PasswordReq.newBuilder().setName("mail").build());
+        assertTrue(mail.getOk());
+        assertEquals("Secr3t!", mail.getPassword());
+        assertTrue(caesar.listPasswords(Empty.getDefaultInstance()).getPassListList().contains("mail"));
+
+        PasswordRes missing = caesar.decrypt(PasswordReq.newBuilder().setName("nobody").build());
+        assertFalse(missing.getOk());
+        assertEquals("No password saved under name: nobody", missing.getError());
+
+        SaveBatchRes batch = caesar.encryptBatch(SaveBatchReq.newBuilder()
+                .addEntries(SaveReq.newBuilder().setName("a").setPassword("pa"))
+                .addEntries(SaveReq.newBuilder().setName("").setPassword("pb"))
+                .addEntries(SaveReq.newBuilder().setName("c").setPassword("pc"))
+                .build());
+        assertEquals(2, batch.getSaved());
+        assertEquals(1, batch.getFailed(0).getIndex());
+
+        PasswordBatchRes found = caesar.decryptBatch(PasswordBatchReq.newBuilder()
+                .addNames("c").addNames("nobody").addNames("a").build());
+        assertEquals("pc", found.getResults(0).getPassword());
+        assertFalse(found.getResults(1).getOk());
+        assertEquals("pa", found.getResults(2).getPassword());
+    }
+
+    @Test
+    public void weatherComesFromTheUpstreamAndIsCached() {
+        assertTrue(weather.listCities(Empty.getDefaultInstance()).getCityNameList().contains("Seattle"));
+
+        WeatherResponse seattle = weather.inCity(WeatherCityRequest.newBuilder().setCityName("Seattle").build());
+        assertTrue(seattle.getError(), seattle.getIsSuccess());
+        assertEquals(List.of(80.0, 61.0, 62.0, 63.0, 64.0), seattle.getDailyHighsList());
+        assertEquals(seattle, weather.inCity(WeatherCityRequest.newBuilder().setCityName("Seattle").build()));
+        assertEquals(1, node.upstream.currentCalls());
+
+        WeatherResponse nowhere = weather.inCity(WeatherCityRequest.newBuilder().setCityName("Atlantis").build());
+        assertFalse(nowhere.getIsSuccess());
+        assertEquals("Unknown city: Atlantis", nowhere.getError());
+    }
+
+    @Test
+    public void notesAreCreatedListedSearchedAndDeleted() {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            CreateNoteResponse created = notes.createNote(CreateNoteRequest.newBuilder()
+                    .setNote(i % 3 == 0 ? "contract apple " + i : "contract pear " + i).build());
+            assertTrue(created.getOk());
+            ids.add(created.getId());
+        }
+        assertEquals("Note cannot be empty", notes.createNote(CreateNoteRequest.getDefaultInstance()).getError());
+
+        List<Long> paged = new ArrayList<>();
+        GetNotesPageResponse page = GetNotesPageResponse.getDefaultInstance();
+        do {
+            page = notes.getNotesPage(GetNotesPageRequest.newBuilder()
+                    .setCursor(page.getNextCursor()).setPageSize(7).build());
+            assertTrue(page.getNotesCount() <= 7);
+            page.getNotesList().forEach(n -> paged.add(n.getId()));
+        } while (page.getHasMore());
+        assertEquals(ids, paged);
+
+        List<Long> streamed = new ArrayList<>();
+        notes.listNotes(ListNotesRequest.getDefaultInstance()).forEachRemaining(n -> streamed.add(n.getId()));
+        assertEquals(ids, streamed);
+        assertEquals(30, notes.getNotes(Empty.getDefaultInstance()).getNotesCount());
+
+        SearchNotesResponse apples = notes.searchNotes(SearchNotesRequest.newBuilder().setQuery("apple").setLimit(100).build());
+        assertEquals(10, apples.getResultsCount());
+
+        assertTrue(notes.deleteNote(DeleteNoteRequest.newBuilder().setId(ids.get(0)).build()).getOk());
+        DeleteNoteResponse again = notes.deleteNote(DeleteNoteRequest.newBuilder().setId(ids.get(0)).build());
+        assertFalse(again.getOk());
+        assertEquals("No note with ID " + ids.get(0), again.getError());
+    }
+
+    @Test
+    public void registryAnswerListsEveryMethodWithItsVersion() {
+        ServicesListRes list = registry.getServices(GetServicesReq.getDefaultInstance());
+        assertTrue(list.getIsSuccess());
+        assertEquals(1, list.getVersion());
+        assertTrue(list.getServicesList().contains(EchoGrpc.getParrotMethod().getFullMethodName()));
+        assertTrue(list.getServicesList().contains(NoteServiceGrpc.getSearchNotesMethod().getFullMethodName()));
+        assertTrue(list.getServicesList().contains(MetricsGrpc.getGetMetricsMethod().getFullMethodName()));
+
+        ServiceChangesRes none = registry.getServiceChanges(ServiceChangesReq.newBuilder().setSinceVersion(1).build());
+        assertEquals(1, none.getVersion());
+        assertEquals(0, none.getAddedCount() + none.getRemovedCount());
+        ServiceChangesRes full = registry.getServiceChanges(ServiceChangesReq.getDefaultInstance());
+        assertTrue(full.getFull());
+        assertEquals(list.getServicesList(), full.getAddedList());
+    }
+
+    @Test
+    public void metricsCountTheCallsMade() {
+        for (int i = 0; i < 5; i++) {
+            echo.parrot(ClientRequest.newBuilder().setMessage("count me").build());
+        }
+        MetricsRes res = metrics.getMetrics(MetricsReq.newBuilder().setPrefix("services.Echo/").build());
+        assertEquals(1, res.getMethodsCount());
+        MethodMetrics parrot = res.getMethods(0);
+        assertEquals(5, parrot.getStarted());
+        assertEquals(0, parrot.getInFlight());
+        assertEquals("OK", parrot.getStatuses(0).getCode());
+        assertEquals(5, parrot.getStatuses(0).getCount());
+        assertTrue(parrot.getResponseBytes() > parrot.getRequestBytes());
+    }
+}
@@ -0,0 +1,81 @@
+package example.grpcclient;
+
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Server;
+import io.grpc.ServerMethodDefinition;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every service a Node offers on one server, wired as Node wires them (metrics, catalogue), with
+ * notes in memory and weather served by a StubWeatherServer. Nothing outside the JVM is needed.
+ *
+ * IN_PROCESS uses gRPC's in-process transport: calls are handed over in memory and run on the
+ * calling thread, so no socket, no Netty and no thread hand-off is involved. NETTY runs the same
+ * server on a loopback port, also with direct executors, so the two differ only in the transport.
+ */
+class NodeHarness implements AutoCloseable {
+
+    enum Transport { IN_PROCESS, NETTY }
+
+    final Transport transport;
+    final ServerMetrics metrics = new ServerMetrics();
+    final ServiceCatalog catalog = new ServiceCatalog();
+    final StubWeatherServer upstream;
+    private final Server server;
+    private final ManagedChannel channel;
+
+    private NodeHarness(Transport transport) throws IOException {
+        this.transport = transport;
+        upstream = new StubWeatherServer();
+        WeatherImpl weather = new WeatherImpl(upstream.baseUrl(), "test-key", 60_000, 60_000);
+        NodeProfile profile = NodeProfile.load(NodeProfile.DEFAULT);
+
+        if (transport == Transport.IN_PROCESS) {
+            String name = InProcessServerBuilder.generateName();
+            InProcessServerBuilder builder = InProcessServerBuilder.forName(name).directExecutor();
+            Node.addServices(builder, profile, metrics, Node.services(new InMemoryNoteStore(), weather, catalog, metrics));
+            server = builder.build().start();
+            channel = InProcessChannelBuilder.forName(name).directExecutor().build();
+        } else {
+            NettyServerBuilder builder = NettyServerBuilder.forPort(0).directExecutor();
+            Node.addServices(builder, profile, metrics, Node.services(new InMemoryNoteStore(), weather, catalog, metrics));
+            server = builder.build().start();
+            channel = ManagedChannelBuilder.forAddress("localhost", server.getPort())
+                    .usePlaintext()
+                    .directExecutor()
+                    .build();
+        }
+
+        List<String> methods = new ArrayList<>();
+        server.getServices().forEach(s -> {
+            for (ServerMethodDefinition<?, ?> m : s.getMethods()) {
+                methods.add(m.getMethodDescriptor().getFullMethodName());
+            }
+        });
+        catalog.publish(methods);
+    }
+
+    static NodeHarness start(Transport transport) throws IOException {
+        return new NodeHarness(transport);
+    }
+
+    /** A channel to the node; it belongs to the harness. */
+    ManagedChannel channel() {
+        return channel;
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        upstream.close();
+    }
+}
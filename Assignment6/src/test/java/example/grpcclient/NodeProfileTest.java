@@ -0,0 +1,140 @@
+package example.grpcclient;
+
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.Status;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class NodeProfileTest {
+
+    @Test
+    public void builtInProfiles() throws IOException {
+        NodeProfile defaults = NodeProfile.load("");
+        assertEquals("default", defaults.name);
+        assertEquals(NodeProfile.ExecutorKind.CACHED, defaults.executor);
+        assertEquals(0, defaults.limitFor("services.Echo"));
+        assertNull(defaults.newExecutor());
+
+        NodeProfile throughput = NodeProfile.load("throughput");
+        assertEquals(NodeProfile.ExecutorKind.FORKJOIN, throughput.executor);
+        assertEquals(512, throughput.limitFor("services.Echo"));
+        assertEquals(64, throughput.limitFor("services.Weather"));
+        assertEquals(1048576, throughput.flowControlWindow);
+        assertEquals(60_000, throughput.keepAliveTimeMs);
+        assertTrue(throughput.permitKeepAliveWithoutCalls);
+        ExecutorService pool = throughput.newExecutor();
+        assertTrue(pool instanceof ForkJoinPool);
+        assertEquals(Runtime.getRuntime().availableProcessors(), ((ForkJoinPool) pool).getParallelism());
+        pool.shutdown();
+
+        assertEquals(NodeProfile.ExecutorKind.VIRTUAL, NodeProfile.load("virtual").executor);
+        assertEquals(NodeProfile.ExecutorKind.DIRECT, NodeProfile.load("direct").executor);
+        assertNull(NodeProfile.load("direct").newExecutor());
+    }
+
+    @Test
+    public void profileFromFile() throws IOException {
+        Path dir = Files.createTempDirectory("profiles");
+        Path file = dir.resolve("tuned.properties");
+        try {
+            Files.writeString(file, "executor = ForkJoin\nexecutor.threads=3\nlimit.default=10\n"
+                    + "limit.service.NoteService=0\nmaxConnectionIdle.ms=5000\n");
+            NodeProfile profile = NodeProfile.load(file.toString());
+            assertEquals("tuned", profile.name);
+            assertEquals(3, profile.threads);
+            assertEquals(10, profile.limitFor("services.Joke"));
+            assertEquals(0, profile.limitFor("service.NoteService"));
+            assertEquals(5000, profile.maxConnectionIdleMs);
+            assertEquals(0, profile.flowControlWindow);
+            ExecutorService pool = profile.newExecutor();
+            assertEquals(3, ((ForkJoinPool) pool).getParallelism());
+            pool.shutdown();
+        } finally {
+            Files.deleteIfExists(file);
+            Files.delete(dir);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownProfile() throws IOException {
+        NodeProfile.load("no-such-profile");
+    }
+
+    @Test
+    public void badValuesAreRejected() {
+        for (String bad : new String[] {"executor=pooled", "limit.default=-1", "flowControlWindow=1MB",
+                "flowControlWindow=99999999999"}) {
+            Properties p = new Properties();
+            p.setProperty(bad.substring(0, bad.indexOf('=')), bad.substring(bad.indexOf('=') + 1));
+            try {
+                NodeProfile.of("bad", p);
+                fail("accepted " + bad);
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage().startsWith("bad: "));
+            }
+        }
+    }
+
+    @Test
+    public void shedderRefusesCallsOverTheLimitAndFreesSlots() {
+        LoadShedder shedder = new LoadShedder(2);
+        ServerCallHandler<String, String> handler = (call, headers) -> new ServerCall.Listener<String>() { };
+
+        RecordingCall first = new RecordingCall();
+        RecordingCall second = new RecordingCall();
+        RecordingCall third = new RecordingCall();
+        ServerCall.Listener<String> l1 = shedder.interceptCall(first, new Metadata(), handler);
+        ServerCall.Listener<String> l2 = shedder.interceptCall(second, new Metadata(), handler);
+        shedder.interceptCall(third, new Metadata(), handler);
+        assertNull(first.closed);
+        assertNull(second.closed);
+        assertEquals(Status.Code.RESOURCE_EXHAUSTED, third.closed.getCode());
+        assertEquals(2, shedder.inFlight());
+        assertEquals(1, shedder.shed());
+
+        l1.onComplete();
+        l1.onCancel(); // a slot is only given back once
+        assertEquals(1, shedder.inFlight());
+        RecordingCall fourth = new RecordingCall();
+        shedder.interceptCall(fourth, new Metadata(), handler);
+        assertNull(fourth.closed);
+
+        l2.onCancel();
+        assertEquals(1, shedder.inFlight());
+        assertEquals(1, shedder.shed());
+    }
+
+    private static class RecordingCall extends ServerCall<String, String> {
+        private static final MethodDescriptor.Marshaller<String> STRINGS = new MethodDescriptor.Marshaller<String>() {
+            @Override public InputStream stream(String value) { throw new UnsupportedOperationException(); }
+            @Override public String parse(InputStream stream) { throw new UnsupportedOperationException(); }
+        };
+        private static final MethodDescriptor<String, String> METHOD = MethodDescriptor.<String, String>newBuilder()
+                .setType(MethodDescriptor.MethodType.UNARY)
+                .setFullMethodName("services.Echo/parrot")
+                .setRequestMarshaller(STRINGS)
+                .setResponseMarshaller(STRINGS)
+                .build();
+
+        Status closed;
+
+        @Override public void request(int numMessages) { }
+        @Override public void sendHeaders(Metadata headers) { }
+        @Override public void sendMessage(String message) { }
+        @Override public void close(Status status, Metadata trailers) { closed = status; }
+        @Override public boolean isCancelled() { return false; }
+        @Override public MethodDescriptor<String, String> getMethodDescriptor() { return METHOD; }
+    }
+}
@@ -0,0 +1,110 @@
+package example.grpcclient;
+
+import org.junit.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class NoteIndexTest {
+
+    private static List<Long> ids(List<NoteIndex.Hit> hits) {
+        List<Long> ids = new ArrayList<>();
+        hits.forEach(h -> ids.add(h.id));
+        return ids;
+    }
+
+    @Test
+    public void tokenizeLowercasesAndCounts() {
+        assertEquals(Integer.valueOf(2), NoteIndex.tokenize("Milk, milk and EGGS!").get("milk"));
+        assertEquals(Integer.valueOf(1), NoteIndex.tokenize("Milk, milk and EGGS!").get("eggs"));
+        assertNull(NoteIndex.tokenize("Milk, milk and EGGS!").get(","));
+    }
+
+    @Test
+    public void rarerAndRepeatedWordsRankHigher() {
+        NoteIndex index = new NoteIndex();
+        index.add(1, "buy milk");
+        index.add(2, "buy bread");
+        index.add(3, "buy milk milk milk");
+        index.add(4, "call mom");
+
+        assertEquals(List.of(3L, 1L), ids(index.search("milk", 10)));
+        // "buy" is in most notes, so the rarer "bread" decides the order
+        assertEquals(2L, index.search("buy bread", 10).get(0).id);
+        assertEquals(List.of(3L), ids(index.search("MILK", 1)));
+        assertTrue(index.search("cheese", 10).isEmpty());
+    }
+
+    @Test
+    public void removedNotesAreNotFound() {
+        NoteIndex index = new NoteIndex();
+        index.add(1, "water the plants");
+        index.add(2, "plants need sun");
+        index.remove(1);
+
+        assertEquals(List.of(2L), ids(index.search("plants", 10)));
+        assertTrue(index.search("water", 10).isEmpty());
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void concurrentWritersKeepPostingsConsistent() throws Exception {
+        NoteIndex index = new NoteIndex();
+        ExecutorService writers = Executors.newFixedThreadPool(8);
+        List<Future<?>> done = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            int start = t * 1000;
+            done.add(writers.submit(() -> {
+                for (long id = start + 1; id <= start + 1000; id++) {
+                    index.add(id, "shared word " + (id % 2 == 0 ? "even" : "odd"));
+                    if (id % 10 == 0) {
+                        index.remove(id);
+                    }
+                }
+            }));
+        }
+        for (Future<?> f : done) {
+            f.get();
+        }
+        writers.shutdown();
+
+        assertEquals(7200, index.size());
+        assertEquals(7200, index.search("shared", 10_000).size());
+        assertEquals(3200, index.search("even", 10_000).size());
+    }
+
+    @Test
+    public void removeBeforeAddKeepsTheNoteOut() {
+        NoteIndex index = new NoteIndex();
+        index.add(1, "plants need sun");
+        // a delete that overtook the create of note 2
+        index.remove(2);
+        index.add(2, "water the plants");
+
+        assertEquals(List.of(1L), ids(index.search("plants", 10)));
+        assertTrue(index.search("water", 10).isEmpty());
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void racingAddsAndRemovesLeaveNoPostings() throws Exception {
+        NoteIndex index = new NoteIndex();
+        ExecutorService writers = Executors.newFixedThreadPool(2);
+        for (long id = 1; id <= 2000; id++) {
+            long note = id;
+            Future<?> add = writers.submit(() -> index.add(note, "orphan " + note + " word" + (note % 7)));
+            Future<?> remove = writers.submit(() -> index.remove(note));
+            add.get();
+            remove.get();
+        }
+        writers.shutdown();
+
+        assertEquals(0, index.size());
+        assertTrue(index.search("orphan word0 word1 word2 word3 word4 word5 word6", 10_000).isEmpty());
+    }
+}
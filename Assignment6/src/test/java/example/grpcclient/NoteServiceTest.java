@@ -6,6 +6,9 @@ import io.grpc.ManagedChannelBuilder;
 import org.junit.*;
 import service.*;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
@@ -79,4 +82,76 @@ public class NoteServiceTest {
         assertFalse(res.getOk());
         assertTrue(res.getError().contains("No note with ID"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void getNotesPage_walksAllNotesInOrder() {
+        List<Long> created = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            created.add(stub.createNote(
+                    CreateNoteRequest.newBuilder().setNote("page note " + i).build()).getId());
+        }
+
+        // page through everything after the note created just before ours
+        long cursor = created.get(0) - 1;
+        List<Long> seen = new ArrayList<>();
+        GetNotesPageResponse page;
+        do {
+            page = stub.getNotesPage(GetNotesPageRequest.newBuilder()
+                    .setCursor(cursor)
+                    .setPageSize(10)
+                    .build());
+            assertTrue(page.getNotesCount() <= 10);
+            page.getNotesList().forEach(n -> seen.add(n.getId()));
+            cursor = page.getNextCursor();
+        } while (page.getHasMore());
+
+        assertEquals(created, seen.subList(0, created.size()));
+        for (int i = 1; i < seen.size(); i++) {
+            assertTrue("IDs should be ascending", seen.get(i - 1) < seen.get(i));
+        }
+
+        for (long id : created) {
+            stub.deleteNote(DeleteNoteRequest.newBuilder().setId(id).build());
+        }
+    }
+
+    @Test
+    public void listNotes_streamsNotesAfterCursor() {
+        long first = stub.createNote(
+                CreateNoteRequest.newBuilder().setNote("stream one").build()).getId();
+        long second = stub.createNote(
+                CreateNoteRequest.newBuilder().setNote("stream two").build()).getId();
+
+        Iterator<Note> notes = stub.listNotes(
+                ListNotesRequest.newBuilder().setAfterId(first).build());
+        List<Long> ids = new ArrayList<>();
+        notes.forEachRemaining(n -> ids.add(n.getId()));
+
+        assertFalse("Cursor note itself is not streamed", ids.contains(first));
+        assertTrue(ids.contains(second));
+
+        stub.deleteNote(DeleteNoteRequest.newBuilder().setId(first).build());
+        stub.deleteNote(DeleteNoteRequest.newBuilder().setId(second).build());
+    }
+
+    @Test
+    public void searchNotes_ranksMatchingNotes() {
+        long both = stub.createNote(CreateNoteRequest.newBuilder()
+                .setNote("Pick up zucchini and more zucchini").build()).getId();
+        long one = stub.createNote(CreateNoteRequest.newBuilder()
+                .setNote("Zucchini bread recipe").build()).getId();
+
+        SearchNotesResponse res = stub.searchNotes(SearchNotesRequest.newBuilder()
+                .setQuery("zucchini")
+                .build());
+        assertEquals(2, res.getResultsCount());
+        assertEquals(both, res.getResults(0).getNote().getId());
+        assertEquals(one, res.getResults(1).getNote().getId());
+
+        stub.deleteNote(DeleteNoteRequest.newBuilder().setId(both).build());
+        res = stub.searchNotes(SearchNotesRequest.newBuilder().setQuery("zucchini").build());
+        assertEquals(1, res.getResultsCount());
+
+        stub.deleteNote(DeleteNoteRequest.newBuilder().setId(one).build());
+    }
+}
@@ -3,6 +3,7 @@ package example.grpcclient;
 import com.google.protobuf.Empty;
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
+import io.grpc.stub.StreamObserver;
 import org.junit.*;
 import service.CaesarGrpc;
 import service.PasswordReq;
@@ -10,7 +11,12 @@ import service.PasswordRes;
 import service.SaveReq;
 import service.SaveRes;
 import service.PasswordList;
+import service.PasswordBatchReq;
+import service.PasswordBatchRes;
+import service.SaveBatchReq;
+import service.SaveBatchRes;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
@@ -18,6 +24,7 @@ import static org.junit.Assert.*;
 public class PasswordServiceTest {
     private static io.grpc.Server server;
     private static CaesarGrpc.CaesarBlockingStub stub;
+    private static CaesarGrpc.CaesarStub asyncStub;
 
     @BeforeClass
     public static void startServer() throws Exception {
@@ -33,6 +40,7 @@ public class PasswordServiceTest {
                 .usePlaintext()
                 .build();
         stub = CaesarGrpc.newBlockingStub(channel);
+        asyncStub = CaesarGrpc.newStub(channel);
     }
 
     @AfterClass
@@ -92,4 +100,76 @@ public class PasswordServiceTest {
         assertFalse(res.getOk());
         assertTrue(res.getError().contains("No password saved under name"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void batchEncryptAndDecrypt() {
+        SaveBatchReq.Builder batch = SaveBatchReq.newBuilder();
+        for (int i = 0; i < 1000; i++) {
+            batch.addEntries(SaveReq.newBuilder().setName("batch" + i).setPassword("pw-" + i + "-\u00e9"));
+        }
+        batch.addEntries(SaveReq.newBuilder().setName("batch-empty"));
+        SaveBatchRes saved = stub.encryptBatch(batch.build());
+        assertEquals(1000, saved.getSaved());
+        assertEquals(1, saved.getFailedCount());
+        assertEquals(1000, saved.getFailed(0).getIndex());
+        assertEquals("batch-empty", saved.getFailed(0).getName());
+
+        PasswordBatchRes res = stub.decryptBatch(PasswordBatchReq.newBuilder()
+                .addNames("batch7").addNames("no_such").addNames("batch999")
+                .build());
+        assertEquals(3, res.getResultsCount());
+        assertEquals("pw-7-\u00e9", res.getResults(0).getPassword());
+        assertFalse(res.getResults(1).getOk());
+        assertEquals("pw-999-\u00e9", res.getResults(2).getPassword());
+    }
+
+    @Test
+    public void streamedEncryptAndDecrypt() throws Exception {
+        CompletableFuture<SaveBatchRes> saved = new CompletableFuture<>();
+        StreamObserver<SaveReq> up = asyncStub.encryptStream(observer(saved));
+        for (int i = 0; i < 500; i++) {
+            up.onNext(SaveReq.newBuilder().setName("stream" + i).setPassword("secret" + i).build());
+        }
+        up.onNext(SaveReq.newBuilder().setPassword("no name").build());
+        up.onCompleted();
+        SaveBatchRes s = saved.get(5, TimeUnit.SECONDS);
+        assertEquals(500, s.getSaved());
+        assertEquals(500, s.getFailed(0).getIndex());
+
+        CompletableFuture<PasswordBatchRes> found = new CompletableFuture<>();
+        StreamObserver<PasswordReq> names = asyncStub.decryptStream(observer(found));
+        names.onNext(PasswordReq.newBuilder().setName("stream42").build());
+        names.onNext(PasswordReq.newBuilder().setName("stream499").build());
+        names.onCompleted();
+        PasswordBatchRes f = found.get(5, TimeUnit.SECONDS);
+        assertEquals("secret42", f.getResults(0).getPassword());
+        assertEquals("secret499", f.getResults(1).getPassword());
+    }
+
+    @Test
+    public void shiftRoundTripsAnyLength() {
+        StringBuilder b = new StringBuilder();
+        for (int n = 0; n < 300; n++) {
+            assertEquals(b.toString(), CaesarImpl.shift(CaesarImpl.shift(b.toString(), 13), -13));
+            b.append((char) ('!' + n % 90));
+        }
+    }
+
+    private static <T> StreamObserver<T> observer(CompletableFuture<T> result) {
+        return new StreamObserver<T>() {
+            @Override
+            public void onNext(T value) {
+                result.complete(value);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                result.completeExceptionally(t);
+            }
+
+            @Override
+            public void onCompleted() {
+            }
+        };
+    }
+}
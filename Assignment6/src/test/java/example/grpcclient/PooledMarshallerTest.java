@@ -0,0 +1,125 @@
+package example.grpcclient;
+
+import io.grpc.Drainable;
+import io.grpc.KnownLength;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import org.junit.Test;
+import service.GetNotesPageResponse;
+import service.Note;
+import service.NoteServiceGrpc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.*;
+
+public class PooledMarshallerTest {
+
+    /** What gRPC hands a marshaller for an inbound message: a stream that knows its length. */
+    private static class Inbound extends ByteArrayInputStream implements KnownLength {
+        Inbound(byte[] bytes) {
+            super(bytes);
+        }
+    }
+
+    private final PooledMarshaller<GetNotesPageResponse> marshaller =
+            new PooledMarshaller<>(GetNotesPageResponse.getDefaultInstance());
+
+    private static GetNotesPageResponse page(int notes, int noteLength) {
+        GetNotesPageResponse.Builder page = GetNotesPageResponse.newBuilder().setNextCursor(notes).setHasMore(true);
+        for (int i = 1; i <= notes; i++) {
+            page.addNotes(Note.newBuilder().setId(i).setNote("é note " + i + " " + "x".repeat(noteLength)));
+        }
+        return page.build();
+    }
+
+    private byte[] drain(GetNotesPageResponse message) throws IOException {
+        InputStream stream = marshaller.stream(message);
+        assertEquals(message.getSerializedSize(), ((KnownLength) stream).available());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(message.getSerializedSize(), ((Drainable) stream).drainTo(out));
+        assertEquals(0, ((KnownLength) stream).available());
+        return out.toByteArray();
+    }
+
+    @Test
+    public void drainsAndParsesTheSameBytesAsProtobuf() throws IOException {
+        for (int notes : new int[] {0, 1, 100, 500}) {
+            GetNotesPageResponse page = page(notes, 100);
+            byte[] bytes = drain(page);
+            assertArrayEquals(page.toByteArray(), bytes);
+            assertEquals(page, marshaller.parse(new Inbound(bytes)));
+        }
+    }
+
+    @Test
+    public void messagesBiggerThanThePoolAreNotPooled() throws IOException {
+        GetNotesPageResponse page = page(2000, 1000);
+        assertTrue(page.getSerializedSize() > PooledMarshaller.MAX_POOLED);
+        byte[] bytes = drain(page);
+        assertArrayEquals(page.toByteArray(), bytes);
+        assertEquals(page, marshaller.parse(new Inbound(bytes)));
+        assertEquals(PooledMarshaller.MAX_POOLED + 1, PooledMarshaller.acquire(PooledMarshaller.MAX_POOLED + 1).length);
+    }
+
+    @Test
+    public void pooledBuffersAreReused() {
+        PooledMarshaller.POOL.clear();
+        byte[] first = PooledMarshaller.acquire(10_000);
+        assertEquals(16 * 1024, first.length);
+        PooledMarshaller.release(first);
+        assertSame(first, PooledMarshaller.acquire(5_000));
+    }
+
+    @Test
+    public void readingInsteadOfDrainingGivesTheSerializedBytes() throws IOException {
+        GetNotesPageResponse page = page(50, 10);
+        InputStream stream = marshaller.stream(page);
+        assertEquals(page.toByteArray()[0], (byte) stream.read());
+        ByteArrayOutputStream rest = new ByteArrayOutputStream();
+        ((Drainable) stream).drainTo(rest);
+        byte[] all = page.toByteArray();
+        assertArrayEquals(java.util.Arrays.copyOfRange(all, 1, all.length), rest.toByteArray());
+    }
+
+    @Test
+    public void unserializedMessagesArePassedStraightThrough() {
+        GetNotesPageResponse page = page(10, 10);
+        assertSame(page, marshaller.parse(marshaller.stream(page)));
+    }
+
+    @Test
+    public void badBytesAreAnInternalError() {
+        try {
+            marshaller.parse(new Inbound(new byte[] {10, 50, 1}));
+            fail("parsed a truncated message");
+        } catch (StatusRuntimeException e) {
+            assertEquals(Status.Code.INTERNAL, e.getStatus().getCode());
+        }
+    }
+
+    @Test
+    public void onlyTheLargePayloadMethodsAreRebound() {
+        ServerServiceDefinition plain = new NoteServiceImpl(new InMemoryNoteStore()).bindService();
+        ServerServiceDefinition pooled = PooledMarshaller.forLargePayloads(plain);
+        assertEquals(plain.getServiceDescriptor().getName(), pooled.getServiceDescriptor().getName());
+        assertEquals(plain.getMethods().size(), pooled.getMethods().size());
+
+        String page = NoteServiceGrpc.getGetNotesPageMethod().getFullMethodName();
+        MethodDescriptor<?, ?> pageMethod = pooled.getMethod(page).getMethodDescriptor();
+        assertTrue(pageMethod.getResponseMarshaller() instanceof PooledMarshaller);
+        assertTrue(pageMethod.getRequestMarshaller() instanceof PooledMarshaller);
+        assertSame(plain.getMethod(page).getServerCallHandler(), pooled.getMethod(page).getServerCallHandler());
+
+        String create = NoteServiceGrpc.getCreateNoteMethod().getFullMethodName();
+        assertSame(plain.getMethod(create), pooled.getMethod(create));
+
+        ServerServiceDefinition echo = new EchoImpl().bindService();
+        assertSame(echo, PooledMarshaller.forLargePayloads(echo));
+    }
+}
@@ -0,0 +1,80 @@
+package example.grpcclient;
+
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Server;
+import io.grpc.Status;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the same open-loop mixed load (parrot, getJoke, listPasswords, searchNotes) against a node
+ * started with each profile in turn and prints one line per profile: calls answered per second,
+ * latency percentiles, and how many calls were refused by the load shedder. Each server is built
+ * with Node.builder, exactly as runNode would build it, and listens on a loopback port.
+ *
+ * Offer more calls than the node can answer to see the profiles part ways: without limits
+ * latency keeps climbing, with them the excess fails fast with RESOURCE_EXHAUSTED.
+ *
+ * Usage: ProfileBenchmark [qps=2000] [seconds=10] [maxInFlight=1000] [profiles=default,throughput,virtual,direct]
+ *        (gradle runProfileBenchmark -Pqps=2000 -Pseconds=10 -PmaxInFlight=1000 -Pprofiles=default,direct)
+ */
+public class ProfileBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int qps = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int maxInFlight = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        String[] names = (args.length > 3 ? args[3] : "default,throughput,virtual,direct").split(",");
+
+        List<String> rows = new ArrayList<>();
+        for (String name : names) {
+            NodeProfile profile = NodeProfile.load(name.trim());
+            System.out.printf("%s: %d calls/s for %d s, at most %d in flight%n", profile, qps, seconds, maxInFlight);
+            rows.add(run(profile, qps, seconds, maxInFlight));
+        }
+
+        System.out.printf("%n%-34s %10s %10s %10s %10s %10s %8s %8s%n",
+                "profile", "answered/s", "p50", "p99", "p99.9", "max", "shed", "failed");
+        rows.forEach(System.out::println);
+    }
+
+    private static String run(NodeProfile profile, int qps, int seconds, int maxInFlight) throws Exception {
+        ExecutorService executor = profile.newExecutor();
+        Server server = Node.builder(0, profile, executor, new ServerMetrics(), new InMemoryNoteStore(),
+                        new ServiceCatalog())
+                .build()
+                .start();
+        ManagedChannel channel = ManagedChannelBuilder.forAddress("localhost", server.getPort())
+                .usePlaintext()
+                .build();
+        try {
+            AsyncClient client = new AsyncClient(channel, maxInFlight);
+            client.createNote("load test note").get();
+
+            // two seconds of warm-up, not counted
+            new LoadTest(client, LoadTest.workload(client, true)).run(qps, 2);
+
+            LoadTest test = new LoadTest(client, LoadTest.workload(client, true));
+            test.run(qps, seconds);
+            LatencyHistogram latency = test.overall();
+            long shed = test.failed(Status.Code.RESOURCE_EXHAUSTED);
+            return String.format("%-34s %10.0f %10s %10s %10s %10s %8d %8d", profile,
+                    test.answeredPerSecond(), micros(latency.percentile(0.5)), micros(latency.percentile(0.99)),
+                    micros(latency.percentile(0.999)), micros(latency.maxMicros()), shed, test.failed() - shed);
+        } finally {
+            channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+            server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private static String micros(long us) {
+        return us < 1000 ? us + "us" : String.format("%.2fms", us / 1e3);
+    }
+}
@@ -0,0 +1,98 @@
+package example.grpcclient;
+
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import org.junit.*;
+import service.RegisterReq;
+import service.RegistryGrpc;
+import service.ServicesListRes;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class RegisterTest {
+
+    /** Registry that records every registration and can be made to fail. */
+    private static class FakeRegistry extends RegistryGrpc.RegistryImplBase {
+        final BlockingQueue<RegisterReq> registrations = new LinkedBlockingQueue<>();
+        final AtomicInteger failuresLeft = new AtomicInteger();
+
+        @Override
+        public void register(RegisterReq req, StreamObserver<ServicesListRes> obs) {
+            registrations.add(req);
+            if (failuresLeft.getAndDecrement() > 0) {
+                obs.onError(Status.UNAVAILABLE.withDescription("try later").asRuntimeException());
+                return;
+            }
+            obs.onNext(ServicesListRes.newBuilder().setIsSuccess(true).build());
+            obs.onCompleted();
+        }
+    }
+
+    private final FakeRegistry registry = new FakeRegistry();
+    private final ServiceCatalog catalog = new ServiceCatalog();
+    private Server server;
+    private Register register;
+
+    @Before
+    public void start() throws IOException {
+        server = io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder
+                .forPort(0)
+                .addService(registry)
+                .build()
+                .start();
+        register = new Register("localhost", server.getPort(), "localhost", 8000, "test", catalog, 300);
+    }
+
+    @After
+    public void stop() throws InterruptedException {
+        register.close();
+        assertFalse(register.isAlive());
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void registersOncePublishedThenRenewsAndFollowsChanges() throws InterruptedException {
+        register.start();
+        // nothing is published yet, so the node is not up: no registration
+        assertNull(registry.registrations.poll(200, TimeUnit.MILLISECONDS));
+
+        catalog.publish(List.of("services.Echo/parrot"));
+        RegisterReq first = registry.registrations.poll(2, TimeUnit.SECONDS);
+        assertNotNull(first);
+        assertEquals(8000, first.getConnection().getPort());
+        assertEquals("Grpc", first.getConnection().getProtocol());
+
+        // renewed after the 300 ms lease
+        assertNotNull(registry.registrations.poll(2, TimeUnit.SECONDS));
+        assertEquals(1, register.registeredVersion());
+
+        // a change is registered right away, not at the next renewal
+        catalog.add(List.of("services.Joke/getJoke"));
+        long before = System.nanoTime();
+        assertNotNull(registry.registrations.poll(2, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - before < TimeUnit.MILLISECONDS.toNanos(250));
+    }
+
+    @Test
+    public void failedRegistrationsAreRetried() throws InterruptedException {
+        registry.failuresLeft.set(2);
+        catalog.publish(List.of("services.Echo/parrot"));
+        register.start();
+        for (int i = 0; i < 3; i++) {
+            assertNotNull(registry.registrations.poll(5, TimeUnit.SECONDS));
+        }
+        long deadline = System.currentTimeMillis() + 2_000;
+        while (register.registeredVersion() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, register.registeredVersion());
+    }
+}
@@ -0,0 +1,134 @@
+package example.grpcclient;
+
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.Status;
+import org.junit.Test;
+import service.ClientRequest;
+import service.EchoGrpc;
+import service.MethodMetrics;
+import service.MetricsRes;
+import service.ServerResponse;
+
+import static org.junit.Assert.*;
+
+public class ServerMetricsTest {
+
+    private static final String PARROT = EchoGrpc.getParrotMethod().getFullMethodName();
+
+    private final ServerMetrics metrics = new ServerMetrics();
+
+    /** Answers every request with the same message, like EchoImpl. */
+    private final ServerCallHandler<ClientRequest, ServerResponse> echo = (call, headers) ->
+            new ServerCall.Listener<ClientRequest>() {
+                @Override
+                public void onMessage(ClientRequest req) {
+                    call.sendMessage(ServerResponse.newBuilder().setIsSuccess(true).setMessage(req.getMessage()).build());
+                    call.close(Status.OK, new Metadata());
+                }
+            };
+
+    @Test
+    public void callsAreCountedWithTheirBytesAndStatus() {
+        ClientRequest req = ClientRequest.newBuilder().setMessage("hello").build();
+        for (int i = 0; i < 3; i++) {
+            ServerCall.Listener<ClientRequest> l = metrics.interceptCall(new FakeCall(), new Metadata(), echo);
+            l.onMessage(req);
+            l.onComplete();
+        }
+        // a call the client gave up on before it was answered
+        metrics.interceptCall(new FakeCall(), new Metadata(), echo).onCancel();
+
+        ServerMetrics.MethodStats stats = metrics.stats(PARROT);
+        assertEquals(4, stats.started.sum());
+        assertEquals(0, stats.inFlight.get());
+        assertEquals(3, stats.finished(Status.Code.OK));
+        assertEquals(1, stats.finished(Status.Code.CANCELLED));
+        assertEquals(3, stats.requestMessages.sum());
+        assertEquals(3L * req.getSerializedSize(), stats.requestBytes.sum());
+        assertEquals(3, stats.responseMessages.sum());
+        assertTrue(stats.responseBytes.sum() > stats.requestBytes.sum());
+        assertEquals(4, stats.latency.count());
+    }
+
+    @Test
+    public void aCallIsOnlyFinishedOnce() {
+        ServerCall.Listener<ClientRequest> l = metrics.interceptCall(new FakeCall(), new Metadata(), echo);
+        assertEquals(1, metrics.stats(PARROT).inFlight.get());
+        l.onMessage(ClientRequest.newBuilder().setMessage("x").build());
+        // cancelled after the service had already closed it
+        l.onCancel();
+        ServerMetrics.MethodStats stats = metrics.stats(PARROT);
+        assertEquals(0, stats.inFlight.get());
+        assertEquals(1, stats.finished(Status.Code.OK));
+        assertEquals(0, stats.finished(Status.Code.CANCELLED));
+        assertEquals(1, stats.latency.count());
+    }
+
+    @Test
+    public void shedCallsAreCounted() {
+        LoadShedder shedder = new LoadShedder(1);
+        ServerCallHandler<ClientRequest, ServerResponse> limited =
+                (call, headers) -> shedder.interceptCall(call, headers, echo);
+        metrics.interceptCall(new FakeCall(), new Metadata(), limited); // holds the only slot
+        FakeCall refused = new FakeCall();
+        metrics.interceptCall(refused, new Metadata(), limited);
+
+        assertEquals(Status.Code.RESOURCE_EXHAUSTED, refused.closed.getCode());
+        ServerMetrics.MethodStats stats = metrics.stats(PARROT);
+        assertEquals(2, stats.started.sum());
+        assertEquals(1, stats.inFlight.get());
+        assertEquals(1, stats.finished(Status.Code.RESOURCE_EXHAUSTED));
+    }
+
+    @Test
+    public void snapshotAndScrape() {
+        ServerCall.Listener<ClientRequest> l = metrics.interceptCall(new FakeCall(), new Metadata(), echo);
+        l.onMessage(ClientRequest.newBuilder().setMessage("hi").build());
+        metrics.stats("services.Joke/getJoke"); // listed although never called
+
+        MetricsRes all = metrics.snapshot("");
+        assertEquals(2, all.getMethodsCount());
+        assertEquals(PARROT, all.getMethods(0).getMethod());
+        MethodMetrics parrot = metrics.snapshot("services.Echo/").getMethods(0);
+        assertEquals(1, parrot.getStarted());
+        assertEquals("OK", parrot.getStatuses(0).getCode());
+        assertEquals(1, parrot.getBuckets(0).getCount());
+        assertTrue(parrot.getMaxUs() <= parrot.getBuckets(0).getUpperUs());
+        assertEquals(0, metrics.snapshot("services.Weather/").getMethodsCount());
+
+        String text = metrics.scrape();
+        assertTrue(text.contains("# TYPE grpc_server_started_total counter\n"));
+        assertTrue(text.contains("grpc_server_started_total{grpc_service=\"services.Echo\",grpc_method=\"parrot\"} 1\n"));
+        assertTrue(text.contains("grpc_server_started_total{grpc_service=\"services.Joke\",grpc_method=\"getJoke\"} 0\n"));
+        assertTrue(text.contains("grpc_server_handled_total{grpc_service=\"services.Echo\",grpc_method=\"parrot\",grpc_code=\"OK\"} 1\n"));
+        assertTrue(text.contains("grpc_server_handling_seconds_bucket{grpc_service=\"services.Echo\",grpc_method=\"parrot\",le=\"+Inf\"} 1\n"));
+        assertTrue(text.contains("grpc_server_handling_seconds_count{grpc_service=\"services.Echo\",grpc_method=\"parrot\"} 1\n"));
+    }
+
+    @Test
+    public void powerOfTwoBucketsAreExact() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (long us : new long[] {100, 127, 128, 129, 1000, 5000}) {
+            h.record(us * 1000);
+        }
+        assertEquals(2, h.countBelow(128));
+        assertEquals(4, h.countBelow(256));
+        assertEquals(5, h.countBelow(1024));
+        assertEquals(6, h.countBelow(1 << 24));
+        assertEquals(100 + 127 + 128 + 129 + 1000 + 5000, h.totalMicros());
+    }
+
+    private static class FakeCall extends ServerCall<ClientRequest, ServerResponse> {
+        Status closed;
+
+        @Override public void request(int numMessages) { }
+        @Override public void sendHeaders(Metadata headers) { }
+        @Override public void sendMessage(ServerResponse message) { }
+        @Override public void close(Status status, Metadata trailers) { closed = status; }
+        @Override public boolean isCancelled() { return false; }
+        @Override public MethodDescriptor<ClientRequest, ServerResponse> getMethodDescriptor() { return EchoGrpc.getParrotMethod(); }
+    }
+}
@@ -17,8 +17,12 @@ import service.JokeReq;
 import service.JokeRes;
 import service.JokeSetReq;
 import service.JokeSetRes;
+import service.JokeItem;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
@@ -78,32 +82,36 @@ public class ServerTest {
 
     @Test
     public void joke() {
-        // initial list of jokes (must match your JokeImpl)
+        // jokes are told in turn, in the order JokeImpl adds them
         JokeReq one = JokeReq.newBuilder().setNumber(1).build();
         JokeRes r1 = jokeStub.getJoke(one);
         assertEquals(1, r1.getJokeCount());
-        assertEquals("Did you hear the rumor about butter? Well, I'm not going to spread it!",
-                r1.getJoke(0));
+        assertEquals("How do you get a squirrel to like you? Act like a nut.", r1.getJoke(0));
 
         // next two
         JokeReq two = JokeReq.newBuilder().setNumber(2).build();
         JokeRes r2 = jokeStub.getJoke(two);
         assertEquals(2, r2.getJokeCount());
-        assertEquals("What do you call someone with no body and no nose? Nobody knows.",
-                r2.getJoke(0));
         assertEquals("I don't trust stairs. They're always up to something.",
+                r2.getJoke(0));
+        assertEquals("What do you call someone with no body and no nose? Nobody knows.",
                 r2.getJoke(1));
 
-        // exhaust remaining jokes
-        JokeRes r3 = jokeStub.getJoke(two);
-        assertEquals(2, r3.getJokeCount());
-        assertEquals("How do you get a squirrel to like you? Act like a nut.", r3.getJoke(0));
-        assertEquals("I am out of jokes...",                      r3.getJoke(1));
+        // telling a joke does not use it up, so asking for more than there are wraps around
+        JokeReq three = JokeReq.newBuilder().setNumber(3).build();
+        JokeRes r3 = jokeStub.getJoke(three);
+        assertEquals(3, r3.getJokeCount());
+        assertEquals("Did you hear the rumor about butter? Well, I'm not going to spread it!",
+                r3.getJoke(0));
+        assertEquals("How do you get a squirrel to like you? Act like a nut.", r3.getJoke(1));
 
-        // out‐of‐jokes again
-        JokeRes r4 = jokeStub.getJoke(two);
-        assertEquals(1, r4.getJokeCount());
-        assertEquals("I am out of jokes...", r4.getJoke(0));
+        // random picks come from the same jokes
+        JokeRes r4 = jokeStub.getJoke(JokeReq.newBuilder().setNumber(20).setRandom(true).build());
+        assertEquals(20, r4.getJokeCount());
+        List<String> all = new ArrayList<>(r1.getJokeList());
+        all.addAll(r2.getJokeList());
+        all.addAll(r3.getJokeList());
+        assertTrue(all.containsAll(r4.getJokeList()));
 
         // setJoke error: no payload
         JokeSetReq bad1 = JokeSetReq.newBuilder().build();
@@ -115,15 +123,19 @@ public class ServerTest {
         JokeSetRes sr2  = jokeStub.setJoke(bad2);
         assertFalse(sr2.getOk());
 
-        // add a new one
-        JokeSetReq add = JokeSetReq.newBuilder().setJoke("whoop").build();
+        // add a batch, skipping the empty one
+        JokeSetReq add = JokeSetReq.newBuilder().setJoke("whoop").addMore("").addMore("there it is").build();
         JokeSetRes sr3  = jokeStub.setJoke(add);
         assertTrue(sr3.getOk());
-
-        // then it should be the *only* joke returned
-        JokeReq oneMore = JokeReq.newBuilder().setNumber(1).build();
-        JokeRes r5      = jokeStub.getJoke(oneMore);
-        assertEquals(1, r5.getJokeCount());
-        assertEquals("whoop", r5.getJoke(0));
+        assertEquals("Added 2 of 3 jokes", sr3.getMessage());
+
+        // six told so far, and now six jokes, so the stream goes round once and ends on the new ones
+        Iterator<JokeItem> items = jokeStub.streamJokes(JokeReq.newBuilder().setNumber(6).build());
+        List<String> told = new ArrayList<>();
+        items.forEachRemaining(i -> told.add(i.getJoke()));
+        assertEquals(6, told.size());
+        assertEquals(r1.getJoke(0), told.get(0));
+        assertEquals("whoop", told.get(4));
+        assertEquals("there it is", told.get(5));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,103 @@
+package example.grpcclient;
+
+import org.junit.Test;
+import service.ServiceChangesRes;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ServiceCatalogTest {
+
+    private static final String PARROT = "services.Echo/parrot";
+    private static final String JOKE = "services.Joke/getJoke";
+    private static final String SET_JOKE = "services.Joke/setJoke";
+    private static final String ENCRYPT = "services.Caesar/encrypt";
+
+    @Test
+    public void publishingMakesNewVersionsOnlyForChanges() {
+        ServiceCatalog catalog = new ServiceCatalog();
+        assertEquals(0, catalog.version());
+        assertEquals(0, catalog.listing().getServicesCount());
+
+        assertEquals(1, catalog.publish(List.of(PARROT, JOKE)));
+        assertEquals(1, catalog.publish(List.of(JOKE, PARROT)));
+        assertEquals(List.of(PARROT, JOKE), catalog.services());
+        assertEquals(1, catalog.listing().getVersion());
+        assertSame(catalog.listing(), catalog.listing());
+
+        assertEquals(2, catalog.add(List.of(ENCRYPT)));
+        assertEquals(2, catalog.add(List.of(ENCRYPT)));
+        assertEquals(3, catalog.remove(List.of(PARROT)));
+        assertEquals(List.of(ENCRYPT, JOKE), catalog.listing().getServicesList());
+    }
+
+    @Test
+    public void changesSinceAVersion() {
+        ServiceCatalog catalog = new ServiceCatalog();
+        catalog.publish(List.of(PARROT, JOKE));     // 1
+        catalog.add(List.of(ENCRYPT));              // 2
+        catalog.remove(List.of(JOKE));              // 3
+        catalog.add(List.of(JOKE, SET_JOKE));       // 4
+
+        ServiceChangesRes current = catalog.changesSince(4);
+        assertEquals(4, current.getVersion());
+        assertFalse(current.getFull());
+        assertEquals(0, current.getAddedCount() + current.getRemovedCount());
+
+        ServiceChangesRes fromTwo = catalog.changesSince(2);
+        assertFalse(fromTwo.getFull());
+        // JOKE was removed and added back, so it nets out
+        assertEquals(List.of(SET_JOKE), fromTwo.getAddedList());
+        assertEquals(List.of(), fromTwo.getRemovedList());
+
+        ServiceChangesRes fromThree = catalog.changesSince(3);
+        assertEquals(List.of(JOKE, SET_JOKE), fromThree.getAddedList());
+
+        ServiceChangesRes fromOne = catalog.changesSince(1);
+        assertEquals(List.of(ENCRYPT, SET_JOKE), fromOne.getAddedList());
+
+        for (long since : new long[] {0, 99}) {
+            ServiceChangesRes full = catalog.changesSince(since);
+            assertTrue(full.getFull());
+            assertEquals(4, full.getVersion());
+            assertEquals(catalog.services(), full.getAddedList());
+        }
+    }
+
+    @Test
+    public void callersTooFarBehindGetTheFullList() {
+        ServiceCatalog catalog = new ServiceCatalog();
+        for (int i = 0; i < ServiceCatalog.HISTORY + 10; i++) {
+            catalog.add(List.of("services.Test/m" + i));
+        }
+        long version = catalog.version();
+        assertTrue(catalog.changesSince(5).getFull());
+        ServiceChangesRes recent = catalog.changesSince(version - ServiceCatalog.HISTORY);
+        assertFalse(recent.getFull());
+        assertEquals(ServiceCatalog.HISTORY, recent.getAddedCount());
+        assertTrue(catalog.changesSince(version - ServiceCatalog.HISTORY - 1).getFull());
+    }
+
+    @Test
+    public void awaitChangeWakesOnPublish() throws InterruptedException {
+        ServiceCatalog catalog = new ServiceCatalog();
+        long start = System.nanoTime();
+        assertEquals(0, catalog.awaitChange(0, 50));
+        assertTrue(System.nanoTime() - start >= 40_000_000L);
+
+        Thread publisher = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                return;
+            }
+            catalog.publish(List.of(PARROT));
+        });
+        publisher.start();
+        assertEquals(1, catalog.awaitChange(0, Long.MAX_VALUE));
+        publisher.join();
+        // already past the version given: returns at once
+        assertEquals(1, catalog.awaitChange(0, Long.MAX_VALUE));
+    }
+}
@@ -0,0 +1,101 @@
+package example.grpcclient;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local stand-in for the two OpenWeatherMap endpoints WeatherImpl calls, so tests and benchmarks
+ * need neither the network nor an API key. Every location gets the same canned weather.
+ */
+public class StubWeatherServer implements AutoCloseable {
+    private final HttpServer http;
+    private final ExecutorService pool = Executors.newCachedThreadPool();
+    private final AtomicInteger currentCalls = new AtomicInteger();
+    private final AtomicInteger forecastCalls = new AtomicInteger();
+    private volatile long delayMs;
+    private volatile double temp = 72.5;
+
+    public StubWeatherServer() throws IOException {
+        http = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        http.createContext("/data/2.5/weather", ex -> {
+            currentCalls.incrementAndGet();
+            reply(ex, "{\"main\":{\"temp\":" + temp + ",\"temp_max\":80.0},"
+                    + "\"weather\":[{\"description\":\"clear sky\"}]}");
+        });
+        http.createContext("/data/2.5/forecast", ex -> {
+            forecastCalls.incrementAndGet();
+            reply(ex, forecast(5));
+        });
+        http.setExecutor(pool);
+        http.start();
+    }
+
+    /** Base URL to hand to WeatherImpl in place of the real API. */
+    public String baseUrl() {
+        return "http://localhost:" + http.getAddress().getPort();
+    }
+
+    /** Makes every response take at least this long. */
+    public void setDelayMs(long delayMs) {
+        this.delayMs = delayMs;
+    }
+
+    /** Changes the current temperature reported from now on. */
+    public void setTemp(double temp) {
+        this.temp = temp;
+    }
+
+    public int currentCalls() {
+        return currentCalls.get();
+    }
+
+    public int forecastCalls() {
+        return forecastCalls.get();
+    }
+
+    /** Eight 3-hour slots per day, the high of day d being 60 + d. */
+    static String forecast(int days) {
+        StringBuilder b = new StringBuilder("{\"list\":[");
+        for (int d = 0; d < days; d++) {
+            for (int h = 0; h < 24; h += 3) {
+                if (b.charAt(b.length() - 1) != '[') {
+                    b.append(',');
+                }
+                double t = 60 + d - (h == 12 ? 0 : 5);
+                b.append(String.format("{\"dt_txt\":\"2025-07-%02d %02d:00:00\",\"main\":{\"temp_max\":%.1f}}",
+                        10 + d, h, t));
+            }
+        }
+        return b.append("]}").toString();
+    }
+
+    private void reply(HttpExchange ex, String body) throws IOException {
+        try {
+            if (delayMs > 0) {
+                Thread.sleep(delayMs);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "application/json");
+        ex.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() {
+        http.stop(0);
+        pool.shutdownNow();
+    }
+}
@@ -0,0 +1,126 @@
+package example.grpcclient;
+
+import org.junit.*;
+import service.WeatherResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class WeatherCacheTest {
+
+    private static CompletableFuture<WeatherResponse> weather(double temp) {
+        return CompletableFuture.completedFuture(
+                WeatherResponse.newBuilder().setIsSuccess(true).setCurrentTemp(temp).build());
+    }
+
+    private static double temp(WeatherCache cache, double lat, double lon) {
+        return cache.get(lat, lon).join().getCurrentTemp();
+    }
+
+    @Test
+    public void nearbyCoordinatesShareAnEntry() {
+        assertEquals(WeatherCache.key(47.6062, -122.3321), WeatherCache.key(47.6058, -122.3349));
+        assertNotEquals(WeatherCache.key(47.60, -122.33), WeatherCache.key(47.61, -122.33));
+        assertNotEquals(WeatherCache.key(47.60, 122.33), WeatherCache.key(47.60, -122.33));
+    }
+
+    @Test
+    public void freshEntryIsServedWithoutFetching() {
+        AtomicInteger fetches = new AtomicInteger();
+        WeatherCache cache = new WeatherCache((lat, lon) -> weather(fetches.incrementAndGet()),
+                60_000, 60_000, 100);
+
+        assertEquals(1.0, temp(cache, 33.4255, -111.94), 0);
+        assertEquals(1.0, temp(cache, 33.4255, -111.94), 0);
+        assertEquals(1, fetches.get());
+        assertEquals(1, cache.hits());
+    }
+
+    @Test
+    public void staleEntryIsServedWhileRefreshing() throws Exception {
+        List<CompletableFuture<WeatherResponse>> upstream = new ArrayList<>();
+        WeatherCache cache = new WeatherCache((lat, lon) -> {
+            CompletableFuture<WeatherResponse> f = new CompletableFuture<>();
+            upstream.add(f);
+            return f;
+        }, 50, 60_000, 100);
+
+        CompletableFuture<WeatherResponse> first = cache.get(1, 1);
+        upstream.get(0).complete(weather(1).join());
+        assertEquals(1.0, first.join().getCurrentTemp(), 0);
+        Thread.sleep(100);
+
+        // past the TTL: the old answer comes back at once and one refresh is started
+        assertEquals(1.0, temp(cache, 1, 1), 0);
+        assertEquals(1.0, temp(cache, 1, 1), 0);
+        assertEquals(2, upstream.size());
+        upstream.get(1).complete(weather(2).join());
+
+        assertEquals(2.0, temp(cache, 1, 1), 0);
+        assertEquals(2, cache.staleHits());
+    }
+
+    @Test
+    public void expiredEntryIsFetchedAgain() throws Exception {
+        AtomicInteger fetches = new AtomicInteger();
+        WeatherCache cache = new WeatherCache((lat, lon) -> weather(fetches.incrementAndGet()),
+                20, 20, 100);
+
+        temp(cache, 1, 1);
+        Thread.sleep(100);
+        assertEquals(2.0, temp(cache, 1, 1), 0);
+        assertEquals(2, cache.misses());
+    }
+
+    @Test
+    public void concurrentLookupsShareOneFetch() {
+        AtomicInteger fetches = new AtomicInteger();
+        CompletableFuture<WeatherResponse> upstream = new CompletableFuture<>();
+        WeatherCache cache = new WeatherCache((lat, lon) -> {
+            fetches.incrementAndGet();
+            return upstream;
+        }, 60_000, 60_000, 100);
+
+        List<CompletableFuture<WeatherResponse>> answers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            answers.add(cache.get(47.6062, -122.3321));
+        }
+        // one caller giving up does not cancel the lookup for the rest
+        answers.get(0).cancel(false);
+        upstream.complete(weather(42).join());
+
+        for (CompletableFuture<WeatherResponse> answer : answers.subList(1, 4)) {
+            assertEquals(42.0, answer.join().getCurrentTemp(), 0);
+        }
+        assertEquals(1, fetches.get());
+        assertEquals(3, cache.coalesced());
+    }
+
+    @Test
+    public void failuresAreNotCached() {
+        AtomicInteger fetches = new AtomicInteger();
+        WeatherCache cache = new WeatherCache((lat, lon) -> CompletableFuture.completedFuture(
+                WeatherResponse.newBuilder()
+                        .setIsSuccess(false)
+                        .setError("HTTP 503 #" + fetches.incrementAndGet())
+                        .build()), 60_000, 60_000, 100);
+
+        cache.get(1, 1).join();
+        assertEquals("HTTP 503 #2", cache.get(1, 1).join().getError());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void cacheStaysWithinMaxEntries() {
+        WeatherCache cache = new WeatherCache((lat, lon) -> weather(lat),
+                60_000, 60_000, 10);
+        for (int i = 0; i < 50; i++) {
+            temp(cache, i, 0);
+        }
+        assertTrue(cache.size() <= 10);
+    }
+}
@@ -0,0 +1,176 @@
+package example.grpcclient;
+
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import org.junit.*;
+import service.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Weather service end to end, with StubWeatherServer standing in for OpenWeatherMap.
+ */
+public class WeatherStubServerTest {
+    private static StubWeatherServer upstream;
+    private static io.grpc.Server server;
+    private static ManagedChannel channel;
+    private static WeatherGrpc.WeatherBlockingStub stub;
+
+    @BeforeClass
+    public static void startServer() throws Exception {
+        upstream = new StubWeatherServer();
+        // handlers run on the transport thread, which only works because WeatherImpl never blocks
+        server = io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder
+                .forPort(9002)
+                .directExecutor()
+                .addService(new WeatherImpl(upstream.baseUrl(), "test-key", 60_000, 60_000))
+                .build()
+                .start();
+
+        channel = ManagedChannelBuilder
+                .forAddress("localhost", 9002)
+                .usePlaintext()
+                .build();
+        stub = WeatherGrpc.newBlockingStub(channel);
+    }
+
+    @AfterClass
+    public static void stopServer() throws Exception {
+        channel.shutdownNow();
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        upstream.close();
+    }
+
+    @Test
+    public void atCoordinates_parsesStubResponse() {
+        WeatherResponse res = stub.atCoordinates(WeatherCoordinateRequest.newBuilder()
+                .setLatitude(10)
+                .setLongitude(20)
+                .build());
+        assertTrue(res.getError(), res.getIsSuccess());
+        assertEquals("clear sky", res.getCurrentConditions());
+        // today's high from /weather, then one high per later forecast day
+        assertEquals(List.of(80.0, 61.0, 62.0, 63.0, 64.0), res.getDailyHighsList());
+    }
+
+    @Test
+    public void cityAndItsCoordinatesShareOneUpstreamLookup() {
+        int before = upstream.currentCalls();
+        WeatherResponse byCity = stub.inCity(WeatherCityRequest.newBuilder()
+                .setCityName("Seattle")
+                .build());
+        WeatherResponse byCoords = stub.atCoordinates(WeatherCoordinateRequest.newBuilder()
+                .setLatitude(47.6062)
+                .setLongitude(-122.3321)
+                .build());
+
+        assertTrue(byCity.getIsSuccess());
+        assertEquals(byCity, byCoords);
+        assertEquals(before + 1, upstream.currentCalls());
+    }
+
+    @Test
+    public void concurrentLookupsAreCoalesced() throws Exception {
+        upstream.setDelayMs(200);
+        int before = upstream.forecastCalls();
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<WeatherResponse>> answers = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                answers.add(callers.submit(() -> stub.inCity(WeatherCityRequest.newBuilder()
+                        .setCityName("Tempe")
+                        .build())));
+            }
+            for (Future<WeatherResponse> answer : answers) {
+                assertTrue(answer.get(10, TimeUnit.SECONDS).getIsSuccess());
+            }
+        } finally {
+            upstream.setDelayMs(0);
+            callers.shutdown();
+        }
+        assertEquals(before + 1, upstream.forecastCalls());
+    }
+
+    @Test
+    public void slowLookupsDoNotHoldServerThreads() throws Exception {
+        upstream.setDelayMs(300);
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            long start = System.nanoTime();
+            List<Future<WeatherResponse>> answers = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                double lat = 30 + i;
+                answers.add(callers.submit(() -> stub.atCoordinates(WeatherCoordinateRequest.newBuilder()
+                        .setLatitude(lat)
+                        .setLongitude(-100)
+                        .build())));
+            }
+            for (Future<WeatherResponse> answer : answers) {
+                assertTrue(answer.get(10, TimeUnit.SECONDS).getIsSuccess());
+            }
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            // one after the other this would take 8 x 300 ms
+            assertTrue("took " + elapsedMs + " ms", elapsedMs < 1500);
+        } finally {
+            upstream.setDelayMs(0);
+            callers.shutdown();
+        }
+    }
+
+    @Test
+    public void deadlineCutsTheLookupShort() {
+        upstream.setDelayMs(2000);
+        try {
+            stub.withDeadlineAfter(300, TimeUnit.MILLISECONDS)
+                    .atCoordinates(WeatherCoordinateRequest.newBuilder()
+                            .setLatitude(-10)
+                            .setLongitude(-10)
+                            .build());
+            fail("Expected the deadline to expire");
+        } catch (StatusRuntimeException e) {
+            assertEquals(Status.Code.DEADLINE_EXCEEDED, e.getStatus().getCode());
+        } finally {
+            upstream.setDelayMs(0);
+        }
+    }
+
+    @Test
+    public void shortDeadlineDoesNotFailCallersSharingTheLookup() throws Exception {
+        upstream.setDelayMs(600);
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            WeatherCoordinateRequest req = WeatherCoordinateRequest.newBuilder()
+                    .setLatitude(-20)
+                    .setLongitude(-20)
+                    .build();
+            // the impatient caller starts the upstream lookup, the patient one joins it
+            Future<WeatherResponse> impatient = callers.submit(() ->
+                    stub.withDeadlineAfter(200, TimeUnit.MILLISECONDS).atCoordinates(req));
+            Thread.sleep(50);
+            Future<WeatherResponse> patient = callers.submit(() ->
+                    stub.withDeadlineAfter(5, TimeUnit.SECONDS).atCoordinates(req));
+
+            try {
+                impatient.get(5, TimeUnit.SECONDS);
+                fail("Expected the deadline to expire");
+            } catch (ExecutionException e) {
+                assertEquals(Status.Code.DEADLINE_EXCEEDED, ((StatusRuntimeException) e.getCause()).getStatus().getCode());
+            }
+            WeatherResponse res = patient.get(5, TimeUnit.SECONDS);
+            assertTrue(res.getError(), res.getIsSuccess());
+        } finally {
+            upstream.setDelayMs(0);
+            callers.shutdown();
+        }
+    }
+}